@@ -0,0 +1,104 @@
+package de.thb.netchat.bench;
+
+import com.google.gson.Gson;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.protocol.MessageReader;
+import de.thb.netchat.protocol.WireProtocol;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Allokationsprofil des Routing-Pfads: Bytes Heap-Allokation pro Nachricht.
+ * Vergleicht die frühere Reflection-Variante (BufferedReader.readLine() + Gson.fromJson/toJson)
+ * mit dem MessageCodec (Streaming-TypeAdapter direkt auf dem Empfangspuffer bzw. Kodierpuffer).
+ *
+ * Gemessen wird über com.sun.management.ThreadMXBean#getThreadAllocatedBytes, also exakt die
+ * Allokationen des messenden Threads.
+ *
+ * Aufruf: java -cp target/benchmarks.jar de.thb.netchat.bench.CodecAllocationBenchmark [nachrichten]
+ */
+public class CodecAllocationBenchmark {
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    public static void main(String[] args) throws IOException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Message msg = new Message("message", "waldemar", "anna", "Hallo Anna, hast du morgen um 10 Uhr Zeit?");
+
+        // Eingangsstrom mit vielen JSON-Zeilen, wie ihn ein Socket liefern würde.
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < messages; i++) {
+            stream.write(MessageCodec.encodeJsonLine(msg));
+        }
+        byte[] input = stream.toByteArray();
+
+        for (int round = 0; round < 3; round++) {
+            // Die ersten Runden dienen als Aufwärmphase für den JIT-Compiler.
+            boolean report = round == 2;
+            measure("Reflection encode", messages, report, () -> reflectionEncode(msg, messages));
+            measure("Codec encode", messages, report, () -> codecEncode(msg, messages));
+            measure("Reflection decode", messages, report, () -> reflectionDecode(input));
+            measure("Codec decode", messages, report, () -> codecDecode(input));
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private static void measure(String label, int messages, boolean report, Task task) throws IOException {
+        long thread = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        task.run();
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        if (report) {
+            System.out.printf("%-18s %8.1f Bytes/Nachricht %8.1f ns/Nachricht%n",
+                    label, (double) allocated / messages, (double) elapsed / messages);
+        }
+    }
+
+    private static void reflectionEncode(Message msg, int messages) {
+        Gson gson = new Gson();
+        for (int i = 0; i < messages; i++) {
+            sink += (gson.toJson(msg) + "\n").getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    private static void codecEncode(Message msg, int messages) {
+        for (int i = 0; i < messages; i++) {
+            sink += WireProtocol.JSON.encodeFrame(msg).length;
+        }
+    }
+
+    private static void reflectionDecode(byte[] input) throws IOException {
+        Gson gson = new Gson();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(input), StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            sink += gson.fromJson(line, Message.class).getText().length();
+        }
+    }
+
+    private static void codecDecode(byte[] input) throws IOException {
+        MessageReader reader = new MessageReader(new ByteArrayInputStream(input), WireProtocol.JSON);
+        try {
+            while (true) {
+                sink += reader.read().getText().length();
+            }
+        } catch (java.io.EOFException e) {
+            // Ende des Eingangsstroms erreicht.
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package de.thb.netchat.bench;
+
+import de.thb.netchat.client.ClientConnection;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.repository.DBInitializer;
+import de.thb.netchat.server.ChatServer;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Messung: Speicher pro Verbindung und Nachrichtenlatenz der Server-Betriebsmodi.
+ * Startet den Server im selben Prozess, öffnet N ruhende Verbindungen und misst
+ * den Zuwachs an Resident Memory (RSS) und Threads. Anschließend wird die Latenz
+ * einer Chat-Nachricht zwischen zwei eingeloggten Benutzern gemessen.
+ *
+ * Aufruf (ein Modus pro JVM, damit sich die Messungen nicht beeinflussen):
+ * java -Dnetchat.db.url=jdbc:sqlite:/tmp/bench.db -cp target/benchmarks.jar de.thb.netchat.bench.ConnectionModeBenchmark virtual 50000
+ * Modi: thread | virtual | nio. Für große N muss das Limit offener Dateien (ulimit -n) angehoben werden.
+ */
+public class ConnectionModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "virtual";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 9998;
+        int latencySamples = 2_000;
+
+        DBInitializer.initialize();
+        startServer(mode, port);
+        waitForPort(port);
+
+        // --- 1. Speicher pro ruhender Verbindung ---
+        long rssBefore = residentMemoryBytes();
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        // Clientseitig NIO-Kanäle, damit der Client selbst keine Threads pro Verbindung benötigt.
+        List<SocketChannel> idle = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            idle.add(SocketChannel.open(new InetSocketAddress("localhost", port)));
+        }
+        // Kurz warten, bis der Server alle Verbindungen angenommen hat.
+        Thread.sleep(2_000);
+        System.gc();
+        Thread.sleep(500);
+
+        long rssAfter = residentMemoryBytes();
+        int threadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        // --- 2. Nachrichtenlatenz zwischen zwei Benutzern ---
+        long[] latencies = measureLatency(port, latencySamples);
+        Arrays.sort(latencies);
+
+        System.out.println("Modus:                  " + mode);
+        System.out.println("Verbindungen:           " + connections);
+        System.out.println("Threads (Zuwachs):      " + (threadsAfter - threadsBefore));
+        System.out.println("RSS (Zuwachs):          " + (rssAfter - rssBefore) / (1024 * 1024) + " MiB");
+        System.out.println("RSS pro Verbindung:     " + (rssAfter - rssBefore) / connections + " Bytes");
+        System.out.println("Latenz p50:             " + latencies[latencies.length / 2] / 1_000 + " µs");
+        System.out.println("Latenz p99:             " + latencies[(int) (latencies.length * 0.99)] / 1_000 + " µs");
+        System.out.println("Latenz max:             " + latencies[latencies.length - 1] / 1_000 + " µs");
+
+        for (SocketChannel channel : idle) {
+            channel.close();
+        }
+        System.exit(0);
+    }
+
+    private static void startServer(String mode, int port) {
+        ChatServer server = new ChatServer();
+        Runnable start = switch (mode) {
+            case "nio" -> () -> server.startNioServer(port, Runtime.getRuntime().availableProcessors());
+            case "thread" -> () -> server.startServer(port, false);
+            default -> () -> server.startServer(port, true);
+        };
+        Thread thread = new Thread(start, "bench-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Misst die Zeit vom Senden bei A bis zum Empfang bei B.
+    private static long[] measureLatency(int port, int samples) throws IOException {
+        String a = "bench_a_" + System.nanoTime();
+        String b = "bench_b_" + System.nanoTime();
+
+        try (TestClient sender = new TestClient(port); TestClient receiver = new TestClient(port)) {
+            sender.registerAndLogin(a);
+            receiver.registerAndLogin(b);
+
+            long[] latencies = new long[samples];
+            for (int i = 0; i < samples; i++) {
+                long start = System.nanoTime();
+                sender.send(new Message("message", a, b, "ping " + i));
+                receiver.awaitType("message");
+                latencies[i] = System.nanoTime() - start;
+            }
+            return latencies;
+        }
+    }
+
+    private static void waitForPort(int port) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("Server nicht erreichbar auf Port " + port);
+    }
+
+    // Linux: Resident Set Size aus /proc, enthält im Gegensatz zum Heap auch Thread-Stacks.
+    private static long residentMemoryBytes() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (Files.exists(status)) {
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D+", "")) * 1024;
+                }
+            }
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // Minimaler blockierender Protokoll-Client für die Messung (nutzt dieselbe Verbindungsklasse wie die GUI).
+    private static class TestClient implements AutoCloseable {
+        private final ClientConnection connection;
+
+        TestClient(int port) throws IOException {
+            connection = new ClientConnection("localhost", port, false);
+            connection.connect();
+        }
+
+        void registerAndLogin(String name) throws IOException {
+            send(new Message("register", name, null, name + "@bench.local||secret"));
+            awaitText("Registrierung erfolgreich!");
+            send(new Message("login", name, null, "secret"));
+            awaitText("Login erfolgreich!");
+        }
+
+        void send(Message message) {
+            connection.send(message);
+        }
+
+        void awaitType(String type) throws IOException {
+            while (true) {
+                Message message = connection.receive();
+                if (message != null && type.equals(message.getType())) {
+                    return;
+                }
+            }
+        }
+
+        void awaitText(String text) throws IOException {
+            while (true) {
+                Message message = connection.receive();
+                if (message == null) {
+                    continue;
+                }
+                if ("error".equals(message.getType())) {
+                    throw new IOException(message.getText());
+                }
+                if (text.equals(message.getText())) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package de.thb.netchat.bench;
+
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.repository.DBConnection;
+import de.thb.netchat.repository.DBInitializer;
+import de.thb.netchat.repository.MessageRepo;
+import de.thb.netchat.repository.SchemaMigrations;
+import de.thb.netchat.repository.StorageException;
+import de.thb.netchat.service.ConversationCache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+/**
+ * Misst die Latenz der Verlaufsabfragen (getConversation, getConversationPage, getMessagesByUser) bei vielen gespeicherten
+ * Nachrichten, einmal ohne und einmal mit den Indizes aus SchemaMigrations. Mit Indizes zusätzlich die Volltextsuche.
+ *
+ * ACHTUNG: Setzt die Datenbank zurück. Nur gegen eine Wegwerf-Datenbank ausführen, z.B.:
+ * java -Dnetchat.db.url=jdbc:sqlite:/tmp/history.db -cp target/benchmarks.jar de.thb.netchat.bench.HistoryQueryBenchmark [nachrichten] [benutzer]
+ */
+public class HistoryQueryBenchmark {
+
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) throws SQLException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        // Ausgangsschema ohne Indizes herstellen.
+        DBInitializer.resetDB();
+        SchemaMigrations.migrate("002_wal");
+        fill(messages, users);
+
+        MessageRepo repo = new MessageRepo();
+        System.out.printf("%d Nachrichten, %d Benutzer%n", messages, users);
+        run("ohne Indizes", repo, users);
+
+        // Restliche Migrationen (Indizes) anwenden und erneut messen.
+        long start = System.nanoTime();
+        SchemaMigrations.migrate();
+        System.out.printf("Migration: %.1f s%n", (System.nanoTime() - start) / 1e9);
+        run("mit Indizes", repo, users);
+
+        // Volltextsuche (FTS5-Index aus Migration 007), beschränkt auf die Gespräche eines Benutzers:
+        // ein seltener Begriff (eine Nachrichtennummer) und einer, der in jeder Nachricht des Benutzers vorkommt.
+        Random searchRandom = new Random(13);
+        measure("mit Indizes search selten", i ->
+                search(repo, "user" + searchRandom.nextInt(users), String.valueOf(searchRandom.nextInt(messages))));
+        measure("mit Indizes search häufig", i ->
+                search(repo, "user" + searchRandom.nextInt(users), "Nachricht"));
+
+        // Wiederholtes Öffnen derselben Chats: Nach dem ersten Laden kommt die Seite aus dem ConversationCache.
+        ConversationCache cache = new ConversationCache(256, 64L * 1024 * 1024);
+        Random random = new Random(11);
+        measure("mit Cache getConversationPage", i -> {
+            String a = "user" + random.nextInt(20);
+            String b = "user" + random.nextInt(20);
+            List<HistoryRecord> page = cache.get(a, b, null, 51);
+            if (page == null) {
+                try {
+                    cache.load(a, b, 51, () -> {
+                        try {
+                            return repo.queryConversationPage(a, b, null, cache.getTailSize());
+                        } catch (SQLException e) {
+                            throw new StorageException("Abfrage fehlgeschlagen", e);
+                        }
+                    });
+                } catch (StorageException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        System.out.println(cache.getStats());
+    }
+
+    // Schreibt die Testdaten in Transaktionen zu je 10.000 Zeilen.
+    private static void fill(int messages, int users) throws SQLException {
+        Random random = new Random(42);
+        String sql = "insert into messages(sender_name, receiver_name, text) values(?, ?, ?)";
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement ps = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < messages; i++) {
+                ps.setString(1, "user" + random.nextInt(users));
+                ps.setString(2, "user" + random.nextInt(users));
+                ps.setString(3, "Nachricht Nummer " + i);
+                ps.addBatch();
+                if ((i + 1) % 10_000 == 0) {
+                    ps.executeBatch();
+                    connection.commit();
+                }
+            }
+            ps.executeBatch();
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void run(String label, MessageRepo repo, int users) {
+        Random random = new Random(7);
+        measure(label + " getConversation", i ->
+                repo.getConversation("user" + random.nextInt(users), "user" + random.nextInt(users)));
+        measure(label + " getConversationPage", i ->
+                repo.getConversationPage("user" + random.nextInt(users), "user" + random.nextInt(users), null, 51));
+        measure(label + " getMessagesByUser", i ->
+                repo.getMessagesByUser("user" + random.nextInt(users)));
+    }
+
+    private static void search(MessageRepo repo, String user, String query) {
+        try {
+            repo.search(List.of(user), query, 0, 20);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void measure(String label, IntConsumer query) {
+        long[] micros = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            long start = System.nanoTime();
+            query.accept(i);
+            micros[i] = (System.nanoTime() - start) / 1000;
+        }
+        Arrays.sort(micros);
+        System.out.printf("%-32s p50=%8d us  p99=%8d us%n", label, micros[QUERIES / 2], micros[QUERIES * 99 / 100]);
+    }
+}
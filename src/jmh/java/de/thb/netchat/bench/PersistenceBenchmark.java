@@ -0,0 +1,40 @@
+package de.thb.netchat.bench;
+
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.repository.DBInitializer;
+import de.thb.netchat.repository.MessageBatchWriter;
+import de.thb.netchat.repository.MessageRepo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Misst den Speicherdurchsatz von Chat-Nachrichten in Abhängigkeit von der Stapelgröße (Group Commit).
+ * Stapelgröße 1 entspricht der früheren Variante: eine Transaktion (und ein fsync) pro Nachricht.
+ *
+ * Sollte gegen eine Wegwerf-Datenbank laufen, z.B.:
+ * java -Dnetchat.db.url=jdbc:sqlite:/tmp/bench.db -cp target/benchmarks.jar de.thb.netchat.bench.PersistenceBenchmark [nachrichten]
+ */
+public class PersistenceBenchmark {
+
+    public static void main(String[] args) {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        DBInitializer.initialize();
+        MessageRepo repo = new MessageRepo();
+
+        for (int batchSize : new int[]{1, 16, 64, 256, 1024}) {
+            MessageBatchWriter writer = new MessageBatchWriter(repo, batchSize, 5, 16_384);
+            List<CompletableFuture<HistoryRecord>> results = new ArrayList<>(messages);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                results.add(writer.submit("bench-a", "bench-b", "Nachricht " + i));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("Stapelgröße %5d: %10.0f Nachrichten/s%n", batchSize, messages / (elapsed / 1e9));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package de.thb.netchat.bench;
+
+import de.thb.netchat.model.HistoryPage;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.FrameCompression;
+import de.thb.netchat.protocol.FrameDecoder;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.protocol.WireProtocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messung: CPU-Zeit und Frame-Größe pro Nachricht für JSON- und Binärprotokoll.
+ * Kodiert und dekodiert (inkl. Framing) eine typische Chat-Nachricht, einen großen Userlist-Frame und eine
+ * Verlaufsseite; im Binärformat zusätzlich mit Deflate-Kompression (FrameCompression).
+ *
+ * Aufruf: java -cp target/benchmarks.jar de.thb.netchat.bench.ProtocolBenchmark [iterationen]
+ */
+public class ProtocolBenchmark {
+
+    // Verhindert, dass der JIT die Schleifen als toten Code entfernt.
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        Message chat = new Message("message", "waldemar", "anna", "Hallo Anna, hast du morgen um 10 Uhr Zeit? 😀");
+
+        StringBuilder users = new StringBuilder();
+        for (int i = 0; i < 2_000; i++) {
+            users.append(i == 0 ? "" : ",").append("user").append(i);
+        }
+        Message userlist = new Message("userlist", "server", null, users + "||" + users.substring(0, users.length() / 4));
+
+        List<HistoryRecord> records = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            records.add(new HistoryRecord(1_000_000 + i, i % 2 == 0 ? "waldemar" : "anna", i % 2 == 0 ? "anna" : "waldemar",
+                    "Nachricht Nummer " + i + " im Verlauf, mit etwas mehr Text als nur einem Wort.", "2024-05-17 10:" + (10 + i) + ":00"));
+        }
+        Message history = new Message("history_page", "server", "anna",
+                MessageCodec.GSON.toJson(new HistoryPage("waldemar", null, records, true)));
+
+        for (WireProtocol protocol : WireProtocol.values()) {
+            run(protocol, null, "chat", chat, iterations);
+            run(protocol, null, "userlist", userlist, iterations / 500);
+            run(protocol, null, "history", history, iterations / 100);
+        }
+        // Kompression gibt es nur im Binärformat. Der Chat-Frame liegt unter der Schwelle und bleibt unverändert.
+        FrameCompression compression = new FrameCompression();
+        run(WireProtocol.BINARY, compression, "chat", chat, iterations);
+        run(WireProtocol.BINARY, compression, "userlist", userlist, iterations / 500);
+        run(WireProtocol.BINARY, compression, "history", history, iterations / 100);
+    }
+
+    private static void run(WireProtocol protocol, FrameCompression compression, String label, Message message,
+                            int iterations) throws Exception {
+        // Aufwärmphase für den JIT-Compiler.
+        roundTrips(protocol, compression, message, iterations / 5);
+
+        long start = System.nanoTime();
+        roundTrips(protocol, compression, message, iterations);
+        long elapsed = System.nanoTime() - start;
+
+        byte[] frame = protocol.encodeFrame(message);
+        int frameSize = compression != null ? compression.compress(frame).length : frame.length;
+        System.out.printf("%-14s %-9s %8d Bytes/Frame %10.1f ns/Roundtrip%n",
+                compression != null ? protocol + "+deflate" : protocol, label, frameSize, (double) elapsed / iterations);
+    }
+
+    // Kodieren -> (Komprimieren) -> Framing -> Dekodieren, wie zwischen ClientHandler und ClientConnection.
+    private static void roundTrips(WireProtocol protocol, FrameCompression compression, Message message,
+                                   int iterations) throws Exception {
+        FrameDecoder decoder = protocol.newDecoder();
+        for (int i = 0; i < iterations; i++) {
+            byte[] frame = protocol.encodeFrame(message);
+            if (compression != null) {
+                frame = compression.compress(frame);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            if (!decoder.next(buffer)) {
+                throw new IllegalStateException("Frame unvollständig");
+            }
+            Message decoded = compression != null
+                    ? compression.decode(decoder.frameBuffer(), decoder.frameLength())
+                    : protocol.decode(decoder.frameBuffer(), decoder.frameLength());
+            sink += decoded.getText().length();
+        }
+    }
+}
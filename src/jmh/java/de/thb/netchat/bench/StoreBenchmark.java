@@ -0,0 +1,107 @@
+package de.thb.netchat.bench;
+
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.repository.DBInitializer;
+import de.thb.netchat.repository.LogMessageStore;
+import de.thb.netchat.repository.MessageRepo;
+import de.thb.netchat.repository.MessageStore;
+import de.thb.netchat.repository.ShardedMessageStore;
+import de.thb.netchat.repository.SqliteMessageStore;
+import de.thb.netchat.repository.StorageException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Vergleicht die Nachrichtenspeicher (SQLite, auf 2/4/8 Dateien verteiltes SQLite und Append-only-Log):
+ * - Schreiben: anhaltender Durchsatz in Nachrichten/s (Group Commit, bis zum dauerhaften Speichern aller Nachrichten),
+ * - Lesen: Durchblättern eines kompletten Verlaufs per Cursor in Seiten zu 50 Nachrichten, in Nachrichten/s,
+ * - beim Log zusätzlich die Startzeit (Index-Aufbau aus den Segmenten).
+ *
+ * ACHTUNG: Setzt die Datenbank zurück. Nur gegen eine Wegwerf-Datenbank ausführen, z.B.:
+ * java -Dnetchat.db.url=jdbc:sqlite:/tmp/store.db -cp target/benchmarks.jar de.thb.netchat.bench.StoreBenchmark [nachrichten] [paare]
+ */
+public class StoreBenchmark {
+
+    private static final int PAGE = 50;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int pairs = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        System.out.printf("%d Nachrichten, %d Gesprächspaare%n", messages, pairs);
+
+        Path directory = Files.createTempDirectory("netchat-log");
+        try (MessageStore log = new LogMessageStore(directory, 64 * 1024 * 1024, 256, 5, 16_384)) {
+            run("Log", log, messages, pairs);
+        }
+        long start = System.nanoTime();
+        MessageStore reopened = new LogMessageStore(directory, 64 * 1024 * 1024, 256, 5, 16_384);
+        System.out.printf("Log        Neustart (Index-Aufbau): %d ms%n", (System.nanoTime() - start) / 1_000_000);
+        reopened.close();
+        deleteRecursively(directory);
+
+        try {
+            DBInitializer.resetDB();
+            DBInitializer.initialize();
+            try (MessageStore sqlite = new SqliteMessageStore(new MessageRepo(), 256, 5, 16_384)) {
+                run("SQLite", sqlite, messages, pairs);
+            }
+
+            // Gleiche Last auf mehrere Dateien verteilt: Die Shards committen parallel.
+            for (int shards : new int[]{2, 4, 8}) {
+                Path shardDirectory = Files.createTempDirectory("netchat-shards");
+                String urlPattern = "jdbc:sqlite:" + shardDirectory.resolve("messages-%d.db");
+                try (MessageStore sharded = new ShardedMessageStore(urlPattern, shards, 2, 256, 5, 16_384)) {
+                    run("SQLite x" + shards, sharded, messages, pairs);
+                }
+                deleteRecursively(shardDirectory);
+            }
+        } catch (RuntimeException | SQLException e) {
+            // Z.B. fehlender JDBC-Treiber.
+            System.err.println("SQLite-Messung nicht möglich: " + e);
+        }
+    }
+
+    private static void run(String label, MessageStore store, int messages, int pairs) throws StorageException {
+        List<CompletableFuture<HistoryRecord>> results = new ArrayList<>(messages);
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            int pair = i % pairs;
+            results.add(store.append("user" + pair, "partner" + pair, "Nachricht Nummer " + i));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10s Schreiben: %10.0f Nachrichten/s%n", label, messages / seconds);
+
+        // Jeder Verlauf komplett von neu nach alt, wie beim Hochscrollen im Client.
+        long read = 0;
+        start = System.nanoTime();
+        for (int pair = 0; pair < pairs; pair++) {
+            Long cursor = null;
+            while (true) {
+                List<HistoryRecord> page = store.getConversationPage("partner" + pair, "user" + pair, cursor, PAGE);
+                read += page.size();
+                if (page.size() < PAGE) {
+                    break;
+                }
+                cursor = page.getFirst().id();
+            }
+        }
+        seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-10s Verlauf lesen: %10.0f Nachrichten/s (%d gelesen)%n", label, read / seconds, read);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
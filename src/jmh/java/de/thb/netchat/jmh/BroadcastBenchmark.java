@@ -0,0 +1,62 @@
+package de.thb.netchat.jmh;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.EncodedFrame;
+import de.thb.netchat.protocol.WireProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kodierkosten einer Nachricht an viele Empfänger (Präsenz-Delta, Raumnachricht):
+ * - perRecipient: jede Sitzung kodiert selbst (wie sendMessageObject in einer Schleife),
+ * - shared: ein EncodedFrame für alle Empfänger.
+ * Mit -prof gc zeigt sich zusätzlich der Unterschied in den Allokationen.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int recipients;
+
+    @Param({"JSON", "BINARY"})
+    public WireProtocol protocol;
+
+    private Message message;
+
+    @Setup
+    public void setup() {
+        message = new Message("presence", "server", null, "{\"version\":4711,\"username\":\"waldemar\",\"status\":\"ONLINE\"}");
+    }
+
+    @Benchmark
+    public void perRecipient(Blackhole blackhole) {
+        for (int i = 0; i < recipients; i++) {
+            blackhole.consume(protocol.encodeFrame(message));
+        }
+    }
+
+    @Benchmark
+    public void shared(Blackhole blackhole) {
+        EncodedFrame frame = new EncodedFrame(message);
+        for (int i = 0; i < recipients; i++) {
+            blackhole.consume(frame.bytes(protocol));
+        }
+    }
+}
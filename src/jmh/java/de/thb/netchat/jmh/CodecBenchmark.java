@@ -0,0 +1,92 @@
+package de.thb.netchat.jmh;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.FrameDecoder;
+import de.thb.netchat.protocol.MessageReader;
+import de.thb.netchat.protocol.ProtocolException;
+import de.thb.netchat.protocol.WireProtocol;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kodieren und Dekodieren einer typischen Chat-Nachricht, für JSON und Binärprotokoll.
+ * - encode: Message -> fertiger Frame (wie beim Senden in AbstractClientSession).
+ * - decode: Frame-Inhalt -> Message (wie im NIO-Reactor).
+ * - read: Frames aus einem InputStream lesen (wie MessageReader im ClientHandler).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final int FRAMES_PER_STREAM = 1024;
+
+    @Param({"JSON", "BINARY"})
+    public WireProtocol protocol;
+
+    private Message message;
+
+    // Inhalt eines Frames (ohne Zeilenumbruch bzw. Längenpräfix).
+    private byte[] payload;
+
+    // FRAMES_PER_STREAM Frames hintereinander, wie sie über den Socket ankommen.
+    private byte[] stream;
+
+    @Setup
+    public void setup() throws IOException {
+        message = new Message("message", "waldemar", "anna", "Hallo Anna, hast du morgen um 10 Uhr Zeit? 😀");
+
+        byte[] frame = protocol.encodeFrame(message);
+        FrameDecoder decoder = protocol.newDecoder();
+        if (!decoder.next(ByteBuffer.wrap(frame))) {
+            throw new IllegalStateException("Frame unvollständig");
+        }
+        payload = Arrays.copyOf(decoder.frameBuffer(), decoder.frameLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(frame.length * FRAMES_PER_STREAM);
+        for (int i = 0; i < FRAMES_PER_STREAM; i++) {
+            out.write(frame);
+        }
+        stream = out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return protocol.encodeFrame(message);
+    }
+
+    @Benchmark
+    public Message decode() throws ProtocolException {
+        return protocol.decode(payload, payload.length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES_PER_STREAM)
+    public void read(Blackhole blackhole) throws IOException {
+        MessageReader reader = new MessageReader(new ByteArrayInputStream(stream), protocol);
+        for (int i = 0; i < FRAMES_PER_STREAM; i++) {
+            blackhole.consume(reader.read());
+        }
+    }
+}
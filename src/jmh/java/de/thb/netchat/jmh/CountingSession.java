@@ -0,0 +1,56 @@
+package de.thb.netchat.jmh;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.EncodedFrame;
+import de.thb.netchat.protocol.WireProtocol;
+import de.thb.netchat.server.ClientSession;
+
+/**
+ * Sitzung ohne Socket: Zählt nur, was an sie gesendet wird.
+ * So misst ein Benchmark Lookup, Routing und Command-Logik ohne Kodierung und Netzwerk.
+ */
+final class CountingSession implements ClientSession {
+
+    private String username;
+    long received;
+
+    CountingSession(String username) {
+        this.username = username;
+    }
+
+    @Override
+    public void sendMessageObject(Message msg) {
+        received++;
+    }
+
+    @Override
+    public void send(EncodedFrame frame) {
+        received++;
+    }
+
+    @Override
+    public void sendError(String text) {
+        received++;
+    }
+
+    @Override
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public void switchProtocol(WireProtocol protocol) {}
+
+    @Override
+    public void enableCompression() {}
+
+    @Override
+    public int getOutboundSize() {
+        return 0;
+    }
+}
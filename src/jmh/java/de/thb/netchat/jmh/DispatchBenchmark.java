@@ -0,0 +1,83 @@
+package de.thb.netchat.jmh;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.server.CommandDispatcher;
+import de.thb.netchat.service.ChatService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch über die Command-Map des CommandDispatcher (inkl. Kennzahlen-Erfassung) bis zur Antwort an die Sitzung.
+ * - unknown: Lookup ohne Treffer, Fehlerantwort.
+ * - hello: Kleinster Command ohne Datenbank.
+ * - historyCached: Verlaufsseite aus dem ConversationCache, inkl. JSON der Seite.
+ * - presenceSync: Präsenz-Snapshot mit 1.000 registrierten Benutzern (aus dem Benutzerverzeichnis).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private CommandDispatcher dispatcher;
+    private CountingSession session;
+
+    private Message unknown;
+    private Message hello;
+    private Message history;
+    private Message presenceSync;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticDatabase.create(1_000, 10_000);
+        dispatcher = new CommandDispatcher(new ChatService());
+        session = new CountingSession(SyntheticDatabase.user(0));
+
+        unknown = new Message("does_not_exist", "user0", null, null);
+        hello = new Message("hello", null, null, "json");
+        history = new Message("history_request", "user0", "user1", null);
+        presenceSync = new Message("presence_sync", "user0", null, null);
+
+        // Erster Aufruf lädt den Verlauf in den Cache.
+        dispatcher.dispatch(history, session);
+    }
+
+    @Benchmark
+    public long unknown() {
+        dispatcher.dispatch(unknown, session);
+        return session.received;
+    }
+
+    @Benchmark
+    public long hello() {
+        // HelloCommand ist nur vor dem Login erlaubt.
+        session.setUsername(null);
+        dispatcher.dispatch(hello, session);
+        session.setUsername(SyntheticDatabase.user(0));
+        return session.received;
+    }
+
+    @Benchmark
+    public long historyCached() {
+        dispatcher.dispatch(history, session);
+        return session.received;
+    }
+
+    @Benchmark
+    public long presenceSync() {
+        dispatcher.dispatch(presenceSync, session);
+        return session.received;
+    }
+}
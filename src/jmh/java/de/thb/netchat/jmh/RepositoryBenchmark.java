@@ -0,0 +1,99 @@
+package de.thb.netchat.jmh;
+
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.repository.MessageRepo;
+import de.thb.netchat.repository.UserDirectory;
+import de.thb.netchat.repository.UserRepo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Repository-Aufrufe gegen eine synthetische SQLite-Datenbank (siehe SyntheticDatabase),
+ * inkl. Connection-Pool und Pragmas wie im Server.
+ * - addMessage: Einzel-INSERT mit eigenem Commit (ohne Group Commit; gibt pro Aufruf eine Konsolenzeile aus).
+ * - getConversation / getConversationPage: Langer Verlauf (jede zehnte Nachricht) zwischen user0 und user1.
+ * - UserRepo-Lookups im Vergleich zum Benutzerverzeichnis im Speicher.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private static final int USERS = 1_000;
+
+    @Param({"10000", "100000"})
+    public int messages;
+
+    private MessageRepo messageRepo;
+    private UserRepo userRepo;
+    private UserDirectory userDirectory;
+
+    @Setup
+    public void setup() throws Exception {
+        SyntheticDatabase.create(USERS, messages);
+        messageRepo = new MessageRepo();
+        userRepo = new UserRepo();
+        userDirectory = new UserDirectory(userRepo);
+        userDirectory.load();
+    }
+
+    private static String randomUser() {
+        return SyntheticDatabase.user(ThreadLocalRandom.current().nextInt(USERS));
+    }
+
+    @Benchmark
+    public void addMessage() {
+        messageRepo.addMessage(randomUser(), randomUser(), "Benchmark-Nachricht");
+    }
+
+    @Benchmark
+    public List<String> getConversation() {
+        return messageRepo.getConversation("user0", "user1");
+    }
+
+    @Benchmark
+    public List<HistoryRecord> getConversationPage() {
+        return messageRepo.getConversationPage("user0", "user1", null, 50);
+    }
+
+    @Benchmark
+    public String userRepoGetPassword() {
+        return userRepo.getPassword(randomUser());
+    }
+
+    @Benchmark
+    public boolean userRepoUserExists() {
+        return userRepo.userExists(randomUser());
+    }
+
+    @Benchmark
+    public boolean userRepoEmailExists() {
+        return userRepo.emailExists(randomUser() + "@example.org");
+    }
+
+    @Benchmark
+    public List<String> userRepoGetAllUserNames() {
+        return userRepo.getAllUserNames();
+    }
+
+    @Benchmark
+    public boolean userDirectoryUserExists() {
+        return userDirectory.userExists(randomUser());
+    }
+}
@@ -0,0 +1,69 @@
+package de.thb.netchat.jmh;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.server.ChatServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ChatServer.sendToUser bei 10, 1.000 und 10.000 eingeloggten Sitzungen.
+ * Die Kosten sollten unabhängig von der Anzahl sein (Lookup im Sitzungsindex).
+ * Mit mehreren Threads (-t) zeigt sich, ob das Routing unter Konkurrenz skaliert.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+public class RoutingBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int clients;
+
+    private CountingSession[] sessions;
+    private Message message;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sessions = new CountingSession[clients];
+        for (int i = 0; i < clients; i++) {
+            sessions[i] = new CountingSession("user" + i);
+            ChatServer.claimSession(sessions[i].getUsername(), sessions[i]);
+        }
+        message = new Message("message", "sender", null, "Hallo!");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (CountingSession session : sessions) {
+            ChatServer.removeClient(session);
+        }
+    }
+
+    @Benchmark
+    public boolean sendToUser() {
+        return ChatServer.sendToUser(sessions[ThreadLocalRandom.current().nextInt(clients)].getUsername(), message);
+    }
+
+    @Benchmark
+    public boolean sendToOfflineUser() {
+        return ChatServer.sendToUser("offline", message);
+    }
+}
@@ -0,0 +1,87 @@
+package de.thb.netchat.jmh;
+
+import de.thb.netchat.repository.DBConnection;
+import de.thb.netchat.repository.DBInitializer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Legt für einen Benchmark-Fork eine Wegwerf-Datenbank mit synthetischen Daten an.
+ *
+ * Die URL wird über die System-Property netchat.db.url gesetzt, bevor DBConnection geladen wird.
+ * Deshalb muss create() im @Setup aufgerufen werden, bevor irgendetwas die Datenbank anfasst.
+ * JMH startet jeden Benchmark (und jede Parameterkombination) in einem eigenen Fork, jeder erhält also
+ * eine eigene Datei. Das Verzeichnis wird beim Beenden des Forks gelöscht.
+ *
+ * Daten: Benutzer user0 .. user(n-1); Nachrichten zwischen zufälligen Paaren, davon jede zehnte zwischen
+ * user0 und user1 (ein langer Verlauf für die Verlaufsabfragen).
+ */
+final class SyntheticDatabase {
+
+    private static boolean created;
+
+    private SyntheticDatabase() {}
+
+    static synchronized void create(int users, int messages) throws IOException, SQLException {
+        if (created) {
+            return;
+        }
+        Path directory = Files.createTempDirectory("netchat-jmh");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteRecursively(directory)));
+        System.setProperty("netchat.db.url", "jdbc:sqlite:" + directory.resolve("bench.db"));
+
+        DBInitializer.initialize();
+        try (Connection connection = DBConnection.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "insert into users(name, email, password) values(?, ?, ?)")) {
+                for (int i = 0; i < users; i++) {
+                    ps.setString(1, user(i));
+                    ps.setString(2, user(i) + "@example.org");
+                    ps.setString(3, "hash" + i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+
+            Random random = new Random(42);
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "insert into messages(sender_name, receiver_name, text) values(?, ?, ?)")) {
+                for (int i = 0; i < messages; i++) {
+                    boolean longChat = i % 10 == 0;
+                    ps.setString(1, longChat ? user(i % 20 == 0 ? 0 : 1) : user(random.nextInt(users)));
+                    ps.setString(2, longChat ? user(i % 20 == 0 ? 1 : 0) : user(random.nextInt(users)));
+                    ps.setString(3, "Nachricht Nummer " + i);
+                    ps.addBatch();
+                    if ((i + 1) % 10_000 == 0) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+        created = true;
+    }
+
+    static String user(int i) {
+        return "user" + i;
+    }
+
+    private static void deleteRecursively(Path directory) {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ignored) {}
+    }
+}
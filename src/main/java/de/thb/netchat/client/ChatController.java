@@ -1,14 +1,24 @@
 package de.thb.netchat.client;
 
-import com.google.gson.Gson;
+import de.thb.netchat.model.HistoryPage;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.model.HistoryRequest;
+import de.thb.netchat.model.InboxBatch;
 import de.thb.netchat.model.Message;
+import de.thb.netchat.model.PresenceDelta;
+import de.thb.netchat.model.PresenceSnapshot;
+import de.thb.netchat.protocol.MessageCodec;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode; // WICHTIG: Import für die Enter-Taste
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Controller für das Chat-Fenster. Manager der grafischen Oberfläche (GUI).
@@ -34,6 +44,15 @@ public class ChatController {
     // Chatpartner, wird gesetzt sobald man den User aus der Userliste clickt.
     private String selectedReceiver = null;
 
+    // Der Verlauf wird seitenweise geladen. Dieser Eintrag steht oben in der Liste, solange es ältere Nachrichten gibt.
+    private static final String LOAD_OLDER = "[INFO] Ältere Nachrichten laden ...";
+    private static final int HISTORY_PAGE_SIZE = 50;
+    // ID der ältesten angezeigten Nachricht (Cursor für die nächste Seite).
+    private Long oldestLoadedId = null;
+
+    // Version des zuletzt angewendeten Präsenzstands (-1 = noch kein Snapshot erhalten).
+    private long presenceVersion = -1;
+
     /**
      * Initialisierungsmethode: Wird vom LoginController manuell aufgerufen, um die Verbindung zu übergeben.
      *
@@ -52,9 +71,9 @@ public class ChatController {
             chatTitle.setText("NetChat – Chat");
         }
 
-        // Listener starten. Es wird das Socket und this::onMessageReceived übergeben. Das ist der Callback (Consumer).
+        // Listener starten. Es wird die Verbindung und this::onMessageReceived übergeben. Das ist der Callback (Consumer).
         // Wenn der Listener Daten hat, führt diese Methode aus.
-        ClientListener listener = new ClientListener(connection.getSocket(), this::onMessageReceived);
+        ClientListener listener = new ClientListener(connection, this::onMessageReceived);
 
         // Neuer Thread wird gestartet. Muss unbedingt parallel passieren, damit die GUI nicht einfriert, während der
         // Listener auf Nachrichten wartet (blockierendes Lesen).
@@ -141,6 +160,16 @@ public class ChatController {
             }
         });
 
+        // Interaktion Nachrichtenliste: Klick auf den Eintrag ganz oben lädt die nächste ältere Seite.
+        messagesList.setOnMouseClicked(event -> {
+            String item = messagesList.getSelectionModel().getSelectedItem();
+            if (LOAD_OLDER.equals(item) && oldestLoadedId != null) {
+                // Eintrag sofort entfernen, damit mehrfaches Klicken nicht dieselbe Seite mehrfach anfordert.
+                messagesList.getItems().remove(LOAD_OLDER);
+                requestHistory(oldestLoadedId);
+            }
+        });
+
         // Interaktion Userliste
         // Handler für Maus-Ereignisse innerhalb der ListView.
         userList.setOnMouseClicked(event -> {
@@ -156,8 +185,7 @@ public class ChatController {
                 if (rawUser != null) {
 
                     // Daten-Normalisierung. Statusanzeige (on/off) wird entfernt, um den Username für die Backend-Logik zu extrahieren.
-                    // .trim() entfernt potenitelle Whitespaces.
-                    String cleanUser = rawUser.replace(" (on)", "").replace(" (off)", "").trim();
+                    String cleanUser = userFromEntry(rawUser);
 
                     // Validierung, Plausibilitätsprüfung: Ein Chat mit eigenem User ist nicht zulässig.
                     if (!cleanUser.equals(username)) {
@@ -169,10 +197,10 @@ public class ChatController {
                         messagesList.getItems().clear();
                         /* messagesList.getItems().add("[INFO] Lade Chatverlauf..."); */
 
-                        // Erstellung und Versand eines history_request-Objekts an den Sever.
+                        // Anforderung der neuesten Verlaufsseite beim Server.
                         // Die Antwort erfolgt asynchron und wird später im CLientListener (onMeesageReceived) bearbeitet.
-                        Message req = new Message("history_request", username, selectedReceiver, null);
-                        connection.send(req);
+                        oldestLoadedId = null;
+                        requestHistory(null);
                         // Setzt den Fokus in das Textfeld.
                         messageField.requestFocus();
                     }
@@ -181,6 +209,18 @@ public class ChatController {
         });
     }
 
+    /**
+     * Fordert eine Seite des Verlaufs mit dem aktuellen Chatpartner an.
+     *
+     * @param beforeId Cursor: Nur Nachrichten vor dieser ID (null = neueste Seite).
+     */
+    private void requestHistory(Long beforeId) {
+        // Erstellung und Versand eines history_request-Objekts an den Sever.
+        // Die Seitenparameter werden als JSON im "text"-Feld übertragen.
+        String query = MessageCodec.GSON.toJson(new HistoryRequest(beforeId, HISTORY_PAGE_SIZE));
+        connection.send(new Message("history_request", username, selectedReceiver, query));
+    }
+
     /**
      * Sendet die aktuell eingegebene Nachricht an den Server
      * und zeigt sie sofort lokal im Chat an.
@@ -239,10 +279,16 @@ public class ChatController {
                     }
                     break;
 
-                // Fall: Der Server meldet eine Änderung der verbundenen User (Login/Logout).
-                // Seitenleiste wird aktualisiert.
-                case "userlist":
-                    updateUserList(message.getText());
+                // Fall: Vollständiger Präsenzstand (nach dem Login oder nach presence_sync).
+                // Seitenleiste wird komplett neu aufgebaut.
+                case "presence_snapshot":
+                    applyPresenceSnapshot(MessageCodec.GSON.fromJson(message.getText(), PresenceSnapshot.class));
+                    break;
+
+                // Fall: Der Server meldet eine einzelne Änderung (Login/Logout/Registrierung).
+                // Nur der betroffene Eintrag der Seitenleiste wird aktualisiert.
+                case "presence":
+                    applyPresenceDelta(MessageCodec.GSON.fromJson(message.getText(), PresenceDelta.class));
                     break;
 
                 // Fall: Systemnachrichten.
@@ -253,24 +299,14 @@ public class ChatController {
                     }
                     break;
 
-                // Fall: Die Antwort auf den history-request (Datenbank-Auszug) wird hier angenommen.
-                case "history_response":
-                    // Ansicht wird bereinigt.
-                    messagesList.getItems().clear();
-                    String data = message.getText();
-                    if (data != null && !data.isEmpty()) {
-                        // Deserialisierung: Der Server schickt alle Nachrichten als einen String, getrennt durch ||.
-                        // Das wird dann aufgesplittet und für jede Zeile hinzugefügt.
-                        String[] messages = data.split("\\|\\|"); // --> Ein Array ["Max: Hi", "Ich: Hallo"]
-                        for (String msg : messages) {
-                            messagesList.getItems().add(msg); // Jeder Schnipsel wird einzeln in die GUI-Liste geworfen.
-                        }
-                    // Leere History -> Neuer Chat.
-                    } else {
-                        messagesList.getItems().add("[INFO] Chat gestartet.");
-                    }
-                    // Nach dem Laden ganz nach unten scrollen.
-                    messagesList.scrollTo(messagesList.getItems().size() - 1);
+                // Fall: Verpasste Nachrichten (Posteingang nach dem Login), in Stapeln.
+                case "inbox":
+                    showInbox(MessageCodec.GSON.fromJson(message.getText(), InboxBatch.class));
+                    break;
+
+                // Fall: Die Antwort auf den history-request (eine Seite des Verlaufs) wird hier angenommen.
+                case "history_page":
+                    showHistoryPage(MessageCodec.GSON.fromJson(message.getText(), HistoryPage.class));
                     break;
                 // Fall: Server meldet Fehler, z.B. User nicht gefunden.
                 case "error":
@@ -281,44 +317,91 @@ public class ChatController {
     }
 
     /**
-     * Verarbeitet die Benutzerliste vom Server und aktualisiert die Anzeige.
-     * Erwartetes Format: "UserA,UserB,UserC||UserA,UserC" (Alle User || Online User).
+     * Zeigt einen Stapel verpasster Nachrichten an.
+     * Nachrichten des geöffneten Chats werden angehängt, für alle anderen Absender erscheint ein Hinweis
+     * mit der Anzahl (die Nachrichten selbst stehen beim Öffnen des Chats im Verlauf).
      *
-     * @param payload Der Roh-String vom Server (Protokoll-Format).
+     * @param batch Der vom Server gelieferte Stapel.
      */
-    private void updateUserList(String payload) {
-        // Validierung.
-        if (payload == null) return;
+    private void showInbox(InboxBatch batch) {
+        if (batch == null || batch.records() == null) return;
+
+        Map<String, Integer> missed = new LinkedHashMap<>();
+        for (HistoryRecord record : batch.records()) {
+            if (record.from().equals(selectedReceiver)) {
+                messagesList.getItems().add(record.from() + ": " + record.text());
+            } else {
+                missed.merge(record.from(), 1, Integer::sum);
+            }
+        }
+        missed.forEach((sender, count) ->
+                messagesList.getItems().add("[INFO] " + count + " verpasste Nachricht(en) von " + sender));
+        if (!messagesList.getItems().isEmpty()) {
+            messagesList.scrollTo(messagesList.getItems().size() - 1);
+        }
+    }
+
+    /**
+     * Fügt eine Verlaufsseite oben in die Nachrichtenliste ein.
+     * Die erste Seite (beforeId == null) ersetzt die Anzeige; jede weitere Seite wird vor den
+     * bereits angezeigten Nachrichten eingefügt, ohne die Ansicht an das Ende zu scrollen.
+     *
+     * @param page Die vom Server gelieferte Seite.
+     */
+    private void showHistoryPage(HistoryPage page) {
+        // Antworten zu einem inzwischen verlassenen Chat werden verworfen.
+        if (page == null || !page.partner().equals(selectedReceiver)) return;
+
+        boolean firstPage = page.beforeId() == null;
+        if (firstPage) {
+            // Ansicht wird bereinigt.
+            messagesList.getItems().clear();
+        } else {
+            // Der alte "Ältere laden"-Eintrag wird durch die neue Seite ersetzt.
+            messagesList.getItems().remove(LOAD_OLDER);
+        }
 
-        // Payload-Parsing & Deserialisierung. Zerlegung des Strings anhand des
-        // Protokoll-Trenners ||.
-        // Index 0: Liste aller registrierten Nutzer.
-        // Index 1: Liste der aktuell verbundenen Nutzer.
-        String[] parts = payload.split("\\|\\|");
-        String[] allUsers = parts.length > 0 ? parts[0].split(",") : new String[0];
-        String[] onlineUsers = parts.length > 1 ? parts[1].split(",") : new String[0];
+        List<String> lines = new ArrayList<>(page.records().size() + 1);
+        if (page.hasMore()) {
+            lines.add(LOAD_OLDER);
+        }
+        for (HistoryRecord record : page.records()) {
+            lines.add(record.from() + ": " + record.text());
+        }
+        if (!page.records().isEmpty()) {
+            oldestLoadedId = page.records().getFirst().id();
+        }
+        messagesList.getItems().addAll(0, lines);
 
-        // Temporäre Liste für den Aufbau des neuen UI-Status.
-        List<String> finalList = new ArrayList<>();
+        if (firstPage) {
+            // Leere History -> Neuer Chat.
+            if (page.records().isEmpty()) {
+                messagesList.getItems().add("[INFO] Chat gestartet.");
+            }
+            // Nach dem Laden ganz nach unten scrollen.
+            messagesList.scrollTo(messagesList.getItems().size() - 1);
+        }
+    }
 
-        // Daten-Aggregation & Filterung.
-        for (String user : allUsers) {
-            // Normalisierung: Entfernen von Whitespaces.
-            user = user.trim();
+    /**
+     * Übernimmt den vollständigen Präsenzstand vom Server und baut die Benutzerliste neu auf.
+     *
+     * @param snapshot Alle registrierten Benutzer, die Online-Benutzer und die Version des Stands.
+     */
+    private void applyPresenceSnapshot(PresenceSnapshot snapshot) {
+        // Validierung.
+        if (snapshot == null) return;
 
-            // Filterlogik: Leere Einträge ignorieren. Eigenen Benutzer aus der Liste ausschließen.
-            if (user.isEmpty() || user.equals(username)) continue;
+        presenceVersion = snapshot.version();
+        Set<String> online = new HashSet<>(snapshot.online());
 
-            // Status-Abgleich. Prüfung, ob der aktuelle User in der Online-Liste enthalten ist.
-            boolean isOnline = false;
-            for (String onlineUser : onlineUsers) {
-                if (onlineUser.trim().equals(user)) {
-                    isOnline = true;
-                    break; // Innere Schleife frühzeitig verlassen.
-                }
-            }
+        // Temporäre Liste für den Aufbau des neuen UI-Status.
+        List<String> finalList = new ArrayList<>();
 
-            finalList.add(user + (isOnline ? " (on)" : " (off)"));
+        for (String user : snapshot.users()) {
+            // Filterlogik: Eigenen Benutzer aus der Liste ausschließen.
+            if (user.equals(username)) continue;
+            finalList.add(userListEntry(user, online.contains(user)));
         }
 
         // Liste wird nur aktualisiert, wenn sich der Inhalt tatsächlich geändert hat.
@@ -326,4 +409,65 @@ public class ChatController {
             userList.getItems().setAll(finalList);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Wendet eine einzelne Präsenzänderung auf die Benutzerliste an.
+     * Es wird nur der betroffene Eintrag ersetzt oder eingefügt, die restliche Liste bleibt unverändert.
+     *
+     * @param delta Die Änderung mit ihrer fortlaufenden Version.
+     */
+    private void applyPresenceDelta(PresenceDelta delta) {
+        // Vor dem ersten Snapshot gibt es keinen Stand, auf den das Delta angewendet werden kann.
+        if (delta == null || presenceVersion < 0) return;
+
+        // Bereits im Snapshot enthalten.
+        if (delta.version() <= presenceVersion) return;
+
+        // Versionslücke: Ein Delta fehlt. Der Stand wird komplett neu angefordert.
+        if (delta.version() > presenceVersion + 1) {
+            presenceVersion = -1;
+            connection.send(new Message("presence_sync", username, null, null));
+            return;
+        }
+
+        presenceVersion = delta.version();
+        if (delta.user().equals(username)) return;
+
+        // Suche des vorhandenen Eintrags ("Name (on)" / "Name (off)").
+        List<String> items = userList.getItems();
+        int index = -1;
+        for (int i = 0; i < items.size(); i++) {
+            if (userFromEntry(items.get(i)).equals(delta.user())) {
+                index = i;
+                break;
+            }
+        }
+
+        switch (delta.status()) {
+            case ONLINE, OFFLINE -> {
+                String entry = userListEntry(delta.user(), delta.status() == PresenceDelta.Status.ONLINE);
+                if (index < 0) {
+                    items.addFirst(entry);
+                } else if (!items.get(index).equals(entry)) {
+                    items.set(index, entry);
+                }
+            }
+            // Neu registrierte Benutzer stehen oben (neueste zuerst) und sind zunächst offline.
+            case REGISTERED -> {
+                if (index < 0) {
+                    items.addFirst(userListEntry(delta.user(), false));
+                }
+            }
+        }
+    }
+
+    // Anzeigeformat eines Eintrags der Benutzerliste.
+    private static String userListEntry(String user, boolean online) {
+        return user + (online ? " (on)" : " (off)");
+    }
+
+    // Daten-Normalisierung: Statusanzeige (on/off) wird entfernt, um den Username zu extrahieren.
+    private static String userFromEntry(String entry) {
+        return entry.replace(" (on)", "").replace(" (off)", "").trim();
+    }
+}
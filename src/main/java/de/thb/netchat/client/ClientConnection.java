@@ -1,35 +1,61 @@
 package de.thb.netchat.client;
 
-import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.FrameCompression;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.protocol.MessageReader;
+import de.thb.netchat.protocol.WireProtocol;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 
 /**
- * Netzwerk-Schnittstelle des Clients. Kapselt Java-Socket-Logik, übernimmt Verantwortung für PrintWriter, OutputStream, flush.
+ * Netzwerk-Schnittstelle des Clients. Kapselt Java-Socket-Logik, übernimmt Verantwortung für OutputStream, flush.
  * Aufgaben: 1. Verbindung zum Server physikalisch herstellen (TCP-Handshake: SYN, SYN+ACK, ACK)
- * 2. Java-Objekte (Message) in JSON umwandeln. 3. Diesen JSON an den Server schicken.
+ * 2. Übertragungsformat mit dem Server aushandeln (JSON oder Binär).
+ * 3. Java-Objekte (Message) kodieren und an den Server schicken bzw. empfangene Frames dekodieren.
  */
 public class ClientConnection {
 
     private final String host;
     private final int port;
 
+    // Soll beim Verbindungsaufbau das Binärformat angeboten werden?
+    // Abschaltbar über die System-Property "netchat.protocol=json".
+    private final boolean preferBinary;
+
     // "Verbindungskabel" zum Server
     private Socket socket;
 
-    // "Schreiber": schiebt Text in den Socket
-    private PrintWriter out;
+    // "Schreiber": schiebt Bytes in den Socket
+    private OutputStream out;
+
+    // JSON-Modus: Die Nachricht wird per Streaming direkt in den Socket-Writer geschrieben.
+    private Writer textOut;
+    private JsonWriter jsonOut;
 
-    // Übersetzer: Java Objekt <-> JSON String
-    private final Gson gson = new Gson();
+    // "Leser": zerlegt den Eingangsstrom in Nachrichten. Wird von Login und ClientListener gemeinsam genutzt,
+    // damit keine bereits gepufferten Bytes verloren gehen.
+    private MessageReader reader;
+
+    // Vereinbartes Übertragungsformat
+    private volatile WireProtocol protocol = WireProtocol.JSON;
 
     // Konstruktor: Bereitet Verbindungsdaten vor.
     public ClientConnection(String host, int port) {
+        this(host, port, !"json".equalsIgnoreCase(System.getProperty("netchat.protocol")));
+    }
+
+    public ClientConnection(String host, int port, boolean preferBinary) {
         this.host = host;
         this.port = port;
+        this.preferBinary = preferBinary;
     }
 
     // Hier wird die eigentliche Verbindung hergestellt.
@@ -37,26 +63,76 @@ public class ClientConnection {
         // TCP-Handshake wird durchgeführt.
         // Auf Serverseite in ChatServer.java wird serverSocket.accept(); ausgelöst.
         socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+
+        out = new BufferedOutputStream(socket.getOutputStream());
+        textOut = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        jsonOut = MessageCodec.newStreamWriter(textOut);
+        reader = new MessageReader(socket.getInputStream(), WireProtocol.JSON);
 
-        // Initialisiert den PrintWriter auf dem Output-Stream des Sockets.
-        // Auto-Flush auf true: Erzwingt, dass bei jedem println() Daten gesendet werden, sonst bleiben diese im Puffer hängen.
-        out = new PrintWriter(socket.getOutputStream(), true);
+        // Willkommensgruß des Servers abholen, damit er nicht als Antwort auf den Login missverstanden wird.
+        receive();
+
+        if (preferBinary) {
+            negotiate();
+        }
     }
 
-    // Nachricht wird an den Server gesendet. Objekt -> JSON -> Internet.
-    public void send(Message message) {
+    // Protokoll-Handshake: Binärformat und Kompression anbieten. Antwortet der Server mit einem Fehler (ältere Version),
+    // bleibt es bei JSON. Ältere Server ohne Kompression bestätigen nur "binary".
+    private void negotiate() throws IOException {
+        send(new Message("hello", null, null, WireProtocol.BINARY.getCapability() + "," + FrameCompression.CAPABILITY));
+        Message answer = receive();
+        if (answer != null && "hello_ack".equals(answer.getType())) {
+            protocol = WireProtocol.negotiate(answer.getText());
+            reader.setProtocol(protocol);
+            if (protocol == WireProtocol.BINARY && FrameCompression.isOffered(answer.getText())) {
+                // Entpackt ab jetzt komprimierte Frames des Servers.
+                reader.setCompression(new FrameCompression());
+            }
+        }
+    }
+
+    // Nachricht wird an den Server gesendet. Objekt -> Frame -> Internet.
+    public synchronized void send(Message message) {
         if (out != null) {
-            // Serialisierung: Java-Objekt wird in einen String verwandelt.
-            // z.B. aus new Message ("login"...) wird {"type":"login", ...}
-            String json = gson.toJson(message);
-            out.println(json);
+            try {
+                // Serialisierung: Java-Objekt wird im vereinbarten Format kodiert.
+                // z.B. aus new Message ("login"...) wird {"type":"login", ...}
+                if (protocol == WireProtocol.JSON) {
+                    // JsonWriter puffert nicht selbst, ein flush() am Ende überträgt Nachricht und Zeilenumbruch zusammen.
+                    MessageCodec.write(message, jsonOut);
+                    textOut.write('\n');
+                    textOut.flush();
+                } else {
+                    out.write(protocol.encodeFrame(message));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                System.err.println("Senden fehlgeschlagen: " + e.getMessage());
+            }
         }
     }
 
+    /**
+     * Blockiert, bis die nächste Nachricht vom Server eintrifft.
+     * Darf immer nur von einem Thread gleichzeitig genutzt werden (Login bzw. danach der ClientListener).
+     *
+     * @return Die empfangene Nachricht.
+     * @throws IOException Wenn die Verbindung geschlossen wurde.
+     */
+    public Message receive() throws IOException {
+        return reader.read();
+    }
+
     public Socket getSocket() {
         return socket;
     }
 
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
     // Verbindung wird geschlossen.
     public void close() {
         try {
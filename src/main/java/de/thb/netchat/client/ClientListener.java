@@ -1,11 +1,8 @@
 package de.thb.netchat.client;
 
-import com.google.gson.Gson;
 import de.thb.netchat.model.Message;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.Socket;
+import java.io.EOFException;
 import java.util.function.Consumer;
 
 /**
@@ -15,8 +12,8 @@ import java.util.function.Consumer;
  */
 public class ClientListener implements Runnable {
 
-    // Offene Socket zum Server - physische Verbindung.
-    private final Socket socket;
+    // Offene Verbindung zum Server. Liefert bereits dekodierte Nachrichten (JSON oder Binär).
+    private final ClientConnection connection;
 
     /*
     * Callback-Interface (Funktionale Interface). Dient der Entkoppelung: Der Listener weiß nicht
@@ -27,18 +24,15 @@ public class ClientListener implements Runnable {
     * */
     private final Consumer<Message> callback;
 
-    // Gson-Instanz für die JSON-Deserialisierung.
-    private final Gson gson = new Gson();
-
     /**
      * Konstruktor.
      *
-     * @param socket Aktive, offene Socket-Verbindung (aus der ClientConnection). Dienst als InputStream für
+     * @param connection Aktive, offene Verbindung (aus dem Login). Dient als Quelle für
      *               eingehende Nachrichten.
      * @param callback Die Methode (onMessageReceived), die aufgerufen werden soll, wenn eine Nachricht ankommt.
      */
-    public ClientListener(Socket socket, Consumer<Message> callback) {
-        this.socket = socket;
+    public ClientListener(ClientConnection connection, Consumer<Message> callback) {
+        this.connection = connection;
         this.callback = callback;
     }
 
@@ -49,27 +43,17 @@ public class ClientListener implements Runnable {
     @Override
     public void run() {
 
-        /*
-        * try-with-resources Statement.
-        * Erstellt den Reader und garantiert, das er und Stream automatisch geschlossen wird
-        * sobald der try-Block verlassen wird (z.B. bei Verbindungsabbruch oder Fehler).
-        * Chain: InputStream (Bytes) --> InputStreamReader (Zeichen) --> BufferedReader (Zeilen-Puffer).
-        * */
-        try (BufferedReader in = new BufferedReader(
-                new InputStreamReader(socket.getInputStream()))) {
-
-            String line;
-
+        try {
             /*
             * Blocking I/O Loop, Endlosschleife.
-            * in.readLine() ist eine blockierende Operation.
-            * Der Thread schläft so lange, bis vom Server ein Zeilenumbruch (\n) gesendet wird.
-            * Die Schleife endet erst, wenn readLine() null zurückgibt (Verbindung vom Server geschlossen).
+            * connection.receive() ist eine blockierende Operation.
+            * Der Thread schläft so lange, bis vom Server ein vollständiger Frame eingetroffen ist.
+            * Die Schleife endet erst, wenn der Server die Verbindung schließt (EOFException).
             * */
-            while ((line = in.readLine()) != null) {
+            while (true) {
 
-                // JSON in Java-Message-Objekt.
-                Message message = gson.fromJson(line, Message.class);
+                // Frame in Java-Message-Objekt.
+                Message message = connection.receive();
 
                 // Null-Safety Check
                 if (message != null) {
@@ -83,6 +67,8 @@ public class ClientListener implements Runnable {
                 }
             }
 
+        } catch (EOFException e) {
+            // Server hat die Verbindung regulär geschlossen.
         } catch (Exception e) {
             // Exception Handling: Wenn Verbindung abreißt oder Socket geschlossen wird.
             System.err.println("ClientListener Fehler:");
@@ -1,6 +1,5 @@
 package de.thb.netchat.client;
 
-import com.google.gson.Gson;
 import de.thb.netchat.model.Message;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -8,9 +7,6 @@ import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-
  /**
   * Aufgaben:
   * 1. Nimmt Benutzerdaten entgegen.
@@ -29,9 +25,6 @@ public class LoginController {
     @FXML
     private Button btnLogin;
 
-    // Übersetzer für JSON
-    private final Gson gson = new Gson();
-
     // Wird ausgeführt, wenn auf login-Button geclickt wird.
     @FXML
     public void login() {
@@ -51,7 +44,7 @@ public class LoginController {
             dauerhafte Verbindung, falls Login fehlschlägt. */
             ClientConnection connection = new ClientConnection("localhost", 9999);
 
-            // Baut den Socket auf (TCP Handshake)
+            // Baut den Socket auf (TCP Handshake) und handelt das Übertragungsformat aus.
             connection.connect();
 
             /* Login-Nachricht wird vorbereitet
@@ -67,16 +60,12 @@ public class LoginController {
             connection.send(loginMsg);
 
             /* Auf Antwort warten (Synchron)
-            BufferedReader wird gebaut, um Antwort des Servers entgegen zu nehmen.
+            Die Verbindung liefert die Antwort des Servers bereits dekodiert.
             Wichtig: Hier wird kein Listener-Thread genutzt, weil erst weitergemacht wird, wenn
             Server grünes Licht gibt. */
-            BufferedReader in = new BufferedReader(
-                    new InputStreamReader(connection.getSocket().getInputStream())
-            );
 
             // Hier wartet (blockiert kurzzeitig) das Programm kurz, bis Daten kommen.
-            String response = in.readLine();
-            Message rsp = new Gson().fromJson(response, Message.class);
+            Message rsp = connection.receive();
 
             // Antwort wird geprüft.
             if (rsp.getType().equals("error")) {
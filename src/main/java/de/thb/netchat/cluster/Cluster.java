@@ -0,0 +1,474 @@
+package de.thb.netchat.cluster;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.EncodedFrame;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.protocol.ProtocolException;
+import de.thb.netchat.protocol.WireProtocol;
+import de.thb.netchat.server.ChatServer;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.server.PresenceService;
+import de.thb.netchat.service.ChatService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cluster-Modus: Mehrere ChatServer-Prozesse teilen sich die Clients.
+ *
+ * Jeder Knoten hat eine ID und kennt die Adressen der anderen Knoten ("netchat.cluster.peers").
+ * Zu jedem anderen Knoten baut er eine ausgehende TCP-Verbindung auf (PeerLink) und nimmt dessen
+ * Verbindung entgegen (ClusterListener). Übertragen werden Message-Frames im Binärformat:
+ * - "cluster_hello": erste Nachricht einer Verbindung, alle lokal eingeloggten Benutzer (vollständiger Stand),
+ * - "cluster_online" / "cluster_offline": ein Benutzer hat sich am Absender an- bzw. abgemeldet,
+ * - "cluster_deliver": eine Nachricht für Benutzer, die am Empfänger eingeloggt sind ("to": JSON-Liste der
+ *   Benutzer, "text": ClusterDelivery als JSON). Mehrere Empfänger auf demselben Knoten teilen sich einen Frame.
+ * - "cluster_inbox": für einen Benutzer ("to"), der am Empfänger eingeloggt ist, liegt Neues im Posteingang.
+ * - "cluster_user": ein Benutzer wurde am Absender registriert ("to": der Name),
+ * - "cluster_room_join" / "cluster_room_leave": ein Benutzer ("text") ist am Absender einem Raum ("to")
+ *   beigetreten bzw. hat ihn verlassen.
+ *
+ * Aus den Hellos und Änderungen ergibt sich auf jedem Knoten ein Index "Benutzer -> Knoten" für alle entfernt
+ * eingeloggten Benutzer. ChatServer.sendToUser schaut zuerst lokal nach und leitet sonst an den Besitzer weiter;
+ * weitergeleitete Nachrichten werden dort nur lokal zugestellt, nie erneut weitergeleitet.
+ * Entfernte An- und Abmeldungen erscheinen bei den lokalen Clients als normale Präsenz-Deltas.
+ *
+ * Store-and-Forward über Knoten hinweg: Direktnachrichten werden erst nach dem Commit weitergeleitet, mit der
+ * gespeicherten Nachricht (ID). Ist der Empfänger beim Eintreffen nicht mehr eingeloggt, legt der Zielknoten sie
+ * in dessen Posteingang. Frames, die wegen einer Unterbrechung nicht gesendet wurden, gehen beim Absender in den
+ * Posteingang (siehe PeerLink). Speichert ein Knoten Posteingangs-Einträge für einen Benutzer, der an einem anderen
+ * Knoten eingeloggt ist, bittet er diesen per "cluster_inbox" um Zustellung. Mindestens einmal: Bricht eine
+ * Verbindung mit bereits geschriebenen Frames ab, kann eine Nachricht live und zusätzlich über den Posteingang kommen.
+ *
+ * Alle Knoten verwenden dieselbe Datenbank. Benutzer- und Raumverzeichnis sind jedoch Caches pro Knoten: Damit sie
+ * gleich bleiben, meldet jeder Knoten Registrierungen sowie Raumbeitritte und -austritte an die anderen, die nur
+ * ihren Cache nachführen (gespeichert hat der Absender bereits). Nach jedem Hello gleicht der Empfänger beide
+ * Verzeichnisse mit der Datenbank ab, damit während einer Trennung verpasste Ereignisse nachgeholt werden.
+ * Der Verlaufs-Cache (ConversationCache) ist im Cluster-Modus abgeschaltet, da andere Knoten Nachrichten an ihm
+ * vorbei speichern; Verlaufsseiten kommen dann direkt aus dem Nachrichtenspeicher.
+ *
+ * Grenzen: Die Prüfung auf doppelte Anmeldung über Knoten hinweg ist nur so aktuell wie der Index
+ * (zwei gleichzeitige Logins auf zwei Knoten werden nicht verhindert). Bis ein Ereignis angekommen ist, kann ein
+ * anderer Knoten kurz einen veralteten Stand sehen (z.B. einen gerade registrierten Benutzer noch nicht kennen).
+ *
+ * Konfiguration (System-Properties):
+ * - netchat.cluster.nodeId: ID dieses Knotens. Ohne ID läuft der Server wie bisher allein.
+ * - netchat.cluster.port: Port für die Verbindungen der anderen Knoten (Standard 7000).
+ * - netchat.cluster.bind: Adresse, an die der Cluster-Port gebunden wird (Standard: alle Schnittstellen).
+ *   Sollte auf die Schnittstelle des internen Netzes zeigen, damit der Port von außen nicht erreichbar ist.
+ * - netchat.cluster.peers: Die anderen Knoten als "id@host:port", kommagetrennt.
+ * - netchat.cluster.secret: Gemeinsames Geheimnis, das jeder Knoten im Hello mitschicken muss (Pflicht).
+ *   Ohne Geheimnis startet der Cluster-Modus nicht: Ein angenommener Knoten kann Präsenz fälschen und
+ *   Nachrichten an beliebige Benutzer zustellen. Das Geheimnis wird unverschlüsselt übertragen, der
+ *   Cluster-Port gehört daher trotzdem in ein vertrauenswürdiges Netz.
+ * - netchat.cluster.queueCapacity: Maximale Anzahl wartender Frames pro Verbindung (Standard 65536).
+ */
+public final class Cluster {
+
+    private static final Type USER_LIST = new TypeToken<List<String>>() {}.getType();
+
+    // Sperre für Hello und Änderungen: Ein Hello liegt dadurch immer genau zwischen zwei Änderungen.
+    private static final Object lock = new Object();
+
+    // Entfernt eingeloggte Benutzer -> ID des Knotens, an dem sie eingeloggt sind.
+    private static final ConcurrentMap<String, String> remoteOwners = new ConcurrentHashMap<>();
+
+    // Aktuelle eingehende Verbindung pro Knoten (siehe ClusterListener).
+    private static final ConcurrentMap<String, Object> connections = new ConcurrentHashMap<>();
+
+    private static final LongAdder forwarded = Metrics.counter("cluster.forwarded");
+    private static final LongAdder received = Metrics.counter("cluster.received");
+    private static final LongAdder dropped = Metrics.counter("cluster.dropped");
+    private static final LongAdder inboxed = Metrics.counter("cluster.inboxed");
+
+    private static volatile String nodeId;
+    private static volatile String secret;
+    private static volatile Map<String, PeerLink> links = Map.of();
+    private static volatile ChatService service;
+
+    private Cluster() {}
+
+    /**
+     * Startet den Cluster-Modus, falls "netchat.cluster.nodeId" gesetzt ist.
+     *
+     * @param chatService Der Service des Servers (Caches werden bei Ereignissen anderer Knoten nachgeführt).
+     */
+    public static void startFromSystemProperties(ChatService chatService) {
+        String id = System.getProperty("netchat.cluster.nodeId");
+        if (id == null || id.isBlank()) {
+            return;
+        }
+        start(chatService, id,
+                System.getProperty("netchat.cluster.bind"), Integer.getInteger("netchat.cluster.port", 7000),
+                System.getProperty("netchat.cluster.peers", ""),
+                System.getProperty("netchat.cluster.secret"),
+                Integer.getInteger("netchat.cluster.queueCapacity", 65_536));
+    }
+
+    /**
+     * Startet Listener und ausgehende Verbindungen.
+     *
+     * @param chatService Der Service des Servers.
+     * @param id ID dieses Knotens (eindeutig im Cluster).
+     * @param bindAddress Adresse für eingehende Verbindungen oder null für alle Schnittstellen.
+     * @param port Port für eingehende Verbindungen anderer Knoten.
+     * @param peers Die anderen Knoten als "id@host:port", kommagetrennt.
+     * @param sharedSecret Gemeinsames Geheimnis (nicht leer).
+     * @param queueCapacity Maximale Anzahl wartender Frames pro ausgehender Verbindung.
+     */
+    public static synchronized void start(ChatService chatService, String id, String bindAddress, int port, String peers, String sharedSecret, int queueCapacity) {
+        if (nodeId != null) {
+            throw new IllegalStateException("Cluster läuft bereits als " + nodeId);
+        }
+        if (sharedSecret == null || sharedSecret.isBlank()) {
+            throw new IllegalArgumentException("Cluster-Modus ohne Geheimnis abgelehnt (netchat.cluster.secret setzen)");
+        }
+        Map<String, PeerLink> parsed = new ConcurrentHashMap<>();
+        for (String peer : peers.split(",")) {
+            peer = peer.trim();
+            if (peer.isEmpty()) {
+                continue;
+            }
+            int at = peer.indexOf('@');
+            int colon = peer.lastIndexOf(':');
+            if (at <= 0 || colon < at) {
+                throw new IllegalArgumentException("Ungültiger Cluster-Knoten (erwartet id@host:port): " + peer);
+            }
+            String peerId = peer.substring(0, at);
+            parsed.put(peerId, new PeerLink(peerId, peer.substring(at + 1, colon),
+                    Integer.parseInt(peer.substring(colon + 1)), queueCapacity));
+        }
+
+        ClusterListener listener;
+        try {
+            listener = new ClusterListener(bindAddress, port);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cluster-Port " + port + " konnte nicht geöffnet werden", e);
+        }
+        // Erst die Konfiguration veröffentlichen, dann Verbindungen annehmen und aufbauen.
+        service = chatService;
+        chatService.disableConversationCache();
+        nodeId = id;
+        secret = sharedSecret;
+        links = Map.copyOf(parsed);
+        Thread.ofPlatform().daemon().name("cluster-listener").start(listener);
+        for (PeerLink link : links.values()) {
+            Thread.ofVirtual().name("cluster-out-" + link.getNodeId()).start(link);
+        }
+
+        Metrics.gauge("cluster.remoteUsers", remoteOwners::size);
+        Metrics.gauge("cluster.linksUp", () -> links.values().stream().filter(PeerLink::isConnected).count());
+        System.out.println("Cluster-Knoten " + id + " lauscht auf " + (bindAddress != null ? bindAddress : "*")
+                + ":" + port + ", " + links.size() + " weitere Knoten");
+    }
+
+    public static boolean isEnabled() {
+        return nodeId != null;
+    }
+
+    /**
+     * true, wenn der Benutzer an einem anderen Knoten eingeloggt ist.
+     */
+    public static boolean isRemoteOnline(String username) {
+        return remoteOwners.containsKey(username);
+    }
+
+    /**
+     * Alle an anderen Knoten eingeloggten Benutzer (schwach konsistente Ansicht).
+     */
+    public static Collection<String> getRemoteUsernames() {
+        return remoteOwners.keySet();
+    }
+
+    // --- Lokale Ereignisse (vom ChatServer) ---
+
+    /**
+     * Ein Benutzer hat sich an diesem Knoten angemeldet.
+     */
+    public static void userOnline(String username) {
+        broadcast(new Message("cluster_online", nodeId, username, null));
+    }
+
+    /**
+     * Ein Benutzer hat sich an diesem Knoten abgemeldet.
+     */
+    public static void userOffline(String username) {
+        broadcast(new Message("cluster_offline", nodeId, username, null));
+    }
+
+    /**
+     * Ein Benutzer wurde an diesem Knoten registriert (nach dem Speichern).
+     */
+    public static void userRegistered(String username) {
+        broadcast(new Message("cluster_user", nodeId, username, null));
+    }
+
+    /**
+     * Ein Benutzer ist an diesem Knoten einem Raum beigetreten (nach dem Speichern).
+     */
+    public static void roomJoined(String room, String username) {
+        broadcast(new Message("cluster_room_join", nodeId, room, username));
+    }
+
+    /**
+     * Ein Benutzer hat an diesem Knoten einen Raum verlassen (nach dem Speichern).
+     */
+    public static void roomLeft(String room, String username) {
+        broadcast(new Message("cluster_room_leave", nodeId, room, username));
+    }
+
+    private static void broadcast(Message message) {
+        if (nodeId == null) {
+            return;
+        }
+        byte[] frame = WireProtocol.BINARY.encodeFrame(message);
+        synchronized (lock) {
+            for (PeerLink link : links.values()) {
+                if (!link.send(frame)) {
+                    dropped.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Leitet eine gespeicherte Direktnachricht an den Knoten weiter, an dem der Empfänger eingeloggt ist.
+     * Ist er dort beim Eintreffen nicht mehr eingeloggt, legt der Knoten sie in seinen Posteingang.
+     *
+     * @param record Die gespeicherte Nachricht (nach dem Commit).
+     * @return true, wenn sie weitergeleitet wurde; false, wenn der Empfänger nirgends online ist oder der
+     *         Frame nicht eingereiht werden konnte (dann legt der Aufrufer sie in den Posteingang).
+     */
+    public static boolean forward(String username, Message message, HistoryRecord record) {
+        String owner = remoteOwners.get(username);
+        return owner != null && deliver(owner, List.of(username), message, record);
+    }
+
+    /**
+     * Der Knoten, an dem ein Benutzer eingeloggt ist, oder null, wenn er an keinem anderen Knoten online ist.
+     */
+    public static String ownerOf(String username) {
+        return remoteOwners.get(username);
+    }
+
+    /**
+     * Stellt eine Nachricht mehreren Benutzern zu, die alle am Knoten owner eingeloggt sind (ein Frame für alle).
+     *
+     * @return true, wenn der Frame eingereiht wurde.
+     */
+    public static boolean deliver(String owner, List<String> usernames, Message message) {
+        return deliver(owner, usernames, message, null);
+    }
+
+    private static boolean deliver(String owner, List<String> usernames, Message message, HistoryRecord record) {
+        PeerLink link = links.get(owner);
+        if (link == null) {
+            return false;
+        }
+        byte[] frame = WireProtocol.BINARY.encodeFrame(new Message("cluster_deliver", nodeId,
+                MessageCodec.GSON.toJson(usernames), MessageCodec.GSON.toJson(new ClusterDelivery(message, record))));
+        if (link.send(frame)) {
+            forwarded.add(usernames.size());
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /**
+     * Für einen Benutzer, der hier nicht eingeloggt ist, wurden Posteingangs-Einträge gespeichert.
+     * Ist er an einem anderen Knoten eingeloggt, soll dieser zustellen (sonst erst beim nächsten Login).
+     */
+    public static void inboxStored(String username) {
+        String owner = remoteOwners.get(username);
+        PeerLink link = owner != null ? links.get(owner) : null;
+        if (link == null) {
+            return;
+        }
+        if (!link.send(WireProtocol.BINARY.encodeFrame(new Message("cluster_inbox", nodeId, username, null)))) {
+            dropped.increment();
+        }
+    }
+
+    // --- Verbindungen (von PeerLink und ClusterListener) ---
+
+    // Frames, die ein PeerLink wegen einer Unterbrechung nicht (sicher) gesendet hat: Weitergeleitete
+    // Direktnachrichten gehen in den Posteingang ihres Empfängers, alles andere holt das nächste Hello nach.
+    static void framesDropped(String peerId, List<byte[]> frames) {
+        int stored = 0;
+        for (byte[] frame : frames) {
+            ClusterDelivery delivery;
+            try {
+                byte[] content = Arrays.copyOfRange(frame, 4, frame.length);
+                Message message = WireProtocol.BINARY.decode(content, content.length);
+                if (message == null || !"cluster_deliver".equals(message.getType())) {
+                    continue;
+                }
+                delivery = MessageCodec.GSON.fromJson(message.getText(), ClusterDelivery.class);
+            } catch (ProtocolException | JsonParseException e) {
+                continue;
+            }
+            if (delivery != null && delivery.record() != null) {
+                service.addToInbox(delivery.record());
+                stored++;
+            }
+        }
+        if (stored > 0) {
+            inboxed.add(stored);
+            System.out.println("Cluster: " + stored + " Nachrichten an " + peerId
+                    + " nicht gesendet, in den Posteingang gelegt");
+        }
+    }
+
+    // Neue ausgehende Verbindung: Das Hello mit dem lokalen Stand wird als erster Frame eingereiht.
+    static void linkOpened(PeerLink link) {
+        synchronized (lock) {
+            ClusterHello hello = new ClusterHello(secret, ChatServer.getLocalUsernames());
+            link.open(WireProtocol.BINARY.encodeFrame(
+                    new Message("cluster_hello", nodeId, link.getNodeId(), MessageCodec.GSON.toJson(hello))));
+        }
+    }
+
+    /**
+     * Prüft das Hello einer eingehenden Verbindung und übernimmt den Stand des Knotens.
+     *
+     * @return false, wenn der Knoten unbekannt ist oder das Geheimnis nicht passt.
+     */
+    static boolean acceptHello(String peerId, ClusterHello hello, Object connection) {
+        if (hello == null || !links.containsKey(peerId) || !secretMatches(hello.secret())) {
+            return false;
+        }
+        connections.put(peerId, connection);
+
+        // Stand ersetzen: Wer nicht mehr in der Liste ist, gilt als abgemeldet.
+        Set<String> users = new HashSet<>(hello.users() != null ? hello.users() : List.of());
+        for (Map.Entry<String, String> entry : remoteOwners.entrySet()) {
+            if (entry.getValue().equals(peerId) && !users.contains(entry.getKey())) {
+                remoteOffline(peerId, entry.getKey());
+            }
+        }
+        for (String user : users) {
+            remoteOnline(peerId, user);
+        }
+
+        // Ereignisse, die während der Trennung verloren gingen, aus der gemeinsamen Datenbank nachholen.
+        for (String registered : service.reloadDirectories()) {
+            PresenceService.userRegistered(registered);
+        }
+        System.out.println("Cluster: Knoten " + peerId + " verbunden, " + users.size() + " Benutzer online");
+        return true;
+    }
+
+    // Verarbeitet eine Nachricht eines anderen Knotens (im Lese-Thread seiner Verbindung).
+    static void onPeerMessage(String peerId, Message message) {
+        if (message.getType() == null) {
+            return;
+        }
+        switch (message.getType()) {
+            case "cluster_online" -> remoteOnline(peerId, message.getTo());
+            case "cluster_offline" -> remoteOffline(peerId, message.getTo());
+            case "cluster_deliver" -> deliverLocally(message);
+            case "cluster_inbox" -> {
+                if (message.getTo() != null && ChatServer.isLocalUser(message.getTo())) {
+                    service.flushInbox(message.getTo());
+                }
+            }
+            case "cluster_user" -> remoteRegistered(message.getTo());
+            case "cluster_room_join" -> remoteRoomChange(message, true);
+            case "cluster_room_leave" -> remoteRoomChange(message, false);
+            default -> System.err.println("Cluster: Unbekannte Nachricht von " + peerId + ": " + message.getType());
+        }
+    }
+
+    // Die eingehende Verbindung eines Knotens ist abgebrochen: Alle dort eingeloggten Benutzer gelten als offline.
+    static void peerLost(String peerId, Object connection) {
+        if (!connections.remove(peerId, connection)) {
+            return; // Inzwischen gibt es eine neuere Verbindung.
+        }
+        List<String> lost = new ArrayList<>();
+        for (Map.Entry<String, String> entry : remoteOwners.entrySet()) {
+            if (entry.getValue().equals(peerId)) {
+                lost.add(entry.getKey());
+            }
+        }
+        for (String user : lost) {
+            remoteOffline(peerId, user);
+        }
+        System.out.println("Cluster: Knoten " + peerId + " getrennt, " + lost.size() + " Benutzer offline");
+    }
+
+    private static void remoteOnline(String peerId, String username) {
+        if (username != null && remoteOwners.put(username, peerId) == null && !ChatServer.isLocalUser(username)) {
+            PresenceService.remoteUserOnline(username);
+        }
+    }
+
+    private static void remoteOffline(String peerId, String username) {
+        if (username != null && remoteOwners.remove(username, peerId) && !ChatServer.isLocalUser(username)) {
+            PresenceService.remoteUserOffline(username);
+        }
+    }
+
+    private static void remoteRegistered(String username) {
+        if (username != null && service.userRegisteredRemotely(username)) {
+            PresenceService.userRegistered(username);
+        }
+    }
+
+    private static void remoteRoomChange(Message message, boolean joined) {
+        if (message.getTo() != null && message.getText() != null) {
+            service.roomChangedRemotely(message.getTo(), message.getText(), joined);
+        }
+    }
+
+    // Weitergeleitete Nachricht: Nur an lokale Sitzungen, einmal kodiert für alle Empfänger.
+    // Nicht mehr eingeloggte Empfänger einer Direktnachricht erhalten sie über den Posteingang.
+    private static void deliverLocally(Message envelope) {
+        List<String> usernames;
+        ClusterDelivery delivery;
+        try {
+            usernames = MessageCodec.GSON.fromJson(envelope.getTo(), USER_LIST);
+            delivery = MessageCodec.GSON.fromJson(envelope.getText(), ClusterDelivery.class);
+        } catch (JsonParseException e) {
+            System.err.println("Cluster: Ungültige Weiterleitung: " + e.getMessage());
+            return;
+        }
+        if (usernames == null || delivery == null || delivery.message() == null) {
+            return;
+        }
+        EncodedFrame frame = new EncodedFrame(delivery.message());
+        for (String username : usernames) {
+            ClientSession session = ChatServer.getSession(username);
+            if (session != null) {
+                session.send(frame);
+                received.increment();
+            } else if (delivery.record() != null && username.equals(delivery.record().to())) {
+                service.addToInbox(delivery.record());
+                inboxed.increment();
+            }
+        }
+    }
+
+    private static boolean secretMatches(String offered) {
+        String expected = secret;
+        return expected != null && offered != null && MessageDigest.isEqual(
+                expected.getBytes(StandardCharsets.UTF_8), offered.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,13 @@
+package de.thb.netchat.cluster;
+
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.model.Message;
+
+/**
+ * Inhalt einer weitergeleiteten Nachricht ("cluster_deliver", Feld "text").
+ *
+ * @param message Die Nachricht, wie sie die Empfänger erhalten.
+ * @param record Die gespeicherte Direktnachricht (mit ID), null bei Raumnachrichten. Ist ein Empfänger beim Eintreffen
+ *               nicht mehr eingeloggt, legt der Zielknoten sie damit in dessen Posteingang.
+ */
+public record ClusterDelivery(Message message, HistoryRecord record) {}
@@ -0,0 +1,11 @@
+package de.thb.netchat.cluster;
+
+import java.util.List;
+
+/**
+ * Inhalt der ersten Nachricht ("cluster_hello") auf einer neuen Verbindung zwischen zwei Knoten.
+ *
+ * @param secret Gemeinsames Cluster-Geheimnis ("netchat.cluster.secret"), muss beim Empfänger übereinstimmen.
+ * @param users Alle Benutzer, die beim Absender gerade eingeloggt sind (vollständiger Stand).
+ */
+public record ClusterHello(String secret, List<String> users) {}
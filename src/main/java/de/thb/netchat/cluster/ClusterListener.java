@@ -0,0 +1,82 @@
+package de.thb.netchat.cluster;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.protocol.MessageReader;
+import de.thb.netchat.protocol.WireProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Nimmt die Verbindungen der anderen Knoten entgegen und verarbeitet, was sie senden.
+ * Pro Knoten gibt es genau eine eingehende Verbindung mit einem eigenen (virtuellen) Lese-Thread;
+ * die Änderungen eines Knotens werden damit in Sendereihenfolge angewendet.
+ */
+final class ClusterListener implements Runnable {
+
+    private final ServerSocket serverSocket;
+
+    /**
+     * @param bindAddress Adresse der Schnittstelle oder null für alle.
+     */
+    ClusterListener(String bindAddress, int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, bindAddress != null ? InetAddress.getByName(bindAddress) : null);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("cluster-in-", 0).start(() -> serve(socket));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        String nodeId = null;
+        // Kennzeichnet diese Verbindung. Baut der Knoten neu auf, bevor die alte als tot erkannt ist,
+        // darf das Aufräumen der alten Verbindung den Stand der neuen nicht löschen.
+        Object connection = new Object();
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            MessageReader reader = new MessageReader(new BufferedInputStream(socket.getInputStream()), WireProtocol.BINARY);
+
+            // 1. Handshake: Die erste Nachricht muss ein Hello mit passendem Geheimnis sein.
+            Message first = reader.read();
+            if (first == null || !"cluster_hello".equals(first.getType()) || first.getFrom() == null) {
+                System.err.println("Cluster: Unerwartete erste Nachricht von " + socket.getRemoteSocketAddress());
+                return;
+            }
+            ClusterHello hello = MessageCodec.GSON.fromJson(first.getText(), ClusterHello.class);
+            if (!Cluster.acceptHello(first.getFrom(), hello, connection)) {
+                System.err.println("Cluster: Verbindung von " + socket.getRemoteSocketAddress() + " abgelehnt");
+                return;
+            }
+            nodeId = first.getFrom();
+
+            // 2. Änderungen und weitergeleitete Nachrichten, bis die Verbindung abbricht.
+            while (true) {
+                Message message = reader.read();
+                if (message != null) {
+                    Cluster.onPeerMessage(nodeId, message);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            if (nodeId != null) {
+                System.err.println("Cluster: Eingehende Verbindung von " + nodeId + " beendet: " + e.getMessage());
+            }
+        } finally {
+            if (nodeId != null) {
+                Cluster.peerLost(nodeId, connection);
+            }
+        }
+    }
+}
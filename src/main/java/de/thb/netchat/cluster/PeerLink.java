@@ -0,0 +1,126 @@
+package de.thb.netchat.cluster;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Ausgehende Verbindung zu einem anderen Knoten. Nur dieser Knoten schreibt darauf,
+ * die Gegenrichtung läuft über die Verbindung, die der andere Knoten zu uns aufbaut (siehe ClusterListener).
+ *
+ * Beliebig viele Threads reihen fertig kodierte Frames ein, ein eigener Thread schreibt sie stapelweise
+ * (wie der Writer einer Client-Sitzung). Bricht die Verbindung ab, wird mit wachsendem Abstand neu verbunden.
+ * Auf jeder neuen Verbindung steht zuerst ein vollständiger Stand ("cluster_hello"), danach folgen die Änderungen.
+ * Frames, die während einer Unterbrechung anfallen, werden verworfen: Präsenz kommt mit dem nächsten Hello
+ * vollständig, Nachrichten sind ohnehin gespeichert. Weitergeleitete Direktnachrichten unter den verworfenen Frames
+ * (noch eingereiht oder im abgebrochenen Stapel) legt Cluster.framesDropped in den Posteingang ihrer Empfänger.
+ */
+final class PeerLink implements Runnable {
+
+    private static final int MAX_BATCH = 64;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final String nodeId;
+    private final String host;
+    private final int port;
+
+    private final BlockingQueue<byte[]> queue;
+
+    // true, sobald das Hello der aktuellen Verbindung eingereiht ist. Änderungen vorher gehen ins Leere.
+    private volatile boolean connected;
+
+    PeerLink(String nodeId, String host, int port, int capacity) {
+        this.nodeId = nodeId;
+        this.host = host;
+        this.port = port;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Reiht einen Frame ein, ohne zu blockieren.
+     *
+     * @return false, wenn die Verbindung gerade nicht besteht oder die Queue voll ist.
+     */
+    boolean send(byte[] frame) {
+        return connected && queue.offer(frame);
+    }
+
+    /**
+     * Startet eine neue Verbindung mit dem Hello als erstem Frame.
+     * Wird unter der Sperre des Clusters aufgerufen, damit zwischen Stand und Änderungen nichts verloren geht.
+     */
+    void open(byte[] hello) {
+        discardQueued(new ArrayList<>());
+        queue.offer(hello);
+        connected = true;
+    }
+
+    // Leert die Queue und meldet die Frames (zusammen mit bereits entnommenen) als nicht gesendet.
+    private void discardQueued(List<byte[]> discarded) {
+        queue.drainTo(discarded);
+        if (!discarded.isEmpty()) {
+            Cluster.framesDropped(nodeId, discarded);
+        }
+    }
+
+    @Override
+    public void run() {
+        long backoff = 500;
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+
+                Cluster.linkOpened(this);
+                System.out.println("Cluster-Verbindung zu " + nodeId + " (" + host + ":" + port + ") aufgebaut");
+                backoff = 500;
+
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (byte[] frame : batch) {
+                        out.write(frame);
+                    }
+                    batch.clear();
+                    out.flush();
+                }
+            } catch (IOException e) {
+                if (connected) {
+                    System.err.println("Cluster-Verbindung zu " + nodeId + " verloren: " + e.getMessage());
+                }
+                connected = false;
+                // Der abgebrochene Stapel kann teilweise angekommen sein: Mindestens einmal statt gar nicht.
+                List<byte[]> discarded = new ArrayList<>(batch);
+                batch.clear();
+                discardQueued(discarded);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package de.thb.netchat.loadtest;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lastgenerator ohne Oberfläche: Simuliert tausende Chat-Clients gegen einen laufenden Server.
+ *
+ * Ablauf:
+ * 1. Anmeldephase: Alle Clients verbinden sich (verteilt über rampUpSeconds), registrieren sich und loggen ein.
+ * 2. Lastphase (durationSeconds): Jeder Client führt im Mittel ratePerUser Aktionen pro Sekunde aus
+ *    (exponentiell verteilte Pausen, also ein Poisson-Prozess). Die Art der Aktion folgt dem Mix.
+ * 3. Auslaufen: Kurze Wartezeit für unterwegs befindliche Nachrichten, dann Abmelden.
+ * 4. Bericht als JSON (Zähler, Durchsatz, Latenz-Perzentile) und Kurzfassung auf der Konsole.
+ *
+ * Konfiguration über System-Properties (Standardwerte in Klammern):
+ *   netchat.load.host (localhost), netchat.load.port (9999), netchat.load.users (1000),
+ *   netchat.load.rampUpSeconds (10), netchat.load.durationSeconds (60), netchat.load.ratePerUser (0.5),
+ *   netchat.load.mix (message=80,history=15,presence=5), netchat.load.payloadBytes (64),
+ *   netchat.load.protocol (binary | json), netchat.load.userPrefix (load), netchat.load.report (load-report.json)
+ *
+ * Beispiel:
+ * java -Dnetchat.load.users=5000 -Dnetchat.load.ratePerUser=1 de.thb.netchat.loadtest.LoadGenerator
+ */
+public class LoadGenerator {
+
+    private static final String PASSWORD = "load-test";
+
+    // Wartezeit nach der Lastphase, bis alle Zustellungen und Bestätigungen eingetroffen sind.
+    private static final long DRAIN_MILLIS = 3_000;
+
+    public static void main(String[] args) throws Exception {
+        String host = System.getProperty("netchat.load.host", "localhost");
+        int port = Integer.getInteger("netchat.load.port", 9999);
+        int users = Integer.getInteger("netchat.load.users", 1_000);
+        long rampUpSeconds = Long.getLong("netchat.load.rampUpSeconds", 10);
+        long durationSeconds = Long.getLong("netchat.load.durationSeconds", 60);
+        double ratePerUser = Double.parseDouble(System.getProperty("netchat.load.ratePerUser", "0.5"));
+        String mixSpec = System.getProperty("netchat.load.mix", "message=80,history=15,presence=5");
+        int payloadBytes = Integer.getInteger("netchat.load.payloadBytes", 64);
+        boolean binary = !"json".equalsIgnoreCase(System.getProperty("netchat.load.protocol", "binary"));
+        String prefix = System.getProperty("netchat.load.userPrefix", "load");
+        Path reportPath = Path.of(System.getProperty("netchat.load.report", "load-report.json"));
+
+        TrafficMix mix = TrafficMix.parse(mixSpec);
+        LoadStats stats = new LoadStats();
+
+        String[] usernames = new String[users];
+        List<SimulatedClient> clients = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            usernames[i] = prefix + i;
+            clients.add(new SimulatedClient(host, port, binary, usernames[i], PASSWORD, stats));
+        }
+
+        // 1. Anmeldephase: gleichmäßig über die Ramp-up-Zeit verteilt.
+        System.out.printf("Lastgenerator: %d Clients gegen %s:%d, Mix %s, %.2f Aktionen/s pro Client%n",
+                users, host, port, mixSpec, ratePerUser);
+        CountDownLatch loggedIn = new CountDownLatch(users);
+        long rampStart = System.nanoTime();
+        long spacingNanos = users > 0 ? TimeUnit.SECONDS.toNanos(rampUpSeconds) / users : 0;
+        for (int i = 0; i < users; i++) {
+            SimulatedClient client = clients.get(i);
+            long startAt = rampStart + i * spacingNanos;
+            Thread.ofVirtual().name("load-login-" + i).start(() -> {
+                try {
+                    sleepUntil(startAt);
+                    client.connectAndLogin();
+                } catch (InterruptedException ignored) {
+                } finally {
+                    loggedIn.countDown();
+                }
+            });
+        }
+        loggedIn.await();
+        double rampSeconds = (System.nanoTime() - rampStart) / 1e9;
+        long online = clients.stream().filter(SimulatedClient::isConnected).count();
+        System.out.printf("Anmeldephase: %d von %d Clients eingeloggt (%.1f s)%n", online, users, rampSeconds);
+
+        // 2. Lastphase.
+        long loadStart = System.nanoTime();
+        long loadEnd = loadStart + TimeUnit.SECONDS.toNanos(durationSeconds);
+        List<Thread> workers = new ArrayList<>(users);
+        for (SimulatedClient client : clients) {
+            if (client.isConnected()) {
+                workers.add(Thread.ofVirtual().name("load-" + client.getUsername()).start(() ->
+                        runTraffic(client, usernames, mix, ratePerUser, payloadBytes, loadEnd)));
+            }
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+
+        // 3. Auslaufen und Abmelden.
+        Thread.sleep(DRAIN_MILLIS);
+        for (SimulatedClient client : clients) {
+            client.close();
+        }
+
+        // 4. Bericht.
+        Map<String, Object> report = report(stats, host, port, users, online, rampSeconds, loadSeconds,
+                ratePerUser, mixSpec, payloadBytes, binary);
+        writeReport(reportPath, report);
+        System.out.printf("Gesendet %d, zugestellt %d, Fehler %d, Verbindungsabbrüche %d%n",
+                stats.messagesSent.sum(), stats.messagesDelivered.sum(), stats.errors.sum(), stats.disconnects.sum());
+        System.out.println("Zustellung (Ende-zu-Ende): " + stats.delivery.snapshot());
+        System.out.println("Bestätigung:               " + stats.ack.snapshot());
+        System.out.println("Verlauf:                   " + stats.history.snapshot());
+        System.out.println("Präsenz:                   " + stats.presence.snapshot());
+        System.out.println("Bericht: " + reportPath.toAbsolutePath());
+        System.exit(0);
+    }
+
+    // Aktionsschleife eines Clients bis zum Ende der Lastphase.
+    private static void runTraffic(SimulatedClient client, String[] usernames, TrafficMix mix,
+                                   double ratePerUser, int payloadBytes, long loadEnd) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            // Zufälliger Versatz, damit nicht alle Clients im selben Takt senden.
+            long next = System.nanoTime() + nextPauseNanos(random, ratePerUser);
+            while (next < loadEnd && client.isConnected()) {
+                sleepUntil(next);
+                switch (mix.pick(random)) {
+                    case MESSAGE -> client.sendChat(
+                            SimulatedClient.randomPartner(usernames, client.getUsername()), payloadBytes, next);
+                    case HISTORY -> client.requestHistory(
+                            SimulatedClient.randomPartner(usernames, client.getUsername()), next);
+                    case PRESENCE -> client.requestPresence(next);
+                }
+                // Vom geplanten Zeitpunkt aus weiterzählen: Ein langsamer Server senkt die Last nicht, und die Latenzen
+                // werden ab "next" gemessen, sodass ein Rückstau mitzählt (kein Coordinated Omission).
+                next += nextPauseNanos(random, ratePerUser);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    // Exponentiell verteilte Pause mit Mittelwert 1/rate.
+    private static long nextPauseNanos(ThreadLocalRandom random, double rate) {
+        if (rate <= 0) {
+            return Long.MAX_VALUE / 4;
+        }
+        return (long) (-Math.log(1 - random.nextDouble()) / rate * 1e9);
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+    }
+
+    private static Map<String, Object> report(LoadStats stats, String host, int port, int users, long online,
+                                              double rampSeconds, double loadSeconds, double ratePerUser,
+                                              String mix, int payloadBytes, boolean binary) {
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("host", host);
+        config.put("port", port);
+        config.put("users", users);
+        config.put("ratePerUser", ratePerUser);
+        config.put("mix", mix);
+        config.put("payloadBytes", payloadBytes);
+        config.put("protocol", binary ? "binary" : "json");
+
+        Map<String, Object> counts = new LinkedHashMap<>();
+        counts.put("loggedIn", online);
+        counts.put("connectFailures", stats.connectFailures.sum());
+        counts.put("loginFailures", stats.loginFailures.sum());
+        counts.put("disconnects", stats.disconnects.sum());
+        counts.put("errors", stats.errors.sum());
+        counts.put("messagesSent", stats.messagesSent.sum());
+        counts.put("messagesDelivered", stats.messagesDelivered.sum());
+        counts.put("messagesAcked", stats.ack.snapshot().count());
+        counts.put("historyRequests", stats.historyRequests.sum());
+        counts.put("presenceRequests", stats.presenceRequests.sum());
+        counts.put("presenceDeltas", stats.presenceDeltas.sum());
+
+        Map<String, Object> throughput = new LinkedHashMap<>();
+        throughput.put("rampUpSeconds", rampSeconds);
+        throughput.put("loadSeconds", loadSeconds);
+        throughput.put("messagesSentPerSecond", stats.messagesSent.sum() / loadSeconds);
+        throughput.put("messagesDeliveredPerSecond", stats.messagesDelivered.sum() / loadSeconds);
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("login", LoadStats.latency(stats.login));
+        latency.put("delivery", LoadStats.latency(stats.delivery));
+        latency.put("ack", LoadStats.latency(stats.ack));
+        latency.put("history", LoadStats.latency(stats.history));
+        latency.put("presence", LoadStats.latency(stats.presence));
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("config", config);
+        report.put("counts", counts);
+        report.put("throughput", throughput);
+        report.put("latency", latency);
+        return report;
+    }
+
+    private static void writeReport(Path path, Map<String, Object> report) throws IOException {
+        Files.writeString(path, new GsonBuilder().setPrettyPrinting().create().toJson(report));
+    }
+
+    /**
+     * Aktionsarten und ihre Gewichte, z.B. "message=80,history=15,presence=5".
+     */
+    enum Action { MESSAGE, HISTORY, PRESENCE }
+
+    record TrafficMix(Action[] actions, int[] cumulativeWeights) {
+
+        static TrafficMix parse(String spec) {
+            List<Action> actions = new ArrayList<>();
+            List<Integer> cumulative = new ArrayList<>();
+            int total = 0;
+            for (String part : spec.split(",")) {
+                String[] keyValue = part.trim().split("=");
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("Ungültiger Mix-Eintrag: " + part);
+                }
+                int weight = Integer.parseInt(keyValue[1].trim());
+                if (weight > 0) {
+                    total += weight;
+                    actions.add(Action.valueOf(keyValue[0].trim().toUpperCase()));
+                    cumulative.add(total);
+                }
+            }
+            if (total == 0) {
+                throw new IllegalArgumentException("Mix ohne Aktionen: " + spec);
+            }
+            return new TrafficMix(actions.toArray(new Action[0]), cumulative.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        Action pick(ThreadLocalRandom random) {
+            int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (value < cumulativeWeights[i]) {
+                    return actions[i];
+                }
+            }
+            return actions[actions.length - 1];
+        }
+    }
+}
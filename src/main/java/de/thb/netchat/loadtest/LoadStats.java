@@ -0,0 +1,52 @@
+package de.thb.netchat.loadtest;
+
+import de.thb.netchat.metrics.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gemeinsame Zähler und Latenz-Histogramme aller simulierten Clients eines Lastlaufs.
+ * Alle Felder sind thread-sicher und werden von beliebig vielen Client-Threads gleichzeitig beschrieben.
+ */
+final class LoadStats {
+
+    // Verbindungsaufbau + Registrierung + Login bis zur Bestätigung.
+    final LatencyHistogram login = new LatencyHistogram();
+    // Geplantes Absenden einer Chat-Nachricht bis zum Eintreffen beim Empfänger (Ende-zu-Ende).
+    final LatencyHistogram delivery = new LatencyHistogram();
+    // Geplantes Absenden bis zur Bestätigung "Nachricht gesendet" (nach dem Commit).
+    final LatencyHistogram ack = new LatencyHistogram();
+    // history_request bis history_page.
+    final LatencyHistogram history = new LatencyHistogram();
+    // presence_sync bis presence_snapshot.
+    final LatencyHistogram presence = new LatencyHistogram();
+
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder loginFailures = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    final LongAdder messagesSent = new LongAdder();
+    final LongAdder messagesDelivered = new LongAdder();
+    final LongAdder historyRequests = new LongAdder();
+    final LongAdder presenceRequests = new LongAdder();
+    final LongAdder presenceDeltas = new LongAdder();
+
+    /**
+     * Kennzahlen eines Histogramms für den Bericht (Latenzen in Mikrosekunden).
+     */
+    static Map<String, Object> latency(LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", snapshot.count());
+        result.put("meanUs", Math.round(snapshot.mean() / 1000));
+        result.put("p50Us", snapshot.percentile(50) / 1000);
+        result.put("p90Us", snapshot.percentile(90) / 1000);
+        result.put("p99Us", snapshot.percentile(99) / 1000);
+        result.put("p999Us", snapshot.percentile(99.9) / 1000);
+        result.put("maxUs", snapshot.max() / 1000);
+        return result;
+    }
+}
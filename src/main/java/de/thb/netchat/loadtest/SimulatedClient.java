@@ -0,0 +1,206 @@
+package de.thb.netchat.loadtest;
+
+import de.thb.netchat.client.ClientConnection;
+import de.thb.netchat.client.ClientListener;
+import de.thb.netchat.metrics.LatencyHistogram;
+import de.thb.netchat.model.Message;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ein simulierter Chat-Client ohne Oberfläche.
+ * Spricht dasselbe Protokoll wie die JavaFX-App (ClientConnection, ClientListener): Verbinden mit Handshake,
+ * Registrieren, Einloggen, danach Nachrichten, Verlaufsanfragen und Präsenz-Synchronisation.
+ *
+ * Latenzmessung:
+ * - Gemessen wird ab dem geplanten Zeitpunkt einer Aktion (siehe LoadGenerator), nicht ab dem tatsächlichen Senden.
+ *   Hängt ein Client hinterher, zählt die Wartezeit bis zum Senden mit (kein Coordinated Omission in den Zahlen).
+ * - Chat-Nachrichten tragen diesen Zeitpunkt (System.nanoTime()) im Text. Alle Clients laufen in derselben JVM,
+ *   der Empfänger kann die Ende-zu-Ende-Latenz daher direkt berechnen.
+ * - Bestätigungen kommen nicht in Sendereihenfolge (der Server sendet jede aus einem eigenen Thread). Sie werden
+ *   über die Referenz zugeordnet, die der Server aus dem "from"-Feld der Nachricht zurückgibt.
+ * - Verlaufsseiten und Snapshots kommen pro Verbindung in Anfragereihenfolge; die Zeitpunkte liegen dafür je
+ *   Anfrageart in einer FIFO-Queue.
+ */
+final class SimulatedClient {
+
+    // Präfix des Nachrichtentexts: "lt:<nanoTime>:" + Füllzeichen.
+    private static final String STAMP = "lt:";
+
+    private final String username;
+    private final String password;
+    private final LoadStats stats;
+    private final ClientConnection connection;
+
+    // Referenz ("lt:<Zeitpunkt>") -> geplanter Zeitpunkt der Nachricht.
+    private final Map<String, Long> pendingAcks = new ConcurrentHashMap<>();
+    private final Queue<Long> pendingHistory = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> pendingPresence = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean connected;
+
+    SimulatedClient(String host, int port, boolean binary, String username, String password, LoadStats stats) {
+        this.username = username;
+        this.password = password;
+        this.stats = stats;
+        this.connection = new ClientConnection(host, port, binary);
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Verbindet, registriert (ein bereits vorhandenes Konto aus einem früheren Lauf wird weiterverwendet)
+     * und loggt ein. Danach übernimmt ein ClientListener-Thread den Empfang.
+     *
+     * @return true, wenn der Login erfolgreich war.
+     */
+    boolean connectAndLogin() {
+        long start = System.nanoTime();
+        try {
+            connection.connect();
+        } catch (IOException e) {
+            stats.connectFailures.increment();
+            return false;
+        }
+
+        try {
+            connection.send(new Message("register", username, null, username + "@load.test||" + password));
+            Message registered = connection.receive();
+            if ("error".equals(registered.getType()) && !registered.getText().contains("bereits vergeben")) {
+                stats.loginFailures.increment();
+                connection.close();
+                return false;
+            }
+
+            connection.send(new Message("login", username, null, password));
+            Message answer = connection.receive();
+            if (!"info".equals(answer.getType())) {
+                stats.loginFailures.increment();
+                connection.close();
+                return false;
+            }
+        } catch (IOException e) {
+            stats.loginFailures.increment();
+            connection.close();
+            return false;
+        }
+        stats.login.recordSince(start);
+
+        connected = true;
+        Thread.ofVirtual().name("load-listener-" + username).start(() -> {
+            new ClientListener(connection, this::onMessage).run();
+            if (connected) {
+                // Nicht von uns geschlossen: Server hat getrennt.
+                connected = false;
+                stats.disconnects.increment();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @param scheduledAt Geplanter Zeitpunkt (System.nanoTime()), ab dem die Latenzen gemessen werden.
+     */
+    void sendChat(String receiver, int payloadBytes, long scheduledAt) {
+        String reference = STAMP + scheduledAt;
+        StringBuilder text = new StringBuilder(reference).append(':');
+        while (text.length() < payloadBytes) {
+            text.append('x');
+        }
+        pendingAcks.put(reference, scheduledAt);
+        stats.messagesSent.increment();
+        connection.send(new Message("message", reference, receiver, text.toString()));
+    }
+
+    void requestHistory(String partner, long scheduledAt) {
+        pendingHistory.add(scheduledAt);
+        stats.historyRequests.increment();
+        connection.send(new Message("history_request", username, partner, null));
+    }
+
+    void requestPresence(long scheduledAt) {
+        pendingPresence.add(scheduledAt);
+        stats.presenceRequests.increment();
+        connection.send(new Message("presence_sync", username, null, null));
+    }
+
+    /**
+     * Meldet sich ab und schließt die Verbindung.
+     */
+    void close() {
+        if (connected) {
+            connected = false;
+            connection.send(new Message("exit", username, null, null));
+            connection.close();
+        }
+    }
+
+    // Läuft im Listener-Thread.
+    private void onMessage(Message message) {
+        long now = System.nanoTime();
+        switch (message.getType()) {
+            case "message" -> {
+                String text = message.getText();
+                if (text != null && text.startsWith(STAMP)) {
+                    int end = text.indexOf(':', STAMP.length());
+                    stats.delivery.record(now - Long.parseLong(text.substring(STAMP.length(), end)));
+                }
+                stats.messagesDelivered.increment();
+            }
+            case "info" -> {
+                if ("Nachricht gesendet".equals(message.getText())) {
+                    Long sentAt = message.getTo() != null ? pendingAcks.remove(message.getTo()) : null;
+                    if (sentAt != null) {
+                        stats.ack.record(now - sentAt);
+                    }
+                }
+            }
+            case "history_page" -> completed(pendingHistory, now, stats.history);
+            case "presence_snapshot" -> completed(pendingPresence, now, stats.presence);
+            case "presence" -> stats.presenceDeltas.increment();
+            case "error" -> {
+                stats.errors.increment();
+                if ("Nachricht konnte nicht gespeichert werden.".equals(message.getText()) && message.getTo() != null) {
+                    pendingAcks.remove(message.getTo());
+                }
+            }
+            default -> {
+                // Andere Nachrichten (z.B. der Snapshot direkt nach dem Login) sind für die Messung ohne Belang.
+            }
+        }
+    }
+
+    // Ordnet eine Antwort der ältesten offenen Anfrage ihrer Art zu. Antworten ohne Anfrage werden ignoriert.
+    private static void completed(Queue<Long> pending, long now, LatencyHistogram histogram) {
+        Long sentAt = pending.poll();
+        if (sentAt != null) {
+            histogram.record(now - sentAt);
+        }
+    }
+
+    /**
+     * Zufälliger anderer Benutzer aus der Liste (für Nachrichten und Verlaufsanfragen).
+     */
+    static String randomPartner(String[] usernames, String self) {
+        if (usernames.length < 2) {
+            return self;
+        }
+        while (true) {
+            String candidate = usernames[ThreadLocalRandom.current().nextInt(usernames.length)];
+            if (!candidate.equals(self)) {
+                return candidate;
+            }
+        }
+    }
+}
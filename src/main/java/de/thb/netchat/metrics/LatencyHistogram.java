@@ -0,0 +1,143 @@
+package de.thb.netchat.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latenz-Histogramm nach dem Vorbild von HdrHistogram (logarithmisch-lineare Buckets).
+ *
+ * Jede Zweierpotenz wird in 32 gleich breite Buckets geteilt; der relative Fehler eines Werts liegt damit
+ * unter 1/32 (ca. 3 %), über den gesamten Bereich von Nanosekunden bis Stunden. Werte unter 64 ns werden exakt gezählt.
+ *
+ * record() ist lock-frei und allokiert nichts: ein paar Bit-Operationen und ein atomares Inkrement.
+ * Mehrere Threads dürfen gleichzeitig aufzeichnen; eine Auswertung (Snapshot) ist dabei nur näherungsweise
+ * konsistent, was für Perzentile genügt.
+ */
+public class LatencyHistogram {
+
+    // 2^5 = 32 Unter-Buckets pro Zweierpotenz.
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    // Gruppe 0 deckt [0, 64) ab, Gruppe g >= 1 den Bereich [2^(g+4), 2^(g+5)).
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Zeichnet eine Dauer in Nanosekunden auf. Negative Werte werden als 0 gezählt.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Zeichnet die seit startNanos (System.nanoTime()) vergangene Zeit auf.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Momentaufnahme der Verteilung.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    // Bucket eines Werts: Die höchsten 6 Bits (führende 1 plus 5 Bits) bestimmen den Unter-Bucket.
+    static int indexOf(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    // Größter Wert, der in den Bucket fällt (wie HdrHistogram: "highest equivalent value").
+    static long highestValueOf(int index) {
+        if (index < 2 * SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long lowest = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Unveränderliche Momentaufnahme eines Histogramms. Alle Werte in Nanosekunden.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Wert, unter dem (bzw. auf dem) percentile Prozent aller Messungen liegen, z.B. percentile(99.9).
+         */
+        public long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Kurzform in Mikrosekunden: p50, p99, p99.9 und Maximum.
+         */
+        @Override
+        public String toString() {
+            return String.format("n=%d p50=%dus p99=%dus p99.9=%dus max=%dus",
+                    count, micros(percentile(50)), micros(percentile(99)), micros(percentile(99.9)), micros(max));
+        }
+
+        private static long micros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+}
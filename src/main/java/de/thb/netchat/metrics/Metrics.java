@@ -0,0 +1,152 @@
+package de.thb.netchat.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Zentrale Kennzahlen des Servers (statische Registry, wie der Sitzungsindex im ChatServer).
+ *
+ * - Pro Command: Anzahl, Fehler und ein Latenz-Histogramm der Ausführung (siehe CommandDispatcher).
+ * - Benannte Timer für weitere Stellen, z.B. "db.call" (Dauer einer Datenbankverbindung vom Ausleihen bis zur
+ *   Rückgabe, siehe ConnectionPool) oder "store.append" (Einreihen bis dauerhaft gespeichert).
+ * - Zähler für Ereignisse, z.B. "outbound.disconnects" (wegen vollem Outbound-Budget getrennte Clients).
+ * - Gauges: Werte, die erst beim Auslesen berechnet werden (verbundene Clients, Queue-Tiefe, ...).
+ *
+ * Das Aufzeichnen ist lock-frei (LongAdder, LatencyHistogram) und kostet auf dem heißen Pfad
+ * zwei System.nanoTime() und ein paar atomare Inkremente.
+ * Mit -Dnetchat.metrics.intervalSeconds=N wird alle N Sekunden ein Bericht auf der Konsole ausgegeben.
+ */
+public final class Metrics {
+
+    private static final ConcurrentMap<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    static {
+        long interval = Long.getLong("netchat.metrics.intervalSeconds", 0);
+        if (interval > 0) {
+            Thread.ofPlatform().daemon().name("metrics-report").start(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(interval * 1000);
+                        System.out.println(report());
+                    }
+                } catch (InterruptedException ignored) {}
+            });
+        }
+    }
+
+    private Metrics() {}
+
+    /**
+     * Kennzahlen eines Commands (wird beim ersten Aufruf angelegt).
+     */
+    public static CommandStats command(String type) {
+        return commands.computeIfAbsent(type, t -> new CommandStats());
+    }
+
+    /**
+     * Ein benannter Timer (wird beim ersten Aufruf angelegt).
+     * Aufrufer auf heißen Pfaden sollten die Referenz in einem Feld halten.
+     */
+    public static LatencyHistogram timer(String name) {
+        return timers.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Ein benannter Zähler (wird beim ersten Aufruf angelegt).
+     * Aufrufer auf heißen Pfaden sollten die Referenz in einem Feld halten.
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Aktueller Stand eines Zählers, 0 wenn unbekannt.
+     */
+    public static long counterValue(String name) {
+        LongAdder counter = counters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Registriert einen Gauge. Ein bereits vorhandener Gauge gleichen Namens wird ersetzt.
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Aktueller Wert eines Gauges, -1 wenn unbekannt.
+     */
+    public static long gaugeValue(String name) {
+        LongSupplier gauge = gauges.get(name);
+        return gauge != null ? gauge.getAsLong() : -1;
+    }
+
+    /**
+     * Mehrzeiliger Bericht über alle Kennzahlen (Latenzen in Mikrosekunden).
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder("--- Kennzahlen ---\n");
+        new TreeMap<>(gauges).forEach((name, gauge) ->
+                sb.append(String.format("%-24s %d%n", name, gauge.getAsLong())));
+        new TreeMap<>(counters).forEach((name, counter) ->
+                sb.append(String.format("%-24s %d%n", name, counter.sum())));
+
+        sb.append(String.format("%-24s %10s %8s %8s %8s %8s %8s%n",
+                "Befehl", "anzahl", "fehler", "p50", "p99", "p99.9", "max"));
+        for (Map.Entry<String, CommandStats> entry : new TreeMap<>(commands).entrySet()) {
+            CommandStats stats = entry.getValue();
+            LatencyHistogram.Snapshot latency = stats.latency.snapshot();
+            sb.append(String.format("%-24s %10d %8d %8d %8d %8d %8d%n", entry.getKey(),
+                    stats.count(), stats.errors(), latency.percentile(50) / 1000, latency.percentile(99) / 1000,
+                    latency.percentile(99.9) / 1000, latency.max() / 1000));
+        }
+
+        new TreeMap<>(timers).forEach((name, timer) ->
+                sb.append(String.format("%-24s %s%n", name, timer.snapshot())));
+        return sb.toString();
+    }
+
+    /**
+     * Kennzahlen eines Commands.
+     */
+    public static final class CommandStats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        /**
+         * Zeichnet eine Ausführung auf.
+         *
+         * @param startNanos System.nanoTime() vor der Ausführung.
+         * @param failed true, wenn die Ausführung mit einer Exception endete.
+         */
+        public void record(long startNanos, boolean failed) {
+            latency.recordSince(startNanos);
+            count.increment();
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long errors() {
+            return errors.sum();
+        }
+
+        public LatencyHistogram.Snapshot latency() {
+            return latency.snapshot();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package de.thb.netchat.model;
+
+import java.util.List;
+
+/**
+ * Eine Seite des Chatverlaufs (JSON im "text"-Feld einer history_page-Nachricht).
+ *
+ * @param partner Der Chatpartner, zu dem die Seite gehört.
+ * @param beforeId Der Cursor der Anfrage (null = neueste Seite).
+ * @param records Die Nachrichten der Seite, chronologisch sortiert (älteste zuerst).
+ * @param hasMore true, wenn es noch ältere Nachrichten gibt. Diese werden mit beforeId = records[0].id geladen.
+ */
+public record HistoryPage(String partner, Long beforeId, List<HistoryRecord> records, boolean hasMore) {}
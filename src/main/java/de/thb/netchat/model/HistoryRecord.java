@@ -0,0 +1,12 @@
+package de.thb.netchat.model;
+
+/**
+ * Eine einzelne gespeicherte Chat-Nachricht, wie sie im Verlauf übertragen wird.
+ *
+ * @param id Fortlaufende ID aus der Datenbank. Dient als Cursor für das Nachladen älterer Nachrichten.
+ * @param from Absender.
+ * @param to Empfänger.
+ * @param text Inhalt der Nachricht.
+ * @param timestamp Zeitpunkt der Speicherung (Format der Datenbank, z.B. "2025-01-31 12:00:00").
+ */
+public record HistoryRecord(long id, String from, String to, String text, String timestamp) {}
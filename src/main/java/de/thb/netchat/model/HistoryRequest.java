@@ -0,0 +1,10 @@
+package de.thb.netchat.model;
+
+/**
+ * Parameter einer Verlaufsanfrage (JSON im "text"-Feld einer history_request-Nachricht).
+ * Fehlt der Inhalt, werden die neuesten Nachrichten geladen.
+ *
+ * @param beforeId Nur Nachrichten mit kleinerer ID laden (null = ab der neuesten Nachricht).
+ * @param limit Gewünschte Seitengröße (wird vom Server begrenzt).
+ */
+public record HistoryRequest(Long beforeId, int limit) {}
@@ -0,0 +1,11 @@
+package de.thb.netchat.model;
+
+import java.util.List;
+
+/**
+ * Ein Stapel verpasster Nachrichten (JSON im "text"-Feld einer inbox-Nachricht).
+ * Nach dem Login erhält der Client seinen Posteingang in solchen Stapeln, älteste Nachricht zuerst.
+ *
+ * @param records Die Nachrichten, chronologisch sortiert. Die IDs sind die des Nachrichtenspeichers.
+ */
+public record InboxBatch(List<HistoryRecord> records) {}
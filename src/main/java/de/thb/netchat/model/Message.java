@@ -17,7 +17,7 @@ public class Message {
     // Absender der Nachricht (z.B. Benutzername).
     private String from;
 
-    // Empfänger der Nachricht (z.B. "ALL" für Broadcast oder spezifischer User).
+    // Empfänger der Nachricht (spezifischer User, bei room_* der Name des Raums).
     private String to;
 
     // Der eigentliche Inhalt der Nachricht.
@@ -0,0 +1,22 @@
+package de.thb.netchat.model;
+
+/**
+ * Einzelne Präsenzänderung (JSON im "text"-Feld einer presence-Nachricht).
+ * Die Versionen sind lückenlos fortlaufend. Erkennt ein Client eine Lücke, fordert er mit
+ * presence_sync einen neuen Snapshot an.
+ *
+ * @param version Fortlaufende Versionsnummer dieser Änderung.
+ * @param user Der betroffene Benutzer.
+ * @param status Die Art der Änderung.
+ */
+public record PresenceDelta(long version, String user, Status status) {
+
+    public enum Status {
+        // Benutzer hat sich angemeldet.
+        ONLINE,
+        // Benutzer hat sich abgemeldet oder die Verbindung verloren.
+        OFFLINE,
+        // Neuer Benutzer wurde registriert (ist danach noch offline).
+        REGISTERED
+    }
+}
@@ -0,0 +1,13 @@
+package de.thb.netchat.model;
+
+import java.util.List;
+
+/**
+ * Vollständiger Präsenzstand (JSON im "text"-Feld einer presence_snapshot-Nachricht).
+ * Wird nach dem Login und auf Anforderung (presence_sync) gesendet; danach folgen nur noch PresenceDelta-Nachrichten.
+ *
+ * @param version Stand, auf dem der Snapshot beruht. Das nächste Delta trägt version + 1.
+ * @param users Alle registrierten Benutzer (neueste zuerst).
+ * @param online Die aktuell angemeldeten Benutzer.
+ */
+public record PresenceSnapshot(long version, List<String> users, List<String> online) {}
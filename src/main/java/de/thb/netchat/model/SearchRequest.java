@@ -0,0 +1,10 @@
+package de.thb.netchat.model;
+
+/**
+ * Parameter einer Volltextsuche (JSON im "text"-Feld einer search-Nachricht).
+ *
+ * @param query Suchbegriffe, durch Leerzeichen getrennt. Alle müssen vorkommen, der letzte auch als Wortanfang.
+ * @param offset Anzahl zu überspringender Treffer (für weitere Seiten).
+ * @param limit Gewünschte Seitengröße (wird vom Server begrenzt).
+ */
+public record SearchRequest(String query, int offset, int limit) {}
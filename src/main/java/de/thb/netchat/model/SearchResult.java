@@ -0,0 +1,13 @@
+package de.thb.netchat.model;
+
+import java.util.List;
+
+/**
+ * Eine Seite mit Suchtreffern (JSON im "text"-Feld einer search_result-Nachricht).
+ *
+ * @param query Die Suchbegriffe der Anfrage.
+ * @param offset Der Offset der Anfrage.
+ * @param hits Die gefundenen Nachrichten, die relevanteste zuerst.
+ * @param hasMore true, wenn es weitere Treffer gibt. Diese werden mit offset + hits.size() geladen.
+ */
+public record SearchResult(String query, int offset, List<HistoryRecord> hits, boolean hasMore) {}
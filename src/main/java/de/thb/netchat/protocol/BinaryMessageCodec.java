@@ -0,0 +1,228 @@
+package de.thb.netchat.protocol;
+
+import de.thb.netchat.model.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Kompakte Binärkodierung eines Message-Objekts.
+ * Aufbau des Frame-Inhalts:
+ * [Typ-Code: 1 Byte] [nur bei Code 0: Typ als String] [from] [to] [text]
+ * Strings werden als Varint-Länge + UTF-8 kodiert. Die Länge wird um 1 verschoben,
+ * damit 0 für null steht (z.B. Empfänger bei Server-Nachrichten).
+ */
+public final class BinaryMessageCodec {
+
+    // Häufige Nachrichtentypen als 1-Byte-Code. Neue Typen werden hinten angehängt,
+    // damit bestehende Codes stabil bleiben. Unbekannte Typen werden mit Code 0 als String übertragen.
+    private static final String[] TYPES = {
+            null, "info", "error", "register", "login", "message",
+            "history_request", "history_response", "userlist", "exit", "hello", "hello_ack",
+            "history_page", "presence", "presence_snapshot", "presence_sync",
+            "room_join", "room_leave", "room_message",
+            "cluster_hello", "cluster_online", "cluster_offline", "cluster_deliver", "inbox",
+            "search", "search_result", "cluster_user", "cluster_room_join", "cluster_room_leave",
+            "cluster_inbox"
+    };
+
+    private BinaryMessageCodec() {}
+
+    /**
+     * Kodiert die Nachricht inklusive 4-Byte-Längenpräfix (fertiger Frame).
+     */
+    public static byte[] encodeFrame(Message msg) {
+        Output out = new Output(64);
+        out.skipHeader();
+
+        int code = typeCode(msg.getType());
+        out.writeByte(code);
+        if (code == 0) {
+            out.writeString(msg.getType());
+        }
+        out.writeString(msg.getFrom());
+        out.writeString(msg.getTo());
+        out.writeString(msg.getText());
+
+        return out.toFrame();
+    }
+
+    /**
+     * Dekodiert den Inhalt eines Frames (ohne Längenpräfix).
+     *
+     * @throws ProtocolException Falls der Inhalt abgeschnitten oder ungültig ist.
+     */
+    public static Message decode(byte[] buf, int length) throws ProtocolException {
+        Input in = new Input(buf, length);
+
+        int code = in.readByte();
+        String type;
+        if (code == 0) {
+            type = in.readString();
+        } else if (code < TYPES.length) {
+            type = TYPES[code];
+        } else {
+            throw new ProtocolException("Unbekannter Typ-Code: " + code);
+        }
+
+        String from = in.readString();
+        String to = in.readString();
+        String text = in.readString();
+        return new Message(type, from, to, text);
+    }
+
+    private static int typeCode(String type) {
+        if (type != null) {
+            for (int i = 1; i < TYPES.length; i++) {
+                if (TYPES[i].equals(type)) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+
+    // --- Hilfsklassen für das Schreiben/Lesen ---
+
+    // Wachsender Schreibpuffer. Die ersten 4 Bytes sind für das Längenpräfix reserviert.
+    private static final class Output {
+        private byte[] buf;
+        private int pos;
+
+        Output(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void skipHeader() {
+            pos = 4;
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        // UTF-8 wird direkt in den Puffer geschrieben, ohne Zwischen-Array pro String.
+        void writeString(String s) {
+            if (s == null) {
+                writeVarint(0);
+                return;
+            }
+            int utf8Length = utf8Length(s);
+            writeVarint(utf8Length + 1);
+            ensure(utf8Length);
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buf[pos++] = (byte) c;
+                } else if (c < 0x800) {
+                    buf[pos++] = (byte) (0xC0 | (c >> 6));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else {
+                    // Einzelne Surrogates werden wie bei String.getBytes() als '?' kodiert.
+                    if (Character.isSurrogate(c)) {
+                        buf[pos++] = '?';
+                        continue;
+                    }
+                    buf[pos++] = (byte) (0xE0 | (c >> 12));
+                    buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buf[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+            }
+        }
+
+        byte[] toFrame() {
+            int length = pos - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            return pos == buf.length ? buf : Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static final class Input {
+        private final byte[] buf;
+        private final int limit;
+        private int pos;
+
+        Input(byte[] buf, int limit) {
+            this.buf = buf;
+            this.limit = limit;
+        }
+
+        int readByte() throws ProtocolException {
+            if (pos >= limit) {
+                throw new ProtocolException("Frame abgeschnitten");
+            }
+            return buf[pos++] & 0xFF;
+        }
+
+        int readVarint() throws ProtocolException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new ProtocolException("Varint zu lang");
+        }
+
+        String readString() throws ProtocolException {
+            int lengthPlusOne = readVarint();
+            if (lengthPlusOne == 0) {
+                return null;
+            }
+            int length = lengthPlusOne - 1;
+            if (length < 0 || length > limit - pos) {
+                throw new ProtocolException("String-Länge ungültig: " + length);
+            }
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.thb.netchat.protocol;
+
+import de.thb.netchat.model.Message;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Eine Nachricht zusammen mit ihren fertig kodierten Frames (einer pro Übertragungsformat).
+ *
+ * Geht dieselbe Nachricht an viele Empfänger (Präsenz-Deltas, Raumnachrichten), wird sie pro Format genau einmal
+ * kodiert, beim ersten Empfänger, der dieses Format verwendet. Alle weiteren Empfänger reihen dasselbe byte[] in
+ * ihre Outbound-Queue ein. Kosten und Allokationen hängen damit nicht mehr von der Zahl der Empfänger ab.
+ *
+ * Die Frames sind unveränderlich: Weder Sitzungen noch Writer dürfen ein geteiltes Array verändern
+ * (ClientHandler schreibt es nur in den Stream, NioClientSession umhüllt es mit einem eigenen ByteBuffer).
+ * Dasselbe gilt für den komprimierten Binär-Frame (FrameCompression): Er wird einmal erzeugt und von allen
+ * Empfängern mit vereinbarter Kompression geteilt. Alle Sitzungen eines Servers komprimieren mit denselben
+ * Einstellungen, das Ergebnis hängt also nicht vom Empfänger ab.
+ * Thread-sicher: Kodieren zwei Threads gleichzeitig dasselbe Format, gewinnt ein Ergebnis; beide sind gleich.
+ */
+public final class EncodedFrame {
+
+    private static final WireProtocol[] PROTOCOLS = WireProtocol.values();
+
+    private final Message message;
+    private final AtomicReferenceArray<byte[]> frames = new AtomicReferenceArray<>(PROTOCOLS.length);
+
+    // Binär-Frame nach FrameCompression.compress (bei kleinen Frames derselbe wie frames[BINARY]).
+    private final AtomicReference<byte[]> compressed = new AtomicReference<>();
+
+    public EncodedFrame(Message message) {
+        this.message = message;
+    }
+
+    /**
+     * Der fertige Frame im gewünschten Format (inkl. Zeilenumbruch bzw. Längenpräfix).
+     * Das Array wird geteilt und darf nicht verändert werden.
+     */
+    public byte[] bytes(WireProtocol protocol) {
+        int index = protocol.ordinal();
+        byte[] frame = frames.get(index);
+        if (frame == null) {
+            frame = protocol.encodeFrame(message);
+            if (!frames.compareAndSet(index, null, frame)) {
+                frame = frames.get(index);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Der Binär-Frame nach der Kompression, beim ersten Aufruf erzeugt. Das Array wird geteilt und darf nicht
+     * verändert werden.
+     */
+    public byte[] compressedBytes(FrameCompression compression) {
+        byte[] frame = compressed.get();
+        if (frame == null) {
+            frame = compression.compress(bytes(WireProtocol.BINARY));
+            if (!compressed.compareAndSet(null, frame)) {
+                frame = compressed.get();
+            }
+        }
+        return frame;
+    }
+
+    public Message message() {
+        return message;
+    }
+
+    public String type() {
+        return message.getType();
+    }
+}
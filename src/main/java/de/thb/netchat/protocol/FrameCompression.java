@@ -0,0 +1,205 @@
+package de.thb.netchat.protocol;
+
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.Message;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate-Kompression großer Binär-Frames (Fähigkeit "deflate" im Handshake, siehe HelloCommand).
+ *
+ * Verlaufsseiten und Präsenz-Snapshots sind groß und bestehen aus sich wiederholendem Text (Namen, Zeitstempel,
+ * Feldnamen im JSON). Frames ab einer Mindestgröße werden daher komprimiert; kleine Chat-Nachrichten bleiben
+ * unverändert und kosten keine zusätzliche Latenz. Lohnt sich die Kompression nicht, geht der Frame ebenfalls unverändert raus.
+ *
+ * Format eines komprimierten Frames im Binärprotokoll:
+ * [int Länge][byte 0xFF][int Länge des Originalinhalts][Deflate-Daten (raw, ohne zlib-Header)]
+ * 0xFF ist nie ein Typ-Code (BinaryMessageCodec), unkomprimierte Frames bleiben damit unverändert lesbar.
+ *
+ * Jeder Frame wird für sich komprimiert (reset nach jedem Frame): Die Frames einer Verbindung werden von mehreren
+ * Threads kodiert und erst danach eingereiht, ein fortlaufender Deflate-Strom käme beim Empfänger in falscher Reihenfolge an.
+ * Deflater/Inflater belegen native Puffer (zusammen einige 100 KB) und gehören daher nicht zur Verbindung, sondern
+ * zu einem kleinen gemeinsamen Pool (POOL_SIZE je Sorte): Gleichzeitig in Gebrauch sind höchstens so viele, wie
+ * Threads gerade komprimieren. Ist der Pool leer, wird ein neuer angelegt; passt er bei der Rückgabe nicht mehr
+ * hinein, wird er sofort freigegeben. Kein ThreadLocal: Gesendet wird auch aus virtuellen Threads, von denen
+ * jeder einen eigenen Deflater bekäme.
+ *
+ * Thread-sicher und ohne Zustand pro Verbindung; komprimiert wird im Thread des Senders, nicht im Reactor.
+ */
+public final class FrameCompression {
+
+    // Name im Handshake ("hello"/"hello_ack").
+    public static final String CAPABILITY = "deflate";
+
+    // Markierung im ersten Byte des Frame-Inhalts.
+    static final int COMPRESSED = 0xFF;
+
+    // Kopf eines komprimierten Inhalts: Markierung + Originallänge.
+    private static final int HEADER = 5;
+
+    // Der Server komprimiert nur, wenn nicht per netchat.compression=false abgeschaltet.
+    public static final boolean ENABLED = !"false".equalsIgnoreCase(System.getProperty("netchat.compression"));
+
+    // Frames mit kleinerem Inhalt werden nie komprimiert (mindestens HEADER + 1, siehe compress).
+    public static final int DEFAULT_THRESHOLD = Integer.getInteger("netchat.compression.threshold", 1024);
+
+    // Deflate-Stufe 1 (schnell) bis 9 (klein).
+    private static final int LEVEL = Integer.getInteger("netchat.compression.level", 6);
+
+    // Höchstzahl wiederverwendeter Deflater bzw. Inflater.
+    private static final int POOL_SIZE = Integer.getInteger("netchat.compression.pool",
+            Runtime.getRuntime().availableProcessors());
+
+    private static final BlockingQueue<Compressor> compressors = new ArrayBlockingQueue<>(Math.max(1, POOL_SIZE));
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(Math.max(1, POOL_SIZE));
+
+    private static final LongAdder compressedFrames = Metrics.counter("compression.frames");
+    private static final LongAdder bytesSaved = Metrics.counter("compression.bytesSaved");
+
+    private final int threshold;
+
+    public FrameCompression() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public FrameCompression(int threshold) {
+        // Darunter bliebe kein Platz für Deflate-Daten (limit in compress wäre <= 0).
+        this.threshold = Math.max(threshold, HEADER + 1);
+    }
+
+    /**
+     * Prüft, ob "deflate" in einer kommagetrennten Fähigkeitenliste vorkommt.
+     */
+    public static boolean isOffered(String capabilities) {
+        if (capabilities != null) {
+            for (String capability : capabilities.split(",")) {
+                if (CAPABILITY.equalsIgnoreCase(capability.trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Komprimiert einen fertigen Binär-Frame (inkl. Längenpräfix), falls er groß genug ist und kleiner wird.
+     *
+     * @return Der komprimierte Frame oder unverändert der übergebene.
+     */
+    public byte[] compress(byte[] frame) {
+        int length = frame.length - 4;
+        if (length < threshold) {
+            return frame;
+        }
+        // Mehr als das Original darf nicht herauskommen, sonst wird unkomprimiert gesendet.
+        int limit = length - HEADER;
+
+        Compressor compressor = compressors.poll();
+        if (compressor == null) {
+            compressor = new Compressor();
+        }
+        byte[] out;
+        try {
+            Deflater deflater = compressor.deflater;
+            if (compressor.buffer.length < limit) {
+                compressor.buffer = new byte[limit];
+            }
+            deflater.setInput(frame, 4, length);
+            deflater.finish();
+            int size = 0;
+            while (!deflater.finished() && size < limit) {
+                size += deflater.deflate(compressor.buffer, size, limit - size);
+            }
+            if (!deflater.finished()) {
+                return frame;
+            }
+
+            int total = HEADER + size;
+            out = new byte[4 + total];
+            writeInt(out, 0, total);
+            out[4] = (byte) COMPRESSED;
+            writeInt(out, 5, length);
+            System.arraycopy(compressor.buffer, 0, out, 4 + HEADER, size);
+        } finally {
+            compressor.deflater.reset();
+            if (!compressors.offer(compressor)) {
+                compressor.deflater.end();
+            }
+        }
+
+        compressedFrames.increment();
+        bytesSaved.add(frame.length - out.length);
+        return out;
+    }
+
+    /**
+     * Dekodiert den Inhalt eines Binär-Frames (ohne Längenpräfix), komprimiert oder nicht.
+     *
+     * @throws ProtocolException Falls der Inhalt ungültig ist oder sich nicht entpacken lässt.
+     */
+    public Message decode(byte[] buf, int length) throws ProtocolException {
+        if (length == 0 || (buf[0] & 0xFF) != COMPRESSED) {
+            return BinaryMessageCodec.decode(buf, length);
+        }
+        if (length < HEADER) {
+            throw new ProtocolException("Komprimierter Frame ohne Kopf");
+        }
+        int originalLength = readInt(buf, 1);
+        if (originalLength < 0 || originalLength > WireProtocol.MAX_FRAME_LENGTH) {
+            throw new ProtocolException("Ungültige Länge des komprimierten Frames: " + originalLength);
+        }
+
+        byte[] original = new byte[originalLength];
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        try {
+            inflater.setInput(buf, HEADER, length - HEADER);
+            int size = 0;
+            while (size < originalLength && !inflater.finished()) {
+                int n = inflater.inflate(original, size, originalLength - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += n;
+            }
+            if (size != originalLength) {
+                throw new ProtocolException("Komprimierter Frame unvollständig");
+            }
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Komprimierter Frame ungültig: " + e.getMessage());
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+        return BinaryMessageCodec.decode(original, originalLength);
+    }
+
+    // Deflater mit wiederverwendetem Ausgabepuffer, gehört jeweils einem Thread, solange er ausgeliehen ist.
+    private static final class Compressor {
+
+        final Deflater deflater = new Deflater(LEVEL, true);
+
+        byte[] buffer = new byte[0];
+    }
+
+    private static void writeInt(byte[] buf, int offset, int value) {
+        buf[offset] = (byte) (value >>> 24);
+        buf[offset + 1] = (byte) (value >>> 16);
+        buf[offset + 2] = (byte) (value >>> 8);
+        buf[offset + 3] = (byte) value;
+    }
+
+    private static int readInt(byte[] buf, int offset) {
+        return ((buf[offset] & 0xFF) << 24) | ((buf[offset + 1] & 0xFF) << 16)
+                | ((buf[offset + 2] & 0xFF) << 8) | (buf[offset + 3] & 0xFF);
+    }
+}
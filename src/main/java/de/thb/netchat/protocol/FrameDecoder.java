@@ -0,0 +1,28 @@
+package de.thb.netchat.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Zerlegt einen Byte-Strom in einzelne Frames (Nachrichtengrenzen).
+ * Da ein read() auf einem Socket beliebige Teilstücke liefert, werden unvollständige Frames
+ * intern zwischengespeichert, bis sie vollständig eingetroffen sind.
+ *
+ * Pull-Prinzip: Der Aufrufer holt Frame für Frame ab. Wechselt die Sitzung zwischendurch das
+ * Protokoll (Handshake), werden die restlichen Bytes im Puffer vom neuen Decoder weitergelesen.
+ */
+public interface FrameDecoder {
+
+    /**
+     * Versucht, den nächsten vollständigen Frame aus dem Puffer zu lesen.
+     *
+     * @param src Puffer im Lesemodus (nach flip()). Verbrauchte Bytes werden konsumiert.
+     * @return true, wenn ein Frame vollständig ist; abrufbar über frameBuffer()/frameLength().
+     * @throws ProtocolException Falls ein Frame die maximale Länge überschreitet oder ungültig ist.
+     */
+    boolean next(ByteBuffer src) throws ProtocolException;
+
+    // Inhalt des zuletzt gelesenen Frames (gültig bis zum nächsten Aufruf von next()).
+    byte[] frameBuffer();
+
+    int frameLength();
+}
@@ -0,0 +1,78 @@
+package de.thb.netchat.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame-Decoder für das binäre Protokoll.
+ * Jeder Frame beginnt mit seiner Länge als 4-Byte-Integer (Big Endian), gefolgt vom Inhalt.
+ * Dadurch muss der Empfänger nicht jedes Byte nach einem Trennzeichen durchsuchen, sondern kann
+ * den Inhalt am Stück kopieren.
+ */
+public class LengthPrefixedFrameDecoder implements FrameDecoder {
+
+    private final int maxFrameLength;
+
+    private final byte[] header = new byte[4];
+    private int headerRead = 0;
+
+    private byte[] frame = new byte[256];
+    private int expected = -1;
+    private int frameRead = 0;
+
+    // true, wenn frame einen vollständigen Frame enthält, der beim nächsten Aufruf verworfen wird.
+    private boolean complete = false;
+
+    public LengthPrefixedFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public boolean next(ByteBuffer src) throws ProtocolException {
+        if (complete) {
+            headerRead = 0;
+            expected = -1;
+            frameRead = 0;
+            complete = false;
+        }
+
+        // 1. Längenfeld lesen (kann über mehrere read()-Aufrufe verteilt ankommen).
+        while (expected < 0) {
+            if (!src.hasRemaining()) {
+                return false;
+            }
+            header[headerRead++] = src.get();
+            if (headerRead == 4) {
+                int length = ((header[0] & 0xFF) << 24) | ((header[1] & 0xFF) << 16)
+                        | ((header[2] & 0xFF) << 8) | (header[3] & 0xFF);
+                if (length < 0 || length > maxFrameLength) {
+                    throw new ProtocolException("Ungültige Frame-Länge: " + length);
+                }
+                if (frame.length < length) {
+                    frame = new byte[Math.min(Math.max(length, frame.length * 2), maxFrameLength)];
+                }
+                expected = length;
+            }
+        }
+
+        // 2. Inhalt blockweise kopieren.
+        int chunk = Math.min(expected - frameRead, src.remaining());
+        src.get(frame, frameRead, chunk);
+        frameRead += chunk;
+
+        if (frameRead == expected) {
+            complete = true;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] frameBuffer() {
+        return frame;
+    }
+
+    @Override
+    public int frameLength() {
+        return expected;
+    }
+}
@@ -0,0 +1,69 @@
+package de.thb.netchat.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frame-Decoder für das zeilenbasierte Protokoll (newline-delimited JSON).
+ * Ein Frame endet mit '\n'; Windows-Zeilenenden ("\r\n") werden wie bei BufferedReader.readLine() toleriert.
+ */
+public class LineFrameDecoder implements FrameDecoder {
+
+    // Schutz vor Speicherüberlauf durch Clients, die niemals einen Zeilenumbruch senden.
+    private final int maxFrameLength;
+
+    // Puffer für die aktuell noch unvollständige Zeile.
+    private byte[] pending = new byte[256];
+    private int pendingLength = 0;
+
+    // true, wenn pending eine vollständige Zeile enthält, die beim nächsten Aufruf verworfen wird.
+    private boolean complete = false;
+    private int frameLength = 0;
+
+    public LineFrameDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    @Override
+    public boolean next(ByteBuffer src) throws ProtocolException {
+        if (complete) {
+            pendingLength = 0;
+            complete = false;
+        }
+        while (src.hasRemaining()) {
+            byte b = src.get();
+            if (b == '\n') {
+                int length = pendingLength;
+                if (length > 0 && pending[length - 1] == '\r') {
+                    length--;
+                }
+                frameLength = length;
+                complete = true;
+                return true;
+            }
+            append(b);
+        }
+        return false;
+    }
+
+    private void append(byte b) throws ProtocolException {
+        if (pendingLength == pending.length) {
+            if (pending.length >= maxFrameLength) {
+                throw new ProtocolException("Zeile überschreitet " + maxFrameLength + " Bytes");
+            }
+            byte[] bigger = new byte[Math.min(pending.length * 2, maxFrameLength)];
+            System.arraycopy(pending, 0, bigger, 0, pendingLength);
+            pending = bigger;
+        }
+        pending[pendingLength++] = b;
+    }
+
+    @Override
+    public byte[] frameBuffer() {
+        return pending;
+    }
+
+    @Override
+    public int frameLength() {
+        return frameLength;
+    }
+}
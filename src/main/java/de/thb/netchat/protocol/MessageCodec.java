@@ -0,0 +1,97 @@
+package de.thb.netchat.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import de.thb.netchat.model.Message;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * Zentraler JSON-Codec für Message-Objekte.
+ * Alle Komponenten (Server-Sitzungen, Client, Messungen) nutzen diese eine Stelle statt eigener Gson-Instanzen.
+ * Kodiert wird über den handgeschriebenen MessageTypeAdapter direkt in Byte-Puffer bzw. Writer,
+ * dekodiert direkt aus dem Empfangspuffer, jeweils ohne Zwischen-String pro Zeile.
+ */
+public final class MessageCodec {
+
+    public static final TypeAdapter<Message> ADAPTER = new MessageTypeAdapter();
+
+    // Für alle weiteren JSON-Strukturen. Message wird auch hier über den Adapter serialisiert.
+    public static final Gson GSON = new GsonBuilder().registerTypeAdapter(Message.class, ADAPTER).create();
+
+    // Wiederverwendbarer Kodierpuffer pro Thread: Pro Nachricht entsteht nur das fertige Frame-Array.
+    private static final ThreadLocal<Utf8ByteWriter> encodeBuffers = ThreadLocal.withInitial(Utf8ByteWriter::new);
+
+    private MessageCodec() {}
+
+    /**
+     * Kodiert eine Nachricht als JSON-Zeile (UTF-8, inkl. '\n').
+     */
+    public static byte[] encodeJsonLine(Message msg) {
+        Utf8ByteWriter buffer = encodeBuffers.get();
+        buffer.reset();
+        try {
+            JsonWriter out = new JsonWriter(buffer);
+            ADAPTER.write(out, msg);
+            out.flush();
+        } catch (IOException e) {
+            // Kann beim Schreiben in einen Speicherpuffer nicht auftreten.
+            throw new IllegalStateException(e);
+        }
+        buffer.write('\n');
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Schreibt eine Nachricht direkt in einen offenen JSON-Stream (z.B. den Socket-Writer des Clients).
+     */
+    public static void write(Message msg, JsonWriter out) throws IOException {
+        ADAPTER.write(out, msg);
+    }
+
+    /**
+     * Liest die nächste Nachricht aus einem offenen JSON-Stream.
+     */
+    public static Message read(JsonReader in) throws IOException {
+        return ADAPTER.read(in);
+    }
+
+    /**
+     * Dekodiert eine einzelne JSON-Zeile aus einem Byte-Puffer (z.B. Frame des NIO-Decoders).
+     *
+     * @return Die Nachricht oder null, falls der Inhalt kein gültiges Message-JSON ist.
+     */
+    public static Message decodeJson(byte[] buf, int length) {
+        Utf8LineReader reader = new Utf8LineReader(null, ByteBuffer.wrap(buf, 0, length), Integer.MAX_VALUE);
+        try {
+            return read(newStreamReader(reader));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * JsonReader für einen Strom aus mehreren aufeinanderfolgenden JSON-Werten (eine Nachricht pro Zeile).
+     */
+    public static JsonReader newStreamReader(Reader reader) {
+        JsonReader in = new JsonReader(reader);
+        in.setStrictness(Strictness.LENIENT);
+        return in;
+    }
+
+    /**
+     * JsonWriter für einen Strom aus mehreren aufeinanderfolgenden JSON-Werten.
+     */
+    public static JsonWriter newStreamWriter(Writer writer) {
+        JsonWriter out = new JsonWriter(writer);
+        out.setStrictness(Strictness.LENIENT);
+        return out;
+    }
+}
@@ -0,0 +1,106 @@
+package de.thb.netchat.protocol;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import de.thb.netchat.model.Message;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Blockierender Leser für Nachrichten aus einem InputStream (Socket).
+ * JSON: Ein JsonReader liest die Nachrichten direkt aus dem Empfangspuffer (ohne String pro Zeile).
+ * BINARY: Die Bytes werden mit dem FrameDecoder zerlegt und binär dekodiert.
+ * Das Protokoll kann nach dem Handshake gewechselt werden, ohne bereits gelesene Bytes zu verlieren.
+ * Mit vereinbarter Kompression (nur BINARY) werden komprimierte Frames über FrameCompression entpackt.
+ */
+public final class MessageReader {
+
+    private final InputStream in;
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+    private WireProtocol protocol;
+    private FrameDecoder decoder;
+
+    // Nur im Binärmodus mit "deflate": entpackt komprimierte Frames (sonst null).
+    private FrameCompression compression;
+
+    // Nur im JSON-Modus: Streaming-Parser über dem Empfangspuffer.
+    private Utf8LineReader lineReader;
+    private JsonReader json;
+
+    public MessageReader(InputStream in, WireProtocol protocol) {
+        this.in = in;
+        this.buffer.flip(); // Leer im Lesemodus starten.
+        setProtocol(protocol);
+    }
+
+    public void setProtocol(WireProtocol protocol) {
+        this.protocol = protocol;
+        if (protocol == WireProtocol.JSON) {
+            this.decoder = null;
+            this.lineReader = new Utf8LineReader(in, buffer, WireProtocol.MAX_FRAME_LENGTH);
+            this.json = MessageCodec.newStreamReader(lineReader);
+        } else {
+            this.decoder = protocol.newDecoder();
+            this.lineReader = null;
+            this.json = null;
+        }
+    }
+
+    /**
+     * Erwartet ab jetzt auch komprimierte Frames (nach "hello_ack" mit "deflate").
+     */
+    public void setCompression(FrameCompression compression) {
+        this.compression = compression;
+    }
+
+    public WireProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Blockiert, bis eine vollständige Nachricht eingetroffen ist.
+     *
+     * @return Die Nachricht (kann null sein, wenn eine JSON-Zeile ungültig war).
+     * @throws EOFException Wenn die Gegenseite die Verbindung geschlossen hat.
+     */
+    public Message read() throws IOException {
+        if (json != null) {
+            return readJson();
+        }
+
+        while (!decoder.next(buffer)) {
+            // Puffer ist leer gelesen: Nachladen vom Socket (blockierend).
+            buffer.clear();
+            int read = in.read(buffer.array(), 0, buffer.capacity());
+            if (read < 0) {
+                throw new EOFException("Verbindung geschlossen");
+            }
+            buffer.limit(read);
+        }
+        return compression != null
+                ? compression.decode(decoder.frameBuffer(), decoder.frameLength())
+                : protocol.decode(decoder.frameBuffer(), decoder.frameLength());
+    }
+
+    private Message readJson() throws IOException {
+        try {
+            if (json.peek() == JsonToken.END_DOCUMENT) {
+                throw new EOFException("Verbindung geschlossen");
+            }
+            return MessageCodec.read(json);
+        } catch (EOFException | ProtocolException e) {
+            throw e;
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            // Ungültiges JSON: Rest der Zeile verwerfen und mit einem frischen Parser weiterlesen.
+            // Der Dispatcher beantwortet null mit einer Fehlermeldung, die Verbindung bleibt bestehen.
+            lineReader.skipRestOfLine();
+            json = MessageCodec.newStreamReader(lineReader);
+            return null;
+        }
+    }
+}
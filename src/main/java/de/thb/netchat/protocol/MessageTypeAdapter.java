@@ -0,0 +1,71 @@
+package de.thb.netchat.protocol;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import de.thb.netchat.model.Message;
+
+import java.io.IOException;
+
+/**
+ * Handgeschriebener Gson-Adapter für Message.
+ * Statt Reflection (Feldsuche, Zugriffsprüfungen, Zwischenobjekte) werden die vier Felder direkt
+ * über die Streaming-API gelesen und geschrieben. Das JSON-Format ist identisch zur bisherigen
+ * Reflection-Serialisierung, alte und neue Clients bleiben kompatibel.
+ */
+public class MessageTypeAdapter extends TypeAdapter<Message> {
+
+    @Override
+    public void write(JsonWriter out, Message msg) throws IOException {
+        if (msg == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        // null-Felder werden wie bei Gson-Standard weggelassen.
+        writeField(out, "type", msg.getType());
+        writeField(out, "from", msg.getFrom());
+        writeField(out, "to", msg.getTo());
+        writeField(out, "text", msg.getText());
+        out.endObject();
+    }
+
+    private static void writeField(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    @Override
+    public Message read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        Message msg = new Message();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            switch (name) {
+                case "type" -> msg.setType(readString(in));
+                case "from" -> msg.setFrom(readString(in));
+                case "to" -> msg.setTo(readString(in));
+                case "text" -> msg.setText(readString(in));
+                // Unbekannte Felder (z.B. von neueren Clients) werden übersprungen.
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return msg;
+    }
+
+    private static String readString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
@@ -0,0 +1,14 @@
+package de.thb.netchat.protocol;
+
+import java.io.IOException;
+
+/**
+ * Wird geworfen, wenn ein empfangener Byte-Strom nicht dem vereinbarten Protokoll entspricht.
+ * Die Verbindung gilt danach als unbrauchbar und wird getrennt.
+ */
+public class ProtocolException extends IOException {
+
+    public ProtocolException(String message) {
+        super(message);
+    }
+}
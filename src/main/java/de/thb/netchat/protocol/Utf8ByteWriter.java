@@ -0,0 +1,98 @@
+package de.thb.netchat.protocol;
+
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writer, der Zeichen direkt als UTF-8 in ein wiederverwendbares Byte-Array schreibt.
+ * Ersetzt die Kette toJson() -> String -> getBytes(): Der JSON-Text wird beim Schreiben
+ * sofort kodiert, ohne Zwischen-String und ohne neue Puffer pro Nachricht.
+ */
+class Utf8ByteWriter extends Writer {
+
+    private byte[] buf = new byte[512];
+    private int pos = 0;
+
+    // Offenes High-Surrogate, falls ein Zeichenpaar über zwei write()-Aufrufe verteilt ist.
+    private char pendingHighSurrogate = 0;
+
+    void reset() {
+        pos = 0;
+        pendingHighSurrogate = 0;
+    }
+
+    byte[] toByteArray() {
+        if (pendingHighSurrogate != 0) {
+            ensure(1);
+            buf[pos++] = '?';
+            pendingHighSurrogate = 0;
+        }
+        return Arrays.copyOf(buf, pos);
+    }
+
+    @Override
+    public void write(int c) {
+        writeChar((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        ensure(len * 3);
+        for (int i = off; i < off + len; i++) {
+            writeChar(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        ensure(len * 3);
+        for (int i = off; i < off + len; i++) {
+            writeChar(str.charAt(i));
+        }
+    }
+
+    private void writeChar(char c) {
+        ensure(4);
+        if (pendingHighSurrogate != 0) {
+            char high = pendingHighSurrogate;
+            pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                buf[pos++] = (byte) (0xF0 | (cp >> 18));
+                buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (cp & 0x3F));
+                return;
+            }
+            // Einzelnes Surrogate wie bei String.getBytes() als '?' kodieren.
+            buf[pos++] = '?';
+        }
+
+        if (c < 0x80) {
+            buf[pos++] = (byte) c;
+        } else if (c < 0x800) {
+            buf[pos++] = (byte) (0xC0 | (c >> 6));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingHighSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buf[pos++] = '?';
+        } else {
+            buf[pos++] = (byte) (0xE0 | (c >> 12));
+            buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void ensure(int extra) {
+        if (pos + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+        }
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+}
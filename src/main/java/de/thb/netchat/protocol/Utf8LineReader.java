@@ -0,0 +1,136 @@
+package de.thb.netchat.protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Reader, der UTF-8 direkt aus dem Empfangspuffer eines Sockets dekodiert.
+ * Ein read()-Aufruf liefert höchstens bis einschließlich des nächsten '\n'. Dadurch liest ein
+ * darauf aufsetzender JsonReader nie über das Ende der aktuellen Nachricht hinaus, und nach einem
+ * Protokollwechsel (Handshake) stehen die folgenden Bytes unverändert im Puffer.
+ */
+class Utf8LineReader extends Reader {
+
+    private final InputStream in;
+    private final ByteBuffer buffer;
+    private final int maxLineLength;
+
+    // Bytes seit dem letzten Zeilenumbruch (Schutz vor endlosen Zeilen).
+    private int lineLength = 0;
+
+    // Zweite Hälfte eines Surrogate-Paares, falls im letzten Aufruf kein Platz mehr war.
+    private char pendingLowSurrogate = 0;
+
+    /**
+     * @param in Quelle zum Nachladen (null: nur der Pufferinhalt wird gelesen).
+     * @param buffer Gemeinsamer Puffer im Lesemodus.
+     */
+    Utf8LineReader(InputStream in, ByteBuffer buffer, int maxLineLength) {
+        this.in = in;
+        this.buffer = buffer;
+        this.maxLineLength = maxLineLength;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        if (pendingLowSurrogate != 0) {
+            cbuf[off + n++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+        if (n == 0 && !buffer.hasRemaining() && !fill(1)) {
+            return -1;
+        }
+
+        // Nur blockieren, solange noch nichts geliefert wurde.
+        while (n < len && buffer.hasRemaining()) {
+            int lead = buffer.get(buffer.position()) & 0xFF;
+            int need = lead < 0x80 ? 1 : lead < 0xC0 ? 1 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : 4;
+            if (buffer.remaining() < need && (n > 0 || !fill(need))) {
+                if (n > 0) {
+                    break;
+                }
+                // Abgeschnittene Sequenz am Stream-Ende.
+                buffer.position(buffer.limit());
+                cbuf[off + n++] = '�';
+                break;
+            }
+
+            countLineBytes(need);
+            int b0 = buffer.get() & 0xFF;
+            if (need == 1) {
+                char c = b0 < 0x80 ? (char) b0 : '�';
+                cbuf[off + n++] = c;
+                if (c == '\n') {
+                    lineLength = 0;
+                    return n;
+                }
+            } else if (need == 2) {
+                cbuf[off + n++] = (char) (((b0 & 0x1F) << 6) | (buffer.get() & 0x3F));
+            } else if (need == 3) {
+                cbuf[off + n++] = (char) (((b0 & 0x0F) << 12) | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F));
+            } else {
+                int cp = ((b0 & 0x07) << 18) | ((buffer.get() & 0x3F) << 12)
+                        | ((buffer.get() & 0x3F) << 6) | (buffer.get() & 0x3F);
+                cbuf[off + n++] = Character.highSurrogate(cp);
+                if (n < len) {
+                    cbuf[off + n++] = Character.lowSurrogate(cp);
+                } else {
+                    pendingLowSurrogate = Character.lowSurrogate(cp);
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Verwirft den Rest der aktuellen Zeile (Resynchronisation nach ungültigem JSON).
+     */
+    void skipRestOfLine() throws IOException {
+        pendingLowSurrogate = 0;
+        if (lineLength == 0) {
+            return;
+        }
+        while (buffer.hasRemaining() || fill(1)) {
+            if (buffer.get() == '\n') {
+                lineLength = 0;
+                return;
+            }
+        }
+    }
+
+    private void countLineBytes(int bytes) throws ProtocolException {
+        lineLength += bytes;
+        if (lineLength > maxLineLength) {
+            throw new ProtocolException("Zeile überschreitet " + maxLineLength + " Bytes");
+        }
+    }
+
+    // Lädt blockierend nach, bis mindestens min Bytes im Puffer liegen.
+    private boolean fill(int min) throws IOException {
+        if (in == null) {
+            return false;
+        }
+        buffer.compact();
+        try {
+            while (buffer.position() < min) {
+                int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (read < 0) {
+                    return false;
+                }
+                buffer.position(buffer.position() + read);
+            }
+            return true;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    @Override
+    public void close() {}
+}
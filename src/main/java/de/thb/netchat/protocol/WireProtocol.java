@@ -0,0 +1,98 @@
+package de.thb.netchat.protocol;
+
+import de.thb.netchat.model.Message;
+
+/**
+ * Die unterstützten Übertragungsformate.
+ * JSON: Eine JSON-kodierte Message pro Zeile (MessageCodec) (Standard, kompatibel zu allen Clients).
+ * BINARY: Längenpräfix + kompakte Binärkodierung (BinaryMessageCodec), wird per Handshake vereinbart.
+ *
+ * Handshake: Nach dem Willkommensgruß sendet der Client (noch als JSON) eine Nachricht vom Typ "hello"
+ * mit den gewünschten Fähigkeiten im Text (z.B. "binary"). Der Server bestätigt mit "hello_ack" (ebenfalls JSON)
+ * und dem gewählten Format. Erst danach verwenden beide Seiten das neue Format.
+ * Ältere Server antworten mit einem Fehler, dann bleibt der Client bei JSON.
+ * Zusätzlich kann "deflate" angeboten werden (z.B. "binary,deflate"), siehe FrameCompression.
+ */
+public enum WireProtocol {
+
+    JSON("json") {
+        @Override
+        public byte[] encodeFrame(Message msg) {
+            return MessageCodec.encodeJsonLine(msg);
+        }
+
+        @Override
+        public Message decode(byte[] buf, int length) {
+            // Ungültiges JSON (null) wird vom Dispatcher als Protokollfehler beantwortet.
+            return MessageCodec.decodeJson(buf, length);
+        }
+
+        @Override
+        public FrameDecoder newDecoder() {
+            return new LineFrameDecoder(MAX_FRAME_LENGTH);
+        }
+    },
+
+    BINARY("binary") {
+        @Override
+        public byte[] encodeFrame(Message msg) {
+            return BinaryMessageCodec.encodeFrame(msg);
+        }
+
+        @Override
+        public Message decode(byte[] buf, int length) throws ProtocolException {
+            return BinaryMessageCodec.decode(buf, length);
+        }
+
+        @Override
+        public FrameDecoder newDecoder() {
+            return new LengthPrefixedFrameDecoder(MAX_FRAME_LENGTH);
+        }
+    };
+
+    // Maximale Größe eines einzelnen Frames (Schutz vor Speicherüberlauf).
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // Name im Handshake ("hello"/"hello_ack").
+    private final String capability;
+
+    WireProtocol(String capability) {
+        this.capability = capability;
+    }
+
+    public String getCapability() {
+        return capability;
+    }
+
+    /**
+     * Kodiert eine Nachricht als fertigen Frame (inkl. Zeilenumbruch bzw. Längenpräfix).
+     */
+    public abstract byte[] encodeFrame(Message msg);
+
+    /**
+     * Dekodiert den Inhalt eines Frames.
+     *
+     * @return Die Nachricht oder null, falls der Inhalt kein gültiges JSON ist.
+     * @throws ProtocolException Falls ein Binär-Frame ungültig ist.
+     */
+    public abstract Message decode(byte[] buf, int length) throws ProtocolException;
+
+    public abstract FrameDecoder newDecoder();
+
+    /**
+     * Wählt aus den im "hello" angebotenen Fähigkeiten das bevorzugte Format.
+     *
+     * @param offered Kommagetrennte Liste, z.B. "binary".
+     * @return BINARY, falls angeboten, sonst JSON.
+     */
+    public static WireProtocol negotiate(String offered) {
+        if (offered != null) {
+            for (String capability : offered.split(",")) {
+                if (BINARY.capability.equalsIgnoreCase(capability.trim())) {
+                    return BINARY;
+                }
+            }
+        }
+        return JSON;
+    }
+}
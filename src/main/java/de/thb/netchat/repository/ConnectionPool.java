@@ -0,0 +1,290 @@
+package de.thb.netchat.repository;
+
+import de.thb.netchat.metrics.LatencyHistogram;
+import de.thb.netchat.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Begrenzter Pool wiederverwendbarer JDBC-Verbindungen.
+ *
+ * Der Aufbau einer SQLite-Verbindung (Datei öffnen, Schema lesen, Pragmas setzen) ist um ein
+ * Vielfaches teurer als ein einzelnes INSERT. Der Pool baut Verbindungen daher nur bei Bedarf auf
+ * und gibt sie nach close() nicht frei, sondern legt sie für den nächsten Aufrufer zurück.
+ *
+ * Ablauf:
+ * 1. Ein fairer Semaphore begrenzt die Zahl gleichzeitig ausgeliehener Verbindungen (maxSize).
+ * 2. Eine freie Verbindung wird vom Stapel genommen (LIFO: die zuletzt genutzte ist am "wärmsten").
+ * 3. Lag sie länger als validationIdleMillis ungenutzt, wird sie mit isValid() geprüft.
+ * 4. close() am zurückgegebenen Proxy legt die Verbindung zurück und gibt die Erlaubnis frei.
+ *
+ * Die Dauer jeder Ausleihe (Ausgabe bis close()) landet im Timer "db.call" (siehe Metrics). Da jedes Repository
+ * die Verbindung genau für eine Abfrage bzw. Transaktion hält, ist das die Dauer der Datenbankaufrufe,
+ * gemeinsam für alle Pools (Hauptdatenbank und Shards).
+ */
+public class ConnectionPool {
+
+    // Dauer der Ausleihen aller Pools.
+    private static final LatencyHistogram callLatency = Metrics.timer("db.call");
+
+    private final String url;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long validationIdleMillis;
+    private final List<String> initStatements;
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    // Kennzahlen
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * @param url JDBC-URL der Datenbank.
+     * @param maxSize Maximale Anzahl gleichzeitig ausgeliehener (und damit offener) Verbindungen.
+     * @param acquireTimeoutMillis Wie lange ein Aufrufer höchstens auf eine freie Verbindung wartet.
+     * @param validationIdleMillis Ab dieser Ruhezeit wird eine Verbindung vor der Ausgabe geprüft.
+     * @param initStatements SQL-Befehle (z.B. Pragmas), die einmalig pro neuer Verbindung ausgeführt werden.
+     */
+    public ConnectionPool(String url, int maxSize, long acquireTimeoutMillis,
+                          long validationIdleMillis, List<String> initStatements) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize muss mindestens 1 sein");
+        }
+        this.url = url;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.validationIdleMillis = validationIdleMillis;
+        this.initStatements = List.copyOf(initStatements);
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Leiht eine Verbindung aus. Der Aufrufer muss sie mit close() zurückgeben
+     * (am besten per try-with-resources).
+     *
+     * @throws SQLException Falls keine Verbindung innerhalb des Timeouts frei wird oder der Aufbau scheitert.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection-Pool ist geschlossen");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Keine freie Datenbankverbindung nach " + acquireTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Warten auf Datenbankverbindung unterbrochen", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = new PooledConnection(openConnection());
+            }
+            acquired.incrementAndGet();
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Schließt alle freien Verbindungen. Ausgeliehene Verbindungen werden bei ihrer Rückgabe geschlossen.
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * Momentaufnahme der Pool-Kennzahlen.
+     */
+    public Stats getStats() {
+        long count = acquired.get();
+        return new Stats(
+                maxSize,
+                maxSize - permits.availablePermits(),
+                idle.size(),
+                count,
+                created.get(),
+                discarded.get(),
+                timeouts.get(),
+                count == 0 ? 0 : totalWaitNanos.get() / count / 1000,
+                maxWaitNanos.get() / 1000);
+    }
+
+    // Nimmt die zuletzt zurückgelegte Verbindung; prüft sie, falls sie zu lange ungenutzt war.
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (System.nanoTime() - pooled.returnedAt < TimeUnit.MILLISECONDS.toNanos(validationIdleMillis)) {
+                return pooled;
+            }
+            try {
+                if (pooled.physical.isValid(1)) {
+                    return pooled;
+                }
+            } catch (SQLException ignored) {
+                // Wie eine ungültige Verbindung behandeln.
+            }
+            discard(pooled);
+        }
+        return null;
+    }
+
+    // Baut eine neue physische Verbindung auf und setzt die Pragmas (einmalig pro Verbindung).
+    private Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : initStatements) {
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        created.incrementAndGet();
+        return connection;
+    }
+
+    // Wird beim close() des Proxys aufgerufen.
+    private void giveBack(PooledConnection pooled) {
+        try {
+            if (closed || !reset(pooled.physical)) {
+                discard(pooled);
+            } else {
+                pooled.returnedAt = System.nanoTime();
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Stellt den Ausgangszustand wieder her, damit der nächste Nutzer keine offene Transaktion erbt.
+    private boolean reset(Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        discarded.incrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignored) {}
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Eine physische Verbindung, die der Pool verwaltet.
+     * Jede Ausleihe erhält einen eigenen Proxy, damit ein doppeltes close() oder die Nutzung
+     * nach close() nicht die Verbindung des nächsten Aufrufers beeinflusst.
+     */
+    private final class PooledConnection {
+
+        private final Connection physical;
+        private volatile long returnedAt = System.nanoTime();
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection lease() {
+            AtomicBoolean returned = new AtomicBoolean(false);
+            long leasedAt = System.nanoTime();
+            InvocationHandler handler = (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close" -> {
+                        if (returned.compareAndSet(false, true)) {
+                            callLatency.recordSince(leasedAt);
+                            giveBack(this);
+                        }
+                        return null;
+                    }
+                    case "isClosed" -> {
+                        return returned.get() || physical.isClosed();
+                    }
+                    default -> {
+                        if (returned.get()) {
+                            throw new SQLException("Verbindung wurde bereits an den Pool zurückgegeben");
+                        }
+                    }
+                }
+                try {
+                    return method.invoke(physical, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+    }
+
+    /**
+     * Kennzahlen des Pools.
+     *
+     * @param maxSize Obergrenze gleichzeitig ausgeliehener Verbindungen.
+     * @param active Aktuell ausgeliehene Verbindungen.
+     * @param idle Aktuell freie, offene Verbindungen.
+     * @param acquired Anzahl aller Ausleihen seit dem Start.
+     * @param created Anzahl neu aufgebauter physischer Verbindungen.
+     * @param discarded Anzahl verworfener (ungültiger oder geschlossener) Verbindungen.
+     * @param timeouts Anzahl der Ausleihen, die am Timeout gescheitert sind.
+     * @param avgWaitMicros Durchschnittliche Wartezeit auf eine Erlaubnis in Mikrosekunden.
+     * @param maxWaitMicros Längste Wartezeit auf eine Erlaubnis in Mikrosekunden.
+     */
+    public record Stats(int maxSize, int active, int idle, long acquired, long created, long discarded,
+                        long timeouts, long avgWaitMicros, long maxWaitMicros) {
+
+        @Override
+        public String toString() {
+            return String.format("DB-Pool: aktiv=%d/%d frei=%d ausgeliehen=%d neu=%d verworfen=%d timeouts=%d "
+                            + "warten(avg)=%dus warten(max)=%dus",
+                    active, maxSize, idle, acquired, created, discarded, timeouts, avgWaitMicros, maxWaitMicros);
+        }
+    }
+}
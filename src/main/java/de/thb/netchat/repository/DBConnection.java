@@ -1,12 +1,13 @@
 package de.thb.netchat.repository;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
 
 /**
  * Hilfsklasse für den Datenbankzugriff.
  * Zuständig für den Aufbau der Verbindung zur SQLite-Datenbank.
+ * Die Verbindungen stammen aus einem begrenzten Pool (ConnectionPool) und werden wiederverwendet.
  *
  * Diese Klasse kapselt die Verbindungsdetails (wie den Pfad zur DB-Datei),
  * damit andere Klassen (Repositories) sich nicht um die Konfiguration kümmern müssen.
@@ -15,16 +16,76 @@ public class DBConnection {
 
     // Der Connection-String (JDBC URL).
     // Legt fest, dass wir SQLite nutzen und wo die Datei liegt ("db/netchat.db").
-    private static final String URL = "jdbc:sqlite:db/netchat.db";
+    // Kann für Messungen über die System-Property "netchat.db.url" überschrieben werden.
+    private static final String URL = System.getProperty("netchat.db.url", "jdbc:sqlite:db/netchat.db");
+
+    // Obergrenze gleichzeitig offener Verbindungen.
+    // Der SQLite-Treiber arbeitet über JNI (native Code). Ein virtueller Thread, der sich in einem nativen
+    // Aufruf befindet, bleibt an seinen Carrier-Thread gepinnt. Ohne Begrenzung könnten tausende
+    // virtuelle Threads alle Carrier blockieren; so bleiben immer Carrier für die Netzwerk-Threads frei.
+    private static final int POOL_SIZE = Integer.getInteger("netchat.db.poolSize",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    // Pragmas, die einmalig pro physischer Verbindung gesetzt werden (statt bei jeder Abfrage).
+    // busy_timeout: Bei gesperrter Datei wartet SQLite selbst, statt sofort SQLITE_BUSY zu melden.
+    // synchronous = normal: Im WAL-Modus (siehe SchemaMigrations) sicher gegen Datenbankkorruption;
+    //   fsync nur noch beim Checkpoint statt bei jedem Commit.
+    // cache_size: 16 MiB Seiten-Cache pro Verbindung (negativer Wert = KiB).
+    private static final List<String> PRAGMAS = List.of(
+            "pragma busy_timeout = 5000",
+            "pragma foreign_keys = on",
+            "pragma temp_store = memory",
+            "pragma synchronous = normal",
+            "pragma cache_size = -16000");
+
+    // Der Pool selbst. Wiederverwendete Verbindungen werden nach 30 s Ruhezeit vor der Ausgabe geprüft.
+    private static final ConnectionPool pool = new ConnectionPool(URL, POOL_SIZE,
+            Long.getLong("netchat.db.acquireTimeoutMs", 30_000), 30_000, PRAGMAS);
+
+    static {
+        // Optional: Kennzahlen periodisch ausgeben (z.B. -Dnetchat.db.poolStatsSeconds=10).
+        long interval = Long.getLong("netchat.db.poolStatsSeconds", 0);
+        if (interval > 0) {
+            Thread.ofPlatform().daemon().name("db-pool-stats").start(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(interval * 1000);
+                        System.out.println(pool.getStats());
+                    }
+                } catch (InterruptedException ignored) {}
+            });
+        }
+    }
 
     /**
-     * Erstellt eine neue Verbindung zur Datenbank.
-     * Nutzt den DriverManager von Java (JDBC), um den Treiber zu laden und die Verbindung zu öffnen.
+     * Leiht eine Verbindung aus dem Pool aus.
+     * Neue Verbindungen werden nur aufgebaut, wenn keine freie vorhanden ist.
+     * Wartet ggf., bis eine Verbindung frei wird. Das Warten auf den Semaphore blockiert keinen Carrier-Thread.
+     * close() gibt die Verbindung an den Pool zurück, statt sie zu schließen.
      *
      * @return Ein offenes Connection-Objekt, mit dem SQL-Befehle gesendet werden können.
-     * @throws SQLException Falls die Datenbank-Datei nicht gefunden wird oder gesperrt ist.
+     * @throws SQLException Falls die Datenbank-Datei nicht geöffnet werden kann oder keine Verbindung frei wird.
      */
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL);
+        return pool.getConnection();
+    }
+
+    /**
+     * Erstellt einen eigenen Pool für eine weitere Datenbankdatei (z.B. einen Nachrichten-Shard)
+     * mit denselben Pragmas und demselben Timeout wie der Hauptpool.
+     *
+     * @param url JDBC-URL der Datenbankdatei.
+     * @param maxSize Maximale Anzahl gleichzeitig offener Verbindungen dieses Pools.
+     */
+    public static ConnectionPool createPool(String url, int maxSize) {
+        return new ConnectionPool(url, maxSize,
+                Long.getLong("netchat.db.acquireTimeoutMs", 30_000), 30_000, PRAGMAS);
+    }
+
+    /**
+     * Aktuelle Kennzahlen des Connection-Pools (Wartezeit, aktive und freie Verbindungen).
+     */
+    public static ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
     }
-}
\ No newline at end of file
+}
@@ -14,42 +14,14 @@ import java.sql.Statement;
 public class DBInitializer {
 
     /**
-     * Erstellt die Tabellen "users" und "messages", falls diese noch nicht existieren.
+     * Bringt das Datenbankschema auf den aktuellen Stand.
+     * Erstellt beim ersten Start die Tabellen "users" und "messages" und wendet danach alle
+     * noch fehlenden Migrationen an (WAL-Modus, Indizes, siehe SchemaMigrations).
      * Wird typischerweise beim Server-Start aufgerufen.
      */
     public static void initialize() {
-        // SQL-Statement für die Benutzer-Tabelle.
-        // Wir nutzen Java "Text Blocks" ("""), um den SQL-Code lesbar zu formatieren.
-        // "text unique" sorgt dafür, dass Namen und E-Mails nicht doppelt vorkommen dürfen.
-        String createUsers = """
-                create table if not exists users (
-                    id integer primary key autoincrement,
-                    name text unique not null,
-                    email text unique not null,
-                    password text not null,
-                    joined_at datetime default current_timestamp
-                );
-        """;
-
-        // SQL-Statement für die Nachrichten-Verlauf-Tabelle.
-        String createMessages = """
-                create table if not exists messages (
-                    id integer primary key autoincrement,
-                    sender_name text not null,
-                    receiver_name text not null,
-                    text text not null,
-                    timestamp datetime default current_timestamp
-                );
-                """;
-
-        // "try-with-resources" Block:
-        // Stellt sicher, dass Connection und Statement automatisch geschlossen werden,
-        // sobald der Block verlassen wird (auch bei Fehlern). Verhindert Speicherlecks.
-        try (Connection connection = DBConnection.getConnection();
-             Statement statement = connection.createStatement()) {
-
-            statement.execute(createUsers);
-            statement.execute(createMessages);
+        try {
+            SchemaMigrations.migrate();
             System.out.println("Datenbanktabelle erfolgreich überprüft/erstellt!");
         } catch (SQLException e) {
             System.err.println("Fehler beim Initialisieren der Datenbank: ");
@@ -66,8 +38,17 @@ public class DBInitializer {
         try (Connection connection = DBConnection.getConnection();
              Statement statement = connection.createStatement()) {
 
+            // Alles, was SchemaMigrations anlegt. Bleibt ein Teil stehen, laufen die Migrationen danach nicht
+            // erneut und neue Zeilen stoßen auf alte (z.B. Posteingangs- und Suchindex-Einträge mit alten IDs).
+            statement.execute("drop trigger if exists messages_fts_insert;");
+            statement.execute("drop trigger if exists messages_fts_delete;");
+            statement.execute("drop table if exists messages_fts;");
+            statement.execute("drop table if exists inbox;");
+            statement.execute("drop table if exists room_members;");
+            statement.execute("drop table if exists rooms;");
             statement.execute("drop table if exists messages;");
             statement.execute("drop table if exists users;");
+            statement.execute("drop table if exists schema_migrations;");
 
             System.out.println("Alle Tabellen gelöscht!");
 
@@ -0,0 +1,110 @@
+package de.thb.netchat.repository;
+
+import de.thb.netchat.model.HistoryRecord;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repository-Klasse für die Tabelle "inbox" (Posteingang für offline empfangene Nachrichten).
+ * (DAO - Data Access Object)
+ *
+ * Ein Eintrag ist offen (delivered_at is null), bis er dem Client zugestellt wurde, und wird danach gelöscht:
+ * Die Nachricht selbst liegt im Nachrichtenspeicher, die Tabelle wächst so nur mit den noch offenen Einträgen,
+ * nicht mit dem gesamten Offline-Verkehr. Alle Abfragen auf offene Einträge laufen über den partiellen Index
+ * idx_inbox_pending (recipient, id).
+ */
+public class InboxRepo {
+
+    /**
+     * Ein offener Posteingangs-Eintrag.
+     *
+     * @param inboxId ID des Eintrags (Cursor beim Abarbeiten).
+     * @param record Die Nachricht mit ihrer ID im Nachrichtenspeicher.
+     */
+    public record Entry(long inboxId, HistoryRecord record) {}
+
+    /**
+     * Legt für jede Nachricht einen offenen Eintrag beim Empfänger an (eine Transaktion für alle).
+     *
+     * @throws SQLException Falls nicht gespeichert werden konnte. Es wird dann nichts gespeichert.
+     */
+    public void addEntries(List<HistoryRecord> records) throws SQLException {
+        String sql = "insert into inbox(recipient, message_id, sender_name, text, timestamp) values(?, ?, ?, ?, ?)";
+
+        try (Connection connection = DBConnection.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                for (HistoryRecord record : records) {
+                    preparedStatement.setString(1, record.to());
+                    preparedStatement.setLong(2, record.id());
+                    preparedStatement.setString(3, record.from());
+                    preparedStatement.setString(4, record.text());
+                    preparedStatement.setString(5, record.timestamp());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Die ältesten offenen Einträge eines Empfängers nach afterId.
+     *
+     * @param afterId Cursor: Nur Einträge mit größerer ID (0 = von Anfang an).
+     * @param limit Maximale Anzahl.
+     * @return Die Einträge in Eingangsreihenfolge.
+     */
+    public List<Entry> getPending(String recipient, long afterId, int limit) throws SQLException {
+        List<Entry> entries = new ArrayList<>();
+        String sql = """
+                select id, message_id, sender_name, text, timestamp from inbox
+                where recipient = ? and delivered_at is null and id > ?
+                order by id limit ?
+                """;
+
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setString(1, recipient);
+            preparedStatement.setLong(2, afterId);
+            preparedStatement.setInt(3, limit);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    entries.add(new Entry(resultSet.getLong("id"), new HistoryRecord(
+                            resultSet.getLong("message_id"),
+                            resultSet.getString("sender_name"),
+                            recipient,
+                            resultSet.getString("text"),
+                            resultSet.getString("timestamp"))));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Löscht alle zugestellten Einträge eines Empfängers bis einschließlich upToId.
+     */
+    public void removeDelivered(String recipient, long upToId) throws SQLException {
+        String sql = """
+                delete from inbox
+                where recipient = ? and delivered_at is null and id <= ?
+                """;
+
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setString(1, recipient);
+            preparedStatement.setLong(2, upToId);
+            preparedStatement.executeUpdate();
+        }
+    }
+}
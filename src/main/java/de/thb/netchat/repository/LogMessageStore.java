@@ -0,0 +1,417 @@
+package de.thb.netchat.repository;
+
+import de.thb.netchat.model.HistoryRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Nachrichtenspeicher aus segmentierten Append-only-Logdateien (Memory-Mapped).
+ *
+ * Für sehr hohe Schreibraten: Eine Nachricht ist ein einziges Anhängen an das aktuelle Segment,
+ * ohne B-Baum, ohne SQL und ohne Transaktion. Wie beim SQLite-Backend sammelt der MessageBatchWriter
+ * die Nachrichten; pro Stapel wird einmal force() (msync) aufgerufen und erst danach werden die Futures erfüllt.
+ *
+ * Aufbau:
+ * - Segmente segment-00000000.log, segment-00000001.log, ... im Verzeichnis, je segmentBytes groß (siehe LogSegment).
+ *   Passt ein Datensatz nicht mehr in das aktuelle Segment, wird es geschrieben und ein neues angelegt.
+ * - Rumpf eines Datensatzes: [long id][short+UTF-8 Absender][short+UTF-8 Empfänger][short+UTF-8 Zeitstempel][int+UTF-8 Text]
+ * - Index im Speicher: pro Gesprächspaar die IDs und Adressen (Segment, Offset) seiner Nachrichten, aufsteigend.
+ *   Eine Verlaufsseite ist eine Binärsuche nach dem Cursor plus "limit" direkte Lesezugriffe. Kosten: 16 Byte pro Nachricht.
+ *
+ * Start: Alle Segmente werden einmal sequenziell gelesen, um den Index aufzubauen (nur ID und Paar, der Text wird
+ * übersprungen). Abgeschlossene Segmente wurden vor dem Wechsel vollständig geschrieben und werden nicht geprüft.
+ * Im letzten Segment wird jeder Datensatz gegen seine Prüfsumme geprüft; ab dem ersten ungültigen
+ * (abgerissener Stapel nach einem Absturz) wird das Segment abgeschnitten. Verloren gehen dabei nur Nachrichten,
+ * deren Future noch nicht erfüllt war, also keine bestätigten.
+ *
+ * Nachrichten-IDs vergibt das Log selbst (fortlaufend ab 1); sie sind unabhängig von den IDs in SQLite.
+ * Einen Volltextindex führt das Log nicht; search liefert die StorageException der Standardimplementierung.
+ */
+public final class LogMessageStore implements MessageStore {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // Feste Bytes eines Rumpfs ohne die Zeichenketten: id + drei short-Längen + int-Länge.
+    private static final int FIXED_BODY = Long.BYTES + 3 * Short.BYTES + Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentBytes;
+
+    // Alle Segmente, Position in der Liste = Segmentteil der Adresse. Wird nur beim Segmentwechsel verändert.
+    private final List<LogSegment> segments = new CopyOnWriteArrayList<>();
+
+    // Index pro Gesprächspaar. Geschützt durch lock: Leser teilen sich die Lesesperre, der Writer-Thread
+    // trägt einen ganzen Stapel unter der Schreibsperre ein.
+    private final Map<String, PairIndex> pairs = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Nur vom Writer-Thread verwendet.
+    private LogSegment active;
+    private long nextId = 1;
+    private byte[] scratch = new byte[4096];
+    private final CRC32C crc = new CRC32C();
+
+    private final MessageBatchWriter writer;
+
+    /**
+     * Öffnet das Log im Verzeichnis (legt es bei Bedarf an), baut den Index auf und startet den Writer.
+     *
+     * @param directory Verzeichnis der Segmentdateien.
+     * @param segmentBytes Größe neuer Segmente.
+     * @param batchSize Maximale Anzahl Nachrichten pro force().
+     * @param maxDelayMillis Maximale Wartezeit einer Nachricht, bis ihr Stapel geschrieben wird.
+     * @param capacity Maximale Anzahl ungeschriebener Nachrichten.
+     * @throws IOException Falls das Verzeichnis oder ein Segment nicht geöffnet werden kann.
+     */
+    public LogMessageStore(Path directory, int segmentBytes, int batchSize, long maxDelayMillis, int capacity)
+            throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+
+        long start = System.nanoTime();
+        recover();
+        System.out.printf("Nachrichten-Log geladen: %d Nachrichten, %d Gesprächspaare, %d Segmente (%d ms)%n",
+                nextId - 1, pairs.size(), segments.size(), (System.nanoTime() - start) / 1_000_000);
+
+        this.writer = new MessageBatchWriter(this::writeBatch, batchSize, maxDelayMillis, capacity);
+    }
+
+    @Override
+    public CompletableFuture<HistoryRecord> append(String senderName, String receiverName, String text) {
+        return writer.submit(senderName, receiverName, text);
+    }
+
+    @Override
+    public List<HistoryRecord> getConversationPage(String a, String b, Long beforeId, int limit) throws StorageException {
+        long[] addresses;
+        lock.readLock().lock();
+        try {
+            PairIndex index = pairs.get(key(a, b));
+            if (index == null) {
+                return new ArrayList<>();
+            }
+            int end = beforeId == null ? index.size : index.indexOf(beforeId);
+            addresses = Arrays.copyOfRange(index.addresses, Math.max(0, end - limit), end);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Gelesen wird außerhalb der Sperre: Eingetragene Datensätze ändern sich nie mehr.
+        List<HistoryRecord> page = new ArrayList<>(addresses.length);
+        for (long address : addresses) {
+            page.add(read(address));
+        }
+        return page;
+    }
+
+    @Override
+    public int pending() {
+        return writer.pending();
+    }
+
+    /**
+     * Schließt die Segmentdateien. Danach darf der Store nicht mehr verwendet werden.
+     */
+    @Override
+    public void close() {
+        for (LogSegment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                System.err.println("Error beim Schließen des Segments " + segment.number() + ":");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // --- Schreiben (Writer-Thread) ---
+
+    // BatchSink des MessageBatchWriter: Stapel anhängen, einmal force(), Index aktualisieren, Futures erfüllen.
+    private void writeBatch(List<MessageBatchWriter.Pending> batch) {
+        HistoryRecord[] records = new HistoryRecord[batch.size()];
+        long[] addresses = new long[batch.size()];
+
+        // 1. Ganzen Stapel prüfen, bevor etwas geschrieben wird. Unvollständige Nachrichten scheitern einzeln.
+        boolean[] invalid = new boolean[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            MessageBatchWriter.Pending pending = batch.get(i);
+            if (pending.sender() == null || pending.receiver() == null
+                    || pending.text() == null || pending.timestamp() == null) {
+                invalid[i] = true;
+                pending.result().completeExceptionally(new StorageException("Unvollständige Nachricht"));
+            }
+        }
+
+        // 2. Schreiben. Bis "durable" liegen die Datensätze bereits gesichert in einem abgeschlossenen Segment;
+        // bei einem Fehler wird auf diesen Stand zurückgesetzt (Schreibposition, Inhalt und nextId).
+        long firstId = nextId;
+        int durable = 0;
+        int flushedFrom = active.writePosition();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                if (invalid[i]) {
+                    continue;
+                }
+                MessageBatchWriter.Pending pending = batch.get(i);
+                HistoryRecord record = new HistoryRecord(
+                        nextId, pending.sender(), pending.receiver(), pending.text(), pending.timestamp());
+
+                int length;
+                try {
+                    length = encode(record);
+                } catch (IllegalArgumentException e) {
+                    // Betrifft nur diese Nachricht, der Rest des Stapels wird trotzdem geschrieben.
+                    pending.result().completeExceptionally(new StorageException(e.getMessage()));
+                    continue;
+                }
+
+                if (!active.fits(length)) {
+                    // Segment voll: Vollständig auf die Platte bringen, bevor das nächste angelegt wird.
+                    // Abgeschlossene Segmente sind damit beim Start immer gültig.
+                    active.force(flushedFrom, active.writePosition());
+                    durable = i;
+                    flushedFrom = active.writePosition();
+                    roll();
+                    flushedFrom = 0;
+                }
+
+                crc.reset();
+                crc.update(scratch, 0, length);
+                int offset = active.append(scratch, length, (int) crc.getValue());
+
+                records[i] = record;
+                addresses[i] = address(segments.size() - 1, offset);
+                nextId++;
+            }
+            active.force(flushedFrom, active.writePosition());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error beim Schreiben von " + batch.size() + " Nachrichten in das Log:");
+            e.printStackTrace();
+            // Nicht gesicherte Datensätze verwerfen: Sonst fände der nächste Start Nachrichten wieder,
+            // deren Absender einen Fehler erhalten hat.
+            try {
+                active.rollback(flushedFrom);
+            } catch (RuntimeException rollbackError) {
+                System.err.println("Error beim Zurücksetzen des Segments " + active.number() + ":");
+                rollbackError.printStackTrace();
+            }
+            nextId = firstId;
+            for (int i = 0; i < durable; i++) {
+                if (records[i] != null) {
+                    nextId = records[i].id() + 1;
+                }
+            }
+            StorageException failure = new StorageException("Nachrichten konnten nicht gespeichert werden", e);
+            for (int i = durable; i < batch.size(); i++) {
+                records[i] = null;
+                batch.get(i).result().completeExceptionally(failure);
+            }
+        }
+
+        // Erst nach force() sichtbar machen: Was gelesen werden kann, übersteht auch einen Absturz.
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < records.length; i++) {
+                if (records[i] != null) {
+                    index(records[i].from(), records[i].to(), records[i].id(), addresses[i]);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        for (int i = 0; i < records.length; i++) {
+            if (records[i] != null) {
+                batch.get(i).result().complete(records[i]);
+            }
+        }
+    }
+
+    // Kodiert den Rumpf nach scratch und liefert seine Länge.
+    private int encode(HistoryRecord record) {
+        byte[] from = record.from().getBytes(StandardCharsets.UTF_8);
+        byte[] to = record.to().getBytes(StandardCharsets.UTF_8);
+        byte[] timestamp = record.timestamp().getBytes(StandardCharsets.UTF_8);
+        byte[] text = record.text().getBytes(StandardCharsets.UTF_8);
+        if (from.length > 0xFFFF || to.length > 0xFFFF || timestamp.length > 0xFFFF) {
+            throw new IllegalArgumentException("Benutzername zu lang für das Nachrichten-Log");
+        }
+
+        long length = (long) FIXED_BODY + from.length + to.length + timestamp.length + text.length;
+        if (LogSegment.HEADER + length > segmentBytes) {
+            throw new IllegalArgumentException("Nachricht zu groß für ein Log-Segment (" + length + " Bytes)");
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max((int) length, scratch.length * 2)];
+        }
+
+        ByteBuffer out = ByteBuffer.wrap(scratch);
+        out.putLong(record.id());
+        out.putShort((short) from.length).put(from);
+        out.putShort((short) to.length).put(to);
+        out.putShort((short) timestamp.length).put(timestamp);
+        out.putInt(text.length).put(text);
+        return out.position();
+    }
+
+    // Legt das nächste Segment an.
+    private void roll() throws IOException {
+        int number = active.number() + 1;
+        active = LogSegment.open(segmentPath(number), number, segmentBytes);
+        segments.add(active);
+    }
+
+    // --- Lesen ---
+
+    private HistoryRecord read(long address) throws StorageException {
+        LogSegment segment = segments.get((int) (address >>> 32));
+        int offset = (int) address;
+        try {
+            ByteBuffer body = segment.body(offset, segment.bodyLength(offset));
+            long id = body.getLong();
+            String from = readString(body, body.getShort() & 0xFFFF);
+            String to = readString(body, body.getShort() & 0xFFFF);
+            String timestamp = readString(body, body.getShort() & 0xFFFF);
+            String text = readString(body, body.getInt());
+            return new HistoryRecord(id, from, to, text, timestamp);
+        } catch (RuntimeException e) {
+            throw new StorageException("Datensatz " + segment.number() + "/" + offset + " ist beschädigt", e);
+        }
+    }
+
+    private static String readString(ByteBuffer body, int length) {
+        byte[] bytes = new byte[length];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // --- Start / Wiederherstellung ---
+
+    // Öffnet alle vorhandenen Segmente, baut den Index auf und schneidet das letzte Segment hinter dem letzten gültigen Datensatz ab.
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            // Feste Breite der Nummer: Die lexikografische Sortierung ist die numerische.
+            files = stream.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                String name = files.get(i).getFileName().toString();
+                int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                LogSegment segment = LogSegment.open(files.get(i), number, segmentBytes);
+                segments.add(segment);
+
+                boolean last = i == files.size() - 1;
+                int end = scan(segment, segments.size() - 1, last);
+                if (last && segment.truncate(end)) {
+                    System.err.println("Nachrichten-Log: Unvollständige Datensätze am Ende von " + name
+                            + " ab Offset " + end + " verworfen.");
+                }
+            }
+            if (segments.isEmpty()) {
+                active = LogSegment.open(segmentPath(0), 0, segmentBytes);
+                segments.add(active);
+            } else {
+                active = segments.getLast();
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // Liest die Datensätze eines Segments in den Index ein und liefert das Ende des letzten gültigen.
+    private int scan(LogSegment segment, int segmentIndex, boolean verify) {
+        int position = 0;
+        while (position + LogSegment.HEADER <= segment.capacity()) {
+            int length = segment.bodyLength(position);
+            if (length < FIXED_BODY || length > segment.capacity() - position - LogSegment.HEADER) {
+                break; // Ende (Nullen) oder unbrauchbare Länge
+            }
+            ByteBuffer body = segment.body(position, length);
+            if (verify) {
+                crc.reset();
+                crc.update(body.duplicate());
+                if ((int) crc.getValue() != segment.crc(position)) {
+                    break;
+                }
+            }
+
+            long id = body.getLong();
+            String from = readString(body, body.getShort() & 0xFFFF);
+            String to = readString(body, body.getShort() & 0xFFFF);
+            index(from, to, id, address(segmentIndex, position));
+            nextId = Math.max(nextId, id + 1);
+
+            position += LogSegment.HEADER + length;
+        }
+        return position;
+    }
+
+    // Nur unter der Schreibsperre bzw. beim Start.
+    private void index(String from, String to, long id, long address) {
+        pairs.computeIfAbsent(key(from, to), k -> new PairIndex()).add(id, address);
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // Adresse eines Datensatzes: Position des Segments in der Liste (obere 32 Bit) und Offset im Segment.
+    private static long address(int segmentIndex, int offset) {
+        return (long) segmentIndex << 32 | (offset & 0xFFFFFFFFL);
+    }
+
+    // Ungeordnetes Paar: (A, B) und (B, A) ergeben denselben Schlüssel.
+    private static String key(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + '\u0000' + b : b + '\u0000' + a;
+    }
+
+    /**
+     * IDs und Adressen der Nachrichten eines Gesprächspaars, aufsteigend nach ID
+     * (die IDs werden in Schreibreihenfolge vergeben und eingetragen).
+     */
+    private static final class PairIndex {
+
+        private long[] ids = new long[8];
+        private long[] addresses = new long[8];
+        private int size;
+
+        void add(long id, long address) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                addresses = Arrays.copyOf(addresses, size * 2);
+            }
+            ids[size] = id;
+            addresses[size] = address;
+            size++;
+        }
+
+        // Anzahl der Nachrichten mit ID < beforeId.
+        int indexOf(long beforeId) {
+            int index = Arrays.binarySearch(ids, 0, size, beforeId);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package de.thb.netchat.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Eine Segmentdatei des Nachrichten-Logs (siehe LogMessageStore).
+ *
+ * Die Datei wird beim Öffnen auf ihre volle Größe gebracht und komplett in den Speicher gemappt.
+ * Datensätze liegen lückenlos hintereinander:
+ *   [int Länge des Rumpfs][int CRC32C des Rumpfs][Rumpf]
+ * Der Rest der Datei ist mit Nullen gefüllt; eine Länge von 0 markiert das Ende.
+ *
+ * Geschrieben wird nur vom Writer-Thread, gelesen von beliebigen Threads. Alle Zugriffe sind absolut
+ * (ohne position()), damit sich Leser und Schreiber den Puffer teilen können.
+ */
+final class LogSegment {
+
+    // Länge + Prüfsumme
+    static final int HEADER = 8;
+
+    private final int number;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    // Ende des letzten gültigen Datensatzes. Nur vom Writer-Thread (bzw. beim Wiederherstellen) verwendet.
+    private int writePosition;
+
+    private LogSegment(int number, FileChannel channel, MappedByteBuffer buffer) {
+        this.number = number;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * Öffnet (oder erzeugt) eine Segmentdatei.
+     * Ist eine vorhandene Datei größer als capacity (z.B. nach Änderung der Segmentgröße), wird sie vollständig gemappt.
+     */
+    static LogSegment open(Path path, int number, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = Math.max(capacity, channel.size());
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment zu groß: " + path);
+            }
+            // Mappen vergrößert die Datei auf "size" (mit Nullen gefüllt).
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new LogSegment(number, channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    int number() {
+        return number;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Passt ein Datensatz mit diesem Rumpf noch hinter den letzten?
+     */
+    boolean fits(int bodyLength) {
+        return capacity - writePosition >= HEADER + bodyLength;
+    }
+
+    /**
+     * Hängt einen Datensatz an (ohne force). Der Aufrufer hat vorher mit fits() geprüft.
+     *
+     * @param body Rumpf im Bereich [0, length).
+     * @return Offset des Datensatzes im Segment.
+     */
+    int append(byte[] body, int length, int crc) {
+        int offset = writePosition;
+        // Rumpf vor dem Kopf schreiben: Ein Datensatz mit Länge > 0 hat immer einen vollständig geschriebenen Rumpf
+        // im Speicher. Die Reihenfolge auf der Platte garantiert das nicht, dafür gibt es die Prüfsumme.
+        buffer.put(offset + HEADER, body, 0, length);
+        buffer.putInt(offset + 4, crc);
+        buffer.putInt(offset, length);
+        writePosition = offset + HEADER + length;
+        return offset;
+    }
+
+    /**
+     * Schreibt den Bereich [from, to) auf die Platte (msync).
+     */
+    void force(int from, int to) {
+        if (to > from) {
+            buffer.force(from, to - from);
+        }
+    }
+
+    /**
+     * Länge des Rumpfs an einem Offset (0 = kein Datensatz mehr).
+     */
+    int bodyLength(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    int crc(int offset) {
+        return buffer.getInt(offset + 4);
+    }
+
+    /**
+     * Eigene Sicht auf den Rumpf eines Datensatzes (Position 0, Limit = Länge).
+     * Jeder Aufruf liefert ein neues Objekt, Leser kommen sich also nicht in die Quere.
+     */
+    ByteBuffer body(int offset, int length) {
+        return buffer.slice(offset + HEADER, length);
+    }
+
+    /**
+     * Setzt das Ende des gültigen Bereichs (nach dem Einlesen beim Start).
+     * Steht dahinter noch etwas (abgerissener Datensatz nach einem Absturz), wird der Rest genullt
+     * und geschrieben, damit spätere Datensätze nicht auf Reste eines alten stoßen.
+     *
+     * @return true, wenn Reste verworfen wurden.
+     */
+    boolean truncate(int position) {
+        writePosition = position;
+        if (isZero(position)) {
+            return false;
+        }
+        byte[] zeros = new byte[64 * 1024];
+        for (int i = position; i < capacity; i += zeros.length) {
+            buffer.put(i, zeros, 0, Math.min(zeros.length, capacity - i));
+        }
+        buffer.force(position, capacity - position);
+        return true;
+    }
+
+    /**
+     * Verwirft die Datensätze ab position (abgebrochener Stapel). Der Bereich bis zur bisherigen Schreibposition
+     * wird genullt und geschrieben, damit der Start ihn nicht als gültige Datensätze einliest.
+     */
+    void rollback(int position) {
+        int end = writePosition;
+        writePosition = position;
+        if (end > position) {
+            byte[] zeros = new byte[Math.min(end - position, 64 * 1024)];
+            for (int i = position; i < end; i += zeros.length) {
+                buffer.put(i, zeros, 0, Math.min(zeros.length, end - i));
+            }
+            buffer.force(position, end - position);
+        }
+    }
+
+    // Ist der Bereich ab position bis zum Dateiende leer? Geprüft wird in 8-Byte-Schritten.
+    private boolean isZero(int position) {
+        int i = position;
+        for (; i + Long.BYTES <= capacity; i += Long.BYTES) {
+            if (buffer.getLong(i) != 0) {
+                return false;
+            }
+        }
+        for (; i < capacity; i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
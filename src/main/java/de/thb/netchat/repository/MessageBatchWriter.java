@@ -0,0 +1,159 @@
+package de.thb.netchat.repository;
+
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.server.nio.Reactor;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-Behind-Persistenz für Chat-Nachrichten (Group Commit).
+ * Wird von beiden Speicher-Backends genutzt (SqliteMessageStore, LogMessageStore); das eigentliche
+ * Schreiben eines Stapels übernimmt die übergebene BatchSink.
+ *
+ * Statt jede Nachricht in einer eigenen Transaktion (mit eigenem fsync) zu speichern, sammelt ein
+ * einzelner Hintergrund-Thread die Nachrichten und schreibt sie stapelweise in einer Transaktion.
+ * Ein Stapel wird geschrieben, sobald batchSize Nachrichten vorliegen oder die älteste wartende
+ * Nachricht maxDelayMillis alt ist. Damit skaliert der Durchsatz mit der Stapelgröße statt mit der
+ * fsync-Rate, und die zusätzliche Latenz ist nach oben begrenzt.
+ *
+ * Jede Nachricht erhält ein Future, das erst nach dem Commit ihres Stapels mit dem gespeicherten Datensatz
+ * (inkl. vergebener ID) erfüllt wird. Bestätigungen an den Client dürfen also erst daran hängen.
+ * Die Futures werden vom Writer-Thread in Commit-Reihenfolge (= ID-Reihenfolge) erfüllt.
+ */
+public class MessageBatchWriter {
+
+    /**
+     * Schreibt einen Stapel dauerhaft und erfüllt danach die Futures aller Nachrichten
+     * (bzw. lässt sie bei einem Fehler scheitern).
+     */
+    interface BatchSink {
+        void write(List<Pending> batch);
+    }
+
+    // Eine wartende Nachricht samt ihrem Future.
+    record Pending(String sender, String receiver, String text, String timestamp, CompletableFuture<HistoryRecord> result) {}
+
+    // Format von SQLite current_timestamp (UTC). Der Zeitstempel wird beim Einreihen vergeben und explizit
+    // gespeichert, damit der zurückgegebene Datensatz exakt dem gespeicherten entspricht.
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Nachrichten, die im Reactor-Thread bei voller Warteschlange abgelehnt wurden.
+    private static final LongAdder rejected = Metrics.counter("persist.rejected");
+
+    private final BatchSink sink;
+    private final int batchSize;
+    private final long maxDelayNanos;
+
+    // Begrenzt: Ist die Datenbank dauerhaft langsamer als der Zufluss, blockiert submit() den Absender
+    // (Backpressure), statt unbegrenzt Speicher zu belegen. Ausnahme: Im NIO-Reactor würde das Warten alle
+    // Verbindungen des Reactors anhalten, dort wird die Nachricht bei voller Warteschlange abgelehnt.
+    private final BlockingQueue<Pending> queue;
+
+    /**
+     * @param repo Das Repository, das die eigentlichen INSERTs ausführt.
+     * @param batchSize Maximale Anzahl Nachrichten pro Transaktion.
+     * @param maxDelayMillis Maximale Wartezeit einer Nachricht, bis ihr Stapel geschrieben wird.
+     * @param capacity Maximale Anzahl ungeschriebener Nachrichten.
+     */
+    public MessageBatchWriter(MessageRepo repo, int batchSize, long maxDelayMillis, int capacity) {
+        this(repo::addMessages, batchSize, maxDelayMillis, capacity);
+    }
+
+    MessageBatchWriter(BatchSink sink, int batchSize, long maxDelayMillis, int capacity) {
+        this.sink = sink;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelayMillis));
+        this.queue = new LinkedBlockingQueue<>(capacity);
+        // Plattform-Thread: Der SQLite-Treiber ruft nativen Code auf und würde einen virtuellen Thread pinnen;
+        // beim Log-Backend blockiert force() (msync) den Thread.
+        Thread.ofPlatform().daemon().name("message-writer").start(this::run);
+    }
+
+    /**
+     * Reiht eine Nachricht zur Speicherung ein.
+     *
+     * Unvollständige Nachrichten (ein Feld null) werden sofort abgelehnt und erreichen den Stapel nie:
+     * Ein ungültiger Datensatz ließe sonst die ganze Transaktion und damit die Nachrichten aller anderen scheitern.
+     *
+     * @return Future, das nach dem Commit mit dem gespeicherten Datensatz (inkl. ID) erfüllt wird
+     *         (bzw. mit dem Fehler des Speicher-Backends scheitert).
+     */
+    public CompletableFuture<HistoryRecord> submit(String senderName, String receiverName, String text) {
+        CompletableFuture<HistoryRecord> result = new CompletableFuture<>();
+        if (senderName == null || receiverName == null || text == null) {
+            result.completeExceptionally(new IllegalArgumentException("Absender, Empfänger und Text erforderlich"));
+            return result;
+        }
+        String timestamp = LocalDateTime.now(ZoneOffset.UTC).format(TIMESTAMP);
+        Pending pending = new Pending(senderName, receiverName, text, timestamp, result);
+        if (Reactor.isReactorThread()) {
+            if (!queue.offer(pending)) {
+                rejected.increment();
+                result.completeExceptionally(new RejectedExecutionException("Speicher-Warteschlange voll"));
+            }
+            return result;
+        }
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Anzahl der Nachrichten, die noch nicht geschrieben wurden.
+     */
+    public int pending() {
+        return queue.size();
+    }
+
+    // Schleife des Writer-Threads.
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        try {
+            while (true) {
+                // Blockiert, bis überhaupt etwas zu schreiben ist.
+                batch.add(queue.take());
+
+                // Ab der ersten Nachricht läuft die Frist: Der Stapel wird aufgefüllt, bis er voll oder die Frist vorbei ist.
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < batchSize) {
+                    // Bereits wartende Nachrichten ohne Sperrwechsel pro Element übernehmen.
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                sink.write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Writer wird beendet.
+            for (Pending pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+        }
+    }
+}
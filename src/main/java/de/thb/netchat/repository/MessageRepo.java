@@ -1,11 +1,17 @@
 package de.thb.netchat.repository;
 
+import de.thb.netchat.model.HistoryRecord;
+
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Repository-Klasse für den Zugriff auf die "messages"-Tabelle.
@@ -16,6 +22,30 @@ import java.util.List;
  */
 public class MessageRepo {
 
+    // Maximale Anzahl Suchbegriffe pro Anfrage; jeder Begriff ist eine weitere Trefferliste im Schnitt.
+    private static final int MAX_SEARCH_TERMS = 8;
+
+    // Gleiche Kodierung wie hex() im Trigger der Migration 007 (Groß-/Kleinschreibung ignoriert der Tokenizer).
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    // Verbindungen dieses Repositories: null = gemeinsamer Pool aus DBConnection,
+    // sonst der Pool eines Shards (siehe ShardedMessageStore).
+    private final ConnectionPool pool;
+
+    /**
+     * Repository auf der Hauptdatenbank (DBConnection).
+     */
+    public MessageRepo() {
+        this(null);
+    }
+
+    /**
+     * Repository auf einer eigenen Datenbank, z.B. einem Shard.
+     */
+    public MessageRepo(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
     /**
      * Speichert eine neue Nachricht in der Datenbank.
      *
@@ -30,7 +60,7 @@ public class MessageRepo {
         // Wir nutzen PreparedStatements.
         // Vorteil: Schützt vor SQL-Injection (Hacker können keinen Schadcode einschleusen)
         // und ist performanter bei wiederholten Aufrufen.
-        try (Connection connection = DBConnection.getConnection();
+        try (Connection connection = connect();
              PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setString(1, senderName);
@@ -46,6 +76,146 @@ public class MessageRepo {
         }
     }
 
+    /**
+     * Speichert mehrere Nachrichten in einer einzigen Transaktion (Group Commit, siehe MessageBatchWriter).
+     * Ein Commit (und damit ein fsync) für den ganzen Stapel statt einem pro Nachricht.
+     * Die Futures der Nachrichten werden erst nach dem Commit mit dem gespeicherten Datensatz erfüllt;
+     * scheitert der Stapel, scheitern alle Futures mit der SQLException.
+     *
+     * @param batch Die zu speichernden Nachrichten in Eingangsreihenfolge.
+     */
+    void addMessages(List<MessageBatchWriter.Pending> batch) {
+        String sql = "insert into messages(sender_name, receiver_name, text, timestamp) values(?, ?, ?, ?)";
+        long lastId;
+
+        try (Connection connection = connect()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                 Statement statement = connection.createStatement()) {
+
+                for (MessageBatchWriter.Pending pending : batch) {
+                    preparedStatement.setString(1, pending.sender());
+                    preparedStatement.setString(2, pending.receiver());
+                    preparedStatement.setString(3, pending.text());
+                    preparedStatement.setString(4, pending.timestamp());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                // Während der Schreibtransaktion hält diese Verbindung die Schreibsperre.
+                // Die IDs des Stapels sind daher lückenlos und enden bei last_insert_rowid().
+                ResultSet rs = statement.executeQuery("select last_insert_rowid()");
+                lastId = rs.next() ? rs.getLong(1) : 0;
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error beim Speichern von " + batch.size() + " Nachrichten:");
+            e.printStackTrace();
+            for (MessageBatchWriter.Pending pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+            return;
+        }
+
+        long id = lastId - batch.size() + 1;
+        for (MessageBatchWriter.Pending pending : batch) {
+            pending.result().complete(new HistoryRecord(
+                    id++, pending.sender(), pending.receiver(), pending.text(), pending.timestamp()));
+        }
+    }
+
+    /**
+     * Lädt bis zu limit Nachrichten mit einer ID größer als afterId, aufsteigend nach ID.
+     * Dient dem schrittweisen Umzug der Hauptdatenbank in die Shards (ShardedMessageStore.importFrom).
+     */
+    public List<HistoryRecord> getMessagesAfter(long afterId, int limit) throws SQLException {
+        List<HistoryRecord> records = new ArrayList<>(limit);
+        String sql = "select id, sender_name, receiver_name, text, timestamp from messages"
+                + " where id > ? order by id limit ?";
+
+        try (Connection c = connect();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setLong(1, afterId);
+            ps.setInt(2, limit);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                records.add(new HistoryRecord(
+                        rs.getLong("id"),
+                        rs.getString("sender_name"),
+                        rs.getString("receiver_name"),
+                        rs.getString("text"),
+                        rs.getString("timestamp")));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Übernimmt Nachrichten mit ihrer bisherigen ID und ihrem Zeitstempel in einer Transaktion.
+     * Bereits vorhandene, identische Datensätze werden übersprungen; ein abgebrochener Umzug kann also
+     * einfach wiederholt werden. Belegt ein anderer Datensatz dieselbe ID, wird nichts übernommen.
+     *
+     * @throws SQLException Bei Datenbankfehlern oder einem ID-Konflikt.
+     */
+    public void importMessages(List<HistoryRecord> records) throws SQLException {
+        String insert = "insert or ignore into messages(id, sender_name, receiver_name, text, timestamp)"
+                + " values(?, ?, ?, ?, ?)";
+        String existing = "select sender_name, receiver_name, text, timestamp from messages where id = ?";
+
+        try (Connection connection = connect()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insertStatement = connection.prepareStatement(insert);
+                 PreparedStatement existingStatement = connection.prepareStatement(existing)) {
+
+                for (HistoryRecord record : records) {
+                    insertStatement.setLong(1, record.id());
+                    insertStatement.setString(2, record.from());
+                    insertStatement.setString(3, record.to());
+                    insertStatement.setString(4, record.text());
+                    insertStatement.setString(5, record.timestamp());
+                    if (insertStatement.executeUpdate() > 0) {
+                        continue;
+                    }
+
+                    // ID schon belegt: Nur ein früherer, abgebrochener Umzug derselben Nachricht ist in Ordnung.
+                    existingStatement.setLong(1, record.id());
+                    ResultSet rs = existingStatement.executeQuery();
+                    boolean same = rs.next()
+                            && record.from().equals(rs.getString("sender_name"))
+                            && record.to().equals(rs.getString("receiver_name"))
+                            && record.text().equals(rs.getString("text"))
+                            && Objects.equals(record.timestamp(), rs.getString("timestamp"));
+                    if (!same) {
+                        throw new SQLException("ID-Konflikt beim Übernehmen der Nachricht " + record.id());
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Löscht alle Nachrichten bis einschließlich der angegebenen ID (nach erfolgreichem Umzug in die Shards).
+     */
+    public void deleteMessagesUpTo(long id) throws SQLException {
+        try (Connection c = connect();
+             PreparedStatement ps = c.prepareStatement("delete from messages where id <= ?")) {
+            ps.setLong(1, id);
+            ps.executeUpdate();
+        }
+    }
+
     /**
      * Lädt den gesamten Chatverlauf zwischen zwei Benutzern.
      *
@@ -69,7 +239,7 @@ public class MessageRepo {
         order by timestamp asc;
         """;
 
-        try (Connection c = DBConnection.getConnection();
+        try (Connection c = connect();
              PreparedStatement ps = c.prepareStatement(sql)) {
 
             // Parameter für die erste Klammer (A -> B)
@@ -99,6 +269,178 @@ public class MessageRepo {
         return list;
     }
 
+    /**
+     * Lädt eine Seite des Chatverlaufs zwischen zwei Benutzern (Cursor-Paginierung).
+     * Liefert die neuesten "limit" Nachrichten mit einer ID kleiner als beforeId.
+     *
+     * Die Kosten hängen nur von der Seitengröße ab, nicht von der Länge des Verlaufs:
+     * Jede Richtung (A -> B, B -> A) wird über den Index (sender_name, receiver_name, id) rückwärts ab
+     * dem Cursor gelesen und nach "limit" Zeilen abgebrochen; danach werden beide Teilergebnisse gemischt.
+     *
+     * @param a Benutzer A
+     * @param b Benutzer B
+     * @param beforeId Cursor: Nur Nachrichten mit kleinerer ID (null = ab der neuesten Nachricht).
+     * @param limit Maximale Anzahl Nachrichten.
+     * @return Die Nachrichten, chronologisch sortiert (älteste zuerst).
+     */
+    public List<HistoryRecord> getConversationPage(String a, String b, Long beforeId, int limit) {
+        try {
+            return queryConversationPage(a, b, beforeId, limit);
+        } catch (SQLException e) {
+            System.err.println("Error beim Abrufen des Chatverlaufs:");
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Wie getConversationPage, meldet Fehler aber an den Aufrufer, statt eine leere Liste zu liefern.
+     * Für Aufrufer, die das Ergebnis zwischenspeichern (ConversationCache): Ein Fehler darf dort nicht
+     * als "leerer Verlauf" landen.
+     */
+    public List<HistoryRecord> queryConversationPage(String a, String b, Long beforeId, int limit) throws SQLException {
+        List<HistoryRecord> page = new ArrayList<>(limit);
+
+        String sql = """
+        select id, sender_name, receiver_name, text, timestamp from (
+            select * from (select id, sender_name, receiver_name, text, timestamp from messages
+                           where sender_name = ? and receiver_name = ? and id < ?
+                           order by id desc limit ?)
+            union all
+            select * from (select id, sender_name, receiver_name, text, timestamp from messages
+                           where sender_name = ? and receiver_name = ? and id < ?
+                           order by id desc limit ?)
+        )
+        order by id desc
+        limit ?;
+        """;
+
+        long cursor = beforeId != null ? beforeId : Long.MAX_VALUE;
+
+        try (Connection c = connect();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+
+            // A -> B
+            ps.setString(1, a);
+            ps.setString(2, b);
+            ps.setLong(3, cursor);
+            ps.setInt(4, limit);
+            // B -> A
+            ps.setString(5, b);
+            ps.setString(6, a);
+            ps.setLong(7, cursor);
+            ps.setInt(8, limit);
+            ps.setInt(9, limit);
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                page.add(new HistoryRecord(
+                        rs.getLong("id"),
+                        rs.getString("sender_name"),
+                        rs.getString("receiver_name"),
+                        rs.getString("text"),
+                        rs.getString("timestamp")));
+            }
+
+        }
+
+        // Abgefragt wurde von neu nach alt; angezeigt wird chronologisch.
+        return page.reversed();
+    }
+
+    /**
+     * Volltextsuche über den FTS5-Index "messages_fts" (Migration 007), sortiert nach Relevanz (BM25).
+     *
+     * Gesucht wird nur in Gesprächen, an denen einer der übergebenen Teilnehmer beteiligt ist
+     * (der Benutzer selbst und ggf. seine Räume als "#raum"). Diese Einschränkung ist Teil des FTS-Ausdrucks:
+     * SQLite schneidet die Trefferlisten der Suchbegriffe mit der des Teilnehmers, bevor gerankt wird.
+     * Die Kosten hängen damit von der Zahl der passenden Nachrichten ab, nicht von der Größe der Tabelle.
+     *
+     * @param participants Namen, deren Gespräche durchsucht werden (mindestens einer).
+     * @param query Suchbegriffe, durch Leerzeichen getrennt; alle müssen vorkommen, der letzte auch als Präfix.
+     * @param offset Anzahl zu überspringender Treffer.
+     * @param limit Maximale Anzahl Treffer.
+     * @return Treffer, der relevanteste zuerst; leer, wenn die Anfrage keine Suchbegriffe enthält.
+     */
+    public List<SearchHit> search(List<String> participants, String query, int offset, int limit) throws SQLException {
+        String match = toMatchExpression(participants, query);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+
+        // Erst im Index ranken und begrenzen, dann nur die Treffer der Seite aus "messages" laden.
+        // Die Gewichte von bm25 gelten je Spalte: Nur der Text zählt, die Teilnehmer filtern nur.
+        String sql = """
+        select m.id, m.sender_name, m.receiver_name, m.text, m.timestamp, hits.score from (
+            select rowid, bm25(messages_fts, 1.0, 0.0) as score from messages_fts
+            where messages_fts match ?
+            order by score, rowid desc
+            limit ? offset ?
+        ) hits
+        join messages m on m.id = hits.rowid
+        order by hits.score, m.id desc;
+        """;
+
+        List<SearchHit> hits = new ArrayList<>(limit);
+        try (Connection c = connect();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+
+            ps.setString(1, match);
+            ps.setInt(2, limit);
+            ps.setInt(3, offset);
+
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                hits.add(new SearchHit(new HistoryRecord(
+                        rs.getLong("id"),
+                        rs.getString("sender_name"),
+                        rs.getString("receiver_name"),
+                        rs.getString("text"),
+                        rs.getString("timestamp")),
+                        rs.getDouble("score")));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Baut den FTS5-Ausdruck, z.B. participants : ("u616E6E61" OR "u23746561") AND text : ("hallo" "morg"*).
+     * Benutzereingaben werden nur als Phrasen in Anführungszeichen übernommen (Anführungszeichen verdoppelt),
+     * FTS5-Syntax wie OR, NEAR oder Spaltenfilter aus der Anfrage ist damit wirkungslos.
+     *
+     * @return Der Ausdruck oder null, wenn die Anfrage keinen Suchbegriff (Buchstabe oder Ziffer) enthält.
+     */
+    static String toMatchExpression(List<String> participants, String query) {
+        if (query == null || participants.isEmpty()) {
+            return null;
+        }
+        List<String> terms = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.codePoints().anyMatch(Character::isLetterOrDigit) && terms.size() < MAX_SEARCH_TERMS) {
+                terms.add('"' + word.replace("\"", "\"\"") + '"');
+            }
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+        // Der letzte Begriff wird evtl. noch getippt: Präfixsuche.
+        terms.set(terms.size() - 1, terms.getLast() + '*');
+
+        StringBuilder match = new StringBuilder("participants : (");
+        for (int i = 0; i < participants.size(); i++) {
+            if (i > 0) {
+                match.append(" OR ");
+            }
+            match.append("\"u").append(HEX.formatHex(participants.get(i).getBytes(StandardCharsets.UTF_8))).append('"');
+        }
+        match.append(") AND text : (").append(String.join(" ", terms)).append(')');
+        return match.toString();
+    }
+
+    private Connection connect() throws SQLException {
+        return pool != null ? pool.getConnection() : DBConnection.getConnection();
+    }
+
     /**
      * Lädt alle Nachrichten, die von einem bestimmten User gesendet wurden.
      * (Hilfsmethode, z.B. für Logs oder Statistiken)
@@ -110,7 +452,7 @@ public class MessageRepo {
         List<String> messages = new ArrayList<>();
         String sql = "select text from messages where sender_name = ? order by timestamp desc";
 
-        try (Connection connection = DBConnection.getConnection();
+        try (Connection connection = connect();
              PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setString(1, senderName);
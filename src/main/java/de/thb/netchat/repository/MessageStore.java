@@ -0,0 +1,58 @@
+package de.thb.netchat.repository;
+
+import de.thb.netchat.model.HistoryRecord;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Speicher-Backend für Chat-Nachrichten hinter dem ChatService.
+ *
+ * Implementierungen:
+ * - SqliteMessageStore: Tabelle "messages" in SQLite (Standard).
+ * - LogMessageStore: Segmentierte Append-only-Logdateien mit Index im Speicher (hohe Schreibraten).
+ *
+ * Ausgewählt wird über die System-Property netchat.store (sqlite | log), siehe ChatService.
+ */
+public interface MessageStore extends AutoCloseable {
+
+    /**
+     * Speichert eine Nachricht asynchron.
+     *
+     * @return Future, das erst nach dem dauerhaften Speichern mit dem Datensatz (inkl. ID) erfüllt wird.
+     */
+    CompletableFuture<HistoryRecord> append(String senderName, String receiverName, String text);
+
+    /**
+     * Lädt eine Seite des Chatverlaufs zwischen zwei Benutzern (Cursor-Paginierung).
+     *
+     * @param beforeId Cursor: Nur Nachrichten mit kleinerer ID (null = ab der neuesten Nachricht).
+     * @param limit Maximale Anzahl Nachrichten.
+     * @return Die neuesten "limit" Nachrichten vor dem Cursor, chronologisch sortiert (älteste zuerst).
+     * @throws StorageException Falls das Backend nicht gelesen werden kann.
+     */
+    List<HistoryRecord> getConversationPage(String a, String b, Long beforeId, int limit) throws StorageException;
+
+    /**
+     * Volltextsuche in den Gesprächen der angegebenen Teilnehmer, sortiert nach Relevanz.
+     * Nicht jedes Backend führt einen Suchindex; ohne Index schlägt die Suche mit einer StorageException fehl.
+     *
+     * @param participants Namen, deren Gespräche durchsucht werden (Benutzer und ggf. "#raum").
+     * @param query Suchbegriffe, durch Leerzeichen getrennt.
+     * @param offset Anzahl zu überspringender Treffer.
+     * @param limit Maximale Anzahl Treffer.
+     * @return Treffer, der relevanteste zuerst.
+     * @throws StorageException Falls das Backend nicht gelesen werden kann oder keine Suche unterstützt.
+     */
+    default List<SearchHit> search(List<String> participants, String query, int offset, int limit) throws StorageException {
+        throw new StorageException("Volltextsuche wird von diesem Nachrichtenspeicher nicht unterstützt");
+    }
+
+    /**
+     * Anzahl der Nachrichten, die angenommen, aber noch nicht gespeichert wurden.
+     */
+    int pending();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,210 @@
+package de.thb.netchat.repository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mitgliederindex aller Räume im Speicher (Write-Through vor dem RoomRepo, wie das UserDirectory).
+ *
+ * Pro Raum gibt es zwei Sichten auf dieselben Mitglieder:
+ * - ein Set für die Prüfung "ist X Mitglied?" in O(1) (bei jeder Raumnachricht),
+ * - ein unveränderliches Array für die Zustellung. Der Fan-out iteriert es ohne Sperre und kann es in Abschnitte
+ *   teilen. Bei jedem Ein- oder Austritt wird es ersetzt (Copy-on-Write): Mitgliedschaften ändern sich selten,
+ *   Nachrichten kommen ständig.
+ *
+ * Änderungen werden zuerst in die Datenbank geschrieben und erst nach Erfolg in den Index übernommen.
+ */
+public class RoomDirectory {
+
+    private static final String[] NO_MEMBERS = new String[0];
+
+    private final RoomRepo repo;
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    public RoomDirectory(RoomRepo repo) {
+        this.repo = repo;
+    }
+
+    /**
+     * Lädt alle Räume aus der Datenbank (typischerweise beim Start).
+     *
+     * @return true, wenn der Index nun vollständig ist.
+     */
+    public synchronized boolean load() {
+        if (loaded) {
+            return true;
+        }
+        try {
+            Map<String, List<String>> memberships = repo.getAllMemberships();
+            memberships.forEach((name, members) -> rooms.put(name, new Room(members)));
+            loaded = true;
+            System.out.println("Raumverzeichnis geladen: " + memberships.size() + " Räume");
+        } catch (SQLException e) {
+            System.err.println("Error beim Laden des Raumverzeichnisses:");
+            e.printStackTrace();
+        }
+        return loaded;
+    }
+
+    /**
+     * Trägt einen Benutzer in einen Raum ein und legt den Raum bei Bedarf an.
+     * Ist er bereits Mitglied, wird nichts geschrieben.
+     *
+     * @return true, wenn der Benutzer nun Mitglied ist; false bei einem Datenbankfehler.
+     */
+    public synchronized boolean join(String room, String user) {
+        if (!ensureLoaded()) {
+            return false;
+        }
+        Room entry = rooms.get(room);
+        if (entry != null && entry.memberSet.contains(user)) {
+            return true;
+        }
+        try {
+            repo.addMember(room, user);
+        } catch (SQLException e) {
+            System.err.println("Error beim Beitritt von " + user + " zu Raum " + room + ":");
+            e.printStackTrace();
+            return false;
+        }
+        rooms.computeIfAbsent(room, r -> new Room(List.of())).add(user);
+        return true;
+    }
+
+    /**
+     * Trägt einen Benutzer aus einem Raum aus.
+     *
+     * @return true, wenn der Benutzer Mitglied war und ausgetragen wurde.
+     */
+    public synchronized boolean leave(String room, String user) {
+        Room entry = ensureLoaded() ? rooms.get(room) : null;
+        if (entry == null || !entry.memberSet.contains(user)) {
+            return false;
+        }
+        try {
+            repo.removeMember(room, user);
+        } catch (SQLException e) {
+            System.err.println("Error beim Austritt von " + user + " aus Raum " + room + ":");
+            e.printStackTrace();
+            return false;
+        }
+        entry.remove(user);
+        return true;
+    }
+
+    /**
+     * Übernimmt einen Beitritt, der an anderer Stelle bereits gespeichert wurde (Cluster: anderer Knoten).
+     * Schreibt nicht in die Datenbank.
+     */
+    public synchronized void applyJoin(String room, String user) {
+        if (loaded) {
+            rooms.computeIfAbsent(room, r -> new Room(List.of())).add(user);
+        }
+    }
+
+    /**
+     * Übernimmt einen Austritt, der an anderer Stelle bereits gespeichert wurde. Schreibt nicht in die Datenbank.
+     */
+    public synchronized void applyLeave(String room, String user) {
+        Room entry = loaded ? rooms.get(room) : null;
+        if (entry != null) {
+            entry.remove(user);
+        }
+    }
+
+    /**
+     * Liest alle Mitgliedschaften neu aus der Datenbank (Cluster: nach einer Verbindungsunterbrechung können
+     * Beitritte und Austritte anderer Knoten fehlen). Räume werden einzeln ersetzt, Leser sehen nie einen leeren Index.
+     */
+    public synchronized void reload() {
+        if (!loaded) {
+            load();
+            return;
+        }
+        try {
+            Map<String, List<String>> memberships = repo.getAllMemberships();
+            memberships.forEach((name, members) -> rooms.put(name, new Room(members)));
+            rooms.keySet().retainAll(memberships.keySet());
+        } catch (SQLException e) {
+            System.err.println("Error beim Abgleich des Raumverzeichnisses:");
+            e.printStackTrace();
+        }
+    }
+
+    public boolean isMember(String room, String user) {
+        Room entry = ensureLoaded() ? rooms.get(room) : null;
+        return entry != null && entry.memberSet.contains(user);
+    }
+
+    /**
+     * Aktuelle Mitglieder eines Raums (leer, wenn es den Raum nicht gibt).
+     * Das Array ist eine Momentaufnahme und wird nie verändert; Aufrufer dürfen es ebenfalls nicht verändern.
+     */
+    public String[] members(String room) {
+        Room entry = ensureLoaded() ? rooms.get(room) : null;
+        return entry != null ? entry.members : NO_MEMBERS;
+    }
+
+    /**
+     * Räume, in denen der Benutzer Mitglied ist (z.B. für die Volltextsuche).
+     * Durchläuft alle Räume; gedacht für seltene Abfragen, nicht für den Nachrichtenpfad.
+     */
+    public List<String> roomsOf(String user) {
+        if (!ensureLoaded()) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>();
+        rooms.forEach((name, entry) -> {
+            if (entry.memberSet.contains(user)) {
+                result.add(name);
+            }
+        });
+        return result;
+    }
+
+    // Schneller Pfad ohne Sperre, sobald der Index einmal geladen ist.
+    private boolean ensureLoaded() {
+        return loaded || load();
+    }
+
+    /**
+     * Mitglieder eines Raums. Schreibzugriffe nur unter der Sperre des RoomDirectory.
+     */
+    private static final class Room {
+
+        private final Set<String> memberSet = ConcurrentHashMap.newKeySet();
+        private volatile String[] members;
+
+        Room(List<String> initial) {
+            memberSet.addAll(initial);
+            members = memberSet.toArray(NO_MEMBERS);
+        }
+
+        void add(String user) {
+            if (memberSet.add(user)) {
+                String[] updated = Arrays.copyOf(members, members.length + 1);
+                updated[members.length] = user;
+                members = updated;
+            }
+        }
+
+        void remove(String user) {
+            if (memberSet.remove(user)) {
+                String[] updated = new String[members.length - 1];
+                int i = 0;
+                for (String member : members) {
+                    if (!member.equals(user)) {
+                        updated[i++] = member;
+                    }
+                }
+                members = updated;
+            }
+        }
+    }
+}
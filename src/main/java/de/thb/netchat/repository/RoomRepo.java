@@ -0,0 +1,98 @@
+package de.thb.netchat.repository;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository-Klasse für die Tabellen "rooms" und "room_members".
+ * (DAO - Data Access Object)
+ *
+ * Räume und Mitgliedschaften ändern sich selten. Sie werden beim Start einmalig komplett geladen
+ * (siehe RoomDirectory), danach schreibt dieses Repository nur noch die Änderungen.
+ */
+public class RoomRepo {
+
+    /**
+     * Trägt einen Benutzer in einen Raum ein. Existiert der Raum noch nicht, wird er mit dem Benutzer
+     * als Ersteller angelegt. Beides geschieht in einer Transaktion.
+     *
+     * @param room Name des Raums.
+     * @param user Benutzername.
+     * @throws SQLException Falls nicht gespeichert werden konnte.
+     */
+    public void addMember(String room, String user) throws SQLException {
+        try (Connection connection = DBConnection.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement createRoom = connection.prepareStatement(
+                         "insert or ignore into rooms(name, created_by) values(?, ?)");
+                 PreparedStatement addMember = connection.prepareStatement(
+                         "insert or ignore into room_members(room_name, user_name) values(?, ?)")) {
+
+                createRoom.setString(1, room);
+                createRoom.setString(2, user);
+                createRoom.executeUpdate();
+
+                addMember.setString(1, room);
+                addMember.setString(2, user);
+                addMember.executeUpdate();
+
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Trägt einen Benutzer aus einem Raum aus. Der Raum selbst bleibt bestehen.
+     *
+     * @throws SQLException Falls nicht gespeichert werden konnte.
+     */
+    public void removeMember(String room, String user) throws SQLException {
+        String sql = "delete from room_members where room_name = ? and user_name = ?";
+
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setString(1, room);
+            preparedStatement.setString(2, user);
+            preparedStatement.executeUpdate();
+        }
+    }
+
+    /**
+     * Lädt alle Räume mit ihren Mitgliedern auf einmal (auch Räume ohne Mitglieder).
+     * Wird einmalig beim Start vom RoomDirectory genutzt.
+     *
+     * @return Raumname -> Mitglieder.
+     * @throws SQLException Falls die Tabellen nicht gelesen werden können.
+     */
+    public Map<String, List<String>> getAllMemberships() throws SQLException {
+        Map<String, List<String>> rooms = new HashMap<>();
+        String sql = """
+                select r.name, m.user_name
+                from rooms r left join room_members m on m.room_name = r.name
+                order by r.name
+                """;
+
+        try (Connection connection = DBConnection.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+
+            while (resultSet.next()) {
+                List<String> members = rooms.computeIfAbsent(resultSet.getString(1), r -> new ArrayList<>());
+                String user = resultSet.getString(2);
+                if (user != null) {
+                    members.add(user);
+                }
+            }
+        }
+        return rooms;
+    }
+}
@@ -0,0 +1,240 @@
+package de.thb.netchat.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Versionierte Schema-Migrationen.
+ *
+ * Jede Migration hat eine feste ID und wird genau einmal pro Datenbank ausgeführt. Welche Migrationen
+ * bereits angewendet wurden, steht in der Tabelle "schema_migrations". Neue Schemaänderungen werden
+ * ausschließlich als neue Migration am Ende der Liste ergänzt; bestehende Einträge werden nie geändert,
+ * da sie auf vorhandenen Datenbanken bereits gelaufen sind.
+ */
+public class SchemaMigrations {
+
+    /**
+     * Eine einzelne Migration.
+     *
+     * @param id Eindeutige, sortierbare ID (z.B. "002_wal").
+     * @param transactional false für Befehle, die SQLite nicht innerhalb einer Transaktion erlaubt
+     *                      (z.B. "pragma journal_mode").
+     * @param statements Die auszuführenden SQL-Befehle.
+     */
+    public record Migration(String id, boolean transactional, List<String> statements) {}
+
+    // Alle Migrationen in Ausführungsreihenfolge.
+    static final List<Migration> MIGRATIONS = List.of(
+
+            // Ausgangsschema. "if not exists", damit bestehende Datenbanken von vor den Migrationen übernommen werden.
+            // "text unique" sorgt dafür, dass Namen und E-Mails nicht doppelt vorkommen dürfen.
+            new Migration("001_create_tables", true, List.of("""
+                    create table if not exists users (
+                        id integer primary key autoincrement,
+                        name text unique not null,
+                        email text unique not null,
+                        password text not null,
+                        joined_at datetime default current_timestamp
+                    )
+                    """, """
+                    create table if not exists messages (
+                        id integer primary key autoincrement,
+                        sender_name text not null,
+                        receiver_name text not null,
+                        text text not null,
+                        timestamp datetime default current_timestamp
+                    )
+                    """)),
+
+            // WAL-Journal: Leser blockieren den Schreiber nicht mehr (und umgekehrt).
+            // Der Modus wird in der Datenbankdatei gespeichert und gilt danach für alle Verbindungen.
+            new Migration("002_wal", false, List.of("pragma journal_mode = wal")),
+
+            // Indizes für die Verlaufsabfragen. Beide enthalten die Filter- und die Sortierspalten,
+            // SQLite findet die Treffer daher ohne Tabellenscan.
+            // - getConversation: (sender_name = ? and receiver_name = ?) or (...) order by timestamp
+            //   -> MULTI-INDEX OR: je eine Indexsuche pro Richtung, sortiert wird nur noch die Treffermenge.
+            // - getMessagesByUser: sender_name = ? order by timestamp desc
+            //   -> Indexsuche, die Reihenfolge kommt direkt aus dem Index (keine Sortierung).
+            // "analyze" aktualisiert die Statistiken, nach denen der Planer den Index wählt.
+            new Migration("003_message_indexes", true, List.of(
+                    "create index if not exists idx_messages_conversation on messages(sender_name, receiver_name, timestamp)",
+                    "create index if not exists idx_messages_sender on messages(sender_name, timestamp)",
+                    "analyze")),
+
+            // Verlauf wird seitenweise über die ID geblättert (MessageRepo.getConversationPage).
+            // Der neue Index liefert je Richtung die Nachrichten direkt in ID-Reihenfolge ab dem Cursor.
+            // Er ersetzt den Zeitstempel-Index: Die IDs sind ebenfalls chronologisch, und ein Index weniger
+            // spart bei jedem INSERT eine B-Baum-Aktualisierung.
+            new Migration("004_conversation_cursor_index", true, List.of(
+                    "create index if not exists idx_messages_pair_id on messages(sender_name, receiver_name, id)",
+                    "drop index if exists idx_messages_conversation",
+                    "analyze")),
+
+            // Gruppenräume und ihre Mitglieder (RoomRepo). Ein Raum bleibt bestehen, auch wenn alle Mitglieder ausgetreten sind.
+            // room_members ist nach (Raum, Benutzer) geclustert ("without rowid"): Die Mitglieder eines Raums liegen
+            // zusammenhängend auf der Platte. Der zweite Index beantwortet "in welchen Räumen ist X?".
+            new Migration("005_rooms", true, List.of("""
+                    create table if not exists rooms (
+                        name text primary key,
+                        created_by text not null,
+                        created_at datetime default current_timestamp
+                    )
+                    """, """
+                    create table if not exists room_members (
+                        room_name text not null references rooms(name),
+                        user_name text not null,
+                        joined_at datetime default current_timestamp,
+                        primary key (room_name, user_name)
+                    ) without rowid
+                    """,
+                    "create index if not exists idx_room_members_user on room_members(user_name)")),
+
+            // Posteingang für Nachrichten an Benutzer, die beim Senden offline waren (InboxRepo).
+            // Inhalt wird kopiert, da die Nachrichten je nach Speicher-Backend nicht in dieser Datenbank liegen.
+            // Der partielle Index enthält nur die noch nicht zugestellten Einträge: Das Nachholen nach dem Login
+            // kostet so viel, wie verpasst wurde, unabhängig davon, wie viel bereits zugestellt ist.
+            new Migration("006_inbox", true, List.of("""
+                    create table if not exists inbox (
+                        id integer primary key autoincrement,
+                        recipient text not null,
+                        message_id integer not null,
+                        sender_name text not null,
+                        text text not null,
+                        timestamp datetime not null,
+                        delivered_at datetime
+                    )
+                    """,
+                    "create index if not exists idx_inbox_pending on inbox(recipient, id) where delivered_at is null")),
+
+            // Volltextsuche über die Nachrichten (MessageRepo.search): invertierter Index als FTS5-Tabelle.
+            // - contentless (content=''): Der Index speichert nur die Terme, nicht noch einmal den Text.
+            //   Die Treffer werden über rowid = messages.id aus der Tabelle "messages" geladen.
+            // - participants: Absender und Empfänger als Token ("u" + Name in Hex, unabhängig vom Tokenizer).
+            //   Die Einschränkung auf die eigenen Gespräche geschieht so bereits im Index, nicht erst nach dem Ranking.
+            // - Trigger halten den Index beim INSERT (auch im Group Commit) und DELETE aktuell.
+            // Vorhandene Nachrichten werden einmalig übernommen; bei großen Datenbanken dauert diese Migration entsprechend.
+            new Migration("007_message_search", true, List.of("""
+                    create virtual table if not exists messages_fts using fts5(
+                        text,
+                        participants,
+                        content = '',
+                        contentless_delete = 1,
+                        tokenize = 'unicode61 remove_diacritics 2'
+                    )
+                    """, """
+                    create trigger if not exists messages_fts_insert after insert on messages begin
+                        insert into messages_fts(rowid, text, participants)
+                        values (new.id, new.text, 'u' || hex(new.sender_name) || ' u' || hex(new.receiver_name));
+                    end
+                    """, """
+                    create trigger if not exists messages_fts_delete after delete on messages begin
+                        delete from messages_fts where rowid = old.id;
+                    end
+                    """, """
+                    insert into messages_fts(rowid, text, participants)
+                    select id, text, 'u' || hex(sender_name) || ' u' || hex(receiver_name) from messages
+                    """)),
+
+            // Zugestellte Posteingangs-Einträge werden seit InboxRepo.removeDelivered gelöscht statt markiert.
+            // Einmalig aufräumen, was bis dahin als zugestellt markiert liegen geblieben ist.
+            new Migration("008_inbox_purge_delivered", true, List.of(
+                    "delete from inbox where delivered_at is not null"))
+    );
+
+    /**
+     * Wendet alle noch fehlenden Migrationen an.
+     */
+    public static void migrate() throws SQLException {
+        migrate((String) null);
+    }
+
+    /**
+     * Wendet die fehlenden Migrationen bis einschließlich targetId an (null = alle).
+     * Wird z.B. vom HistoryQueryBenchmark genutzt, um einen Zustand vor den Indizes herzustellen.
+     *
+     * @return Anzahl der in diesem Aufruf angewendeten Migrationen.
+     */
+    public static int migrate(String targetId) throws SQLException {
+        try (Connection connection = DBConnection.getConnection()) {
+            return migrate(connection, targetId);
+        }
+    }
+
+    /**
+     * Wendet alle fehlenden Migrationen auf eine weitere Datenbank an (z.B. einen Nachrichten-Shard).
+     * Shards erhalten dasselbe Schema wie die Hauptdatenbank; ihre users-Tabelle bleibt leer.
+     */
+    public static int migrate(ConnectionPool pool) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            return migrate(connection, null);
+        }
+    }
+
+    private static int migrate(Connection connection, String targetId) throws SQLException {
+        int applied = 0;
+        try (Statement statement = connection.createStatement()) {
+
+            statement.execute("""
+                    create table if not exists schema_migrations (
+                        id text primary key,
+                        applied_at datetime default current_timestamp
+                    )
+                    """);
+            Set<String> done = appliedIds(statement);
+
+            for (Migration migration : MIGRATIONS) {
+                if (!done.contains(migration.id())) {
+                    apply(connection, migration);
+                    System.out.println("Migration angewendet: " + migration.id());
+                    applied++;
+                }
+                if (migration.id().equals(targetId)) {
+                    break;
+                }
+            }
+        }
+        return applied;
+    }
+
+    private static Set<String> appliedIds(Statement statement) throws SQLException {
+        Set<String> ids = new HashSet<>();
+        try (ResultSet rs = statement.executeQuery("select id from schema_migrations")) {
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+        }
+        return ids;
+    }
+
+    // Führt eine Migration aus und vermerkt sie. Transaktionale Migrationen werden ganz oder gar nicht angewendet.
+    private static void apply(Connection connection, Migration migration) throws SQLException {
+        connection.setAutoCommit(!migration.transactional());
+        try (Statement statement = connection.createStatement();
+             PreparedStatement mark = connection.prepareStatement("insert into schema_migrations(id) values(?)")) {
+
+            for (String sql : migration.statements()) {
+                statement.execute(sql);
+            }
+            mark.setString(1, migration.id());
+            mark.executeUpdate();
+
+            if (migration.transactional()) {
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            if (migration.transactional()) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
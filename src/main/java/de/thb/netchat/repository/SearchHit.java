@@ -0,0 +1,11 @@
+package de.thb.netchat.repository;
+
+import de.thb.netchat.model.HistoryRecord;
+
+/**
+ * Treffer der Volltextsuche.
+ *
+ * @param record Die gefundene Nachricht.
+ * @param score BM25-Relevanz nach SQLite-Konvention: kleiner = relevanter.
+ */
+public record SearchHit(HistoryRecord record, double score) {}
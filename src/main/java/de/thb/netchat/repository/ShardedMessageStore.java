@@ -0,0 +1,171 @@
+package de.thb.netchat.repository;
+
+import de.thb.netchat.model.HistoryRecord;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Nachrichtenspeicher, der die Nachrichten auf mehrere SQLite-Dateien (Shards) verteilt.
+ *
+ * SQLite erlaubt pro Datei nur einen Schreiber gleichzeitig; mit einer Datei reihen sich alle Commits
+ * des Prozesses hinter derselben Dateisperre ein. Hier hat jeder Shard eine eigene Datei, einen eigenen
+ * Connection-Pool und einen eigenen Writer-Thread (Group Commit). Die Shards schreiben unabhängig voneinander,
+ * der Schreibdurchsatz wächst damit mit der Zahl der Shards (solange Kerne und Platte mithalten).
+ *
+ * Zuordnung: Ein Gesprächspaar gehört über den Hash des ungeordneten Paars genau einem Shard.
+ * Beide Richtungen eines Chats liegen also in derselben Datei, eine Verlaufsabfrage geht immer an genau einen Shard.
+ * String.hashCode ist fest spezifiziert, die Zuordnung bleibt über Neustarts gleich. Die Zahl der Shards darf
+ * daher nachträglich nicht geändert werden, sonst landen bestehende Verläufe im falschen Shard.
+ *
+ * Jeder Shard vergibt eigene IDs. Innerhalb eines Gesprächs sind sie eindeutig und aufsteigend, was für die
+ * Cursor-Paginierung und den ConversationCache genügt; über Gespräche hinweg können IDs mehrfach vorkommen.
+ *
+ * Nachrichten, die noch in der Hauptdatenbank liegen (Betrieb ohne Shards), zieht importFrom beim Start
+ * mit ihren bisherigen IDs in die zuständigen Shards um.
+ */
+public class ShardedMessageStore implements MessageStore {
+
+    // Nachrichten pro Umzugsschritt (eine Transaktion je Shard und Schritt).
+    private static final int IMPORT_BATCH = 1_000;
+
+    private final List<SqliteMessageStore> shards;
+    private final List<MessageRepo> repos;
+    private final List<ConnectionPool> pools;
+
+    /**
+     * Öffnet (bzw. legt an) alle Shards und bringt ihr Schema auf den aktuellen Stand.
+     *
+     * @param urlPattern JDBC-URL mit Platzhalter für die Shard-Nummer, z.B. "jdbc:sqlite:db/messages-%d.db".
+     * @param shardCount Anzahl der Shards.
+     * @param poolSize Maximale Anzahl offener Verbindungen pro Shard.
+     * @param batchSize Maximale Anzahl Nachrichten pro Transaktion (je Shard).
+     * @param maxDelayMillis Maximale Wartezeit einer Nachricht, bis ihr Stapel geschrieben wird.
+     * @param capacity Maximale Anzahl ungeschriebener Nachrichten (je Shard).
+     * @throws SQLException Falls ein Shard nicht geöffnet oder migriert werden kann.
+     */
+    public ShardedMessageStore(String urlPattern, int shardCount, int poolSize,
+                               int batchSize, long maxDelayMillis, int capacity) throws SQLException {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount muss mindestens 1 sein");
+        }
+        List<SqliteMessageStore> shards = new ArrayList<>(shardCount);
+        List<MessageRepo> repos = new ArrayList<>(shardCount);
+        List<ConnectionPool> pools = new ArrayList<>(shardCount);
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                ConnectionPool pool = DBConnection.createPool(String.format(urlPattern, i), poolSize);
+                pools.add(pool);
+                SchemaMigrations.migrate(pool);
+                MessageRepo repo = new MessageRepo(pool);
+                repos.add(repo);
+                shards.add(new SqliteMessageStore(repo, batchSize, maxDelayMillis, capacity));
+            }
+        } catch (SQLException | RuntimeException e) {
+            pools.forEach(ConnectionPool::close);
+            throw e;
+        }
+        this.shards = List.copyOf(shards);
+        this.repos = List.copyOf(repos);
+        this.pools = List.copyOf(pools);
+        System.out.println("Nachrichten-Shards geöffnet: " + shardCount);
+    }
+
+    /**
+     * Zieht alle Nachrichten der Quelle (Tabelle "messages" der Hauptdatenbank) in ihre Shards um.
+     * Schrittweise: Jeder Stapel wird erst in alle betroffenen Shards geschrieben und danach in der Quelle gelöscht.
+     * Bricht der Umzug ab, setzt der nächste Start dort wieder an; doppelt übernommene Nachrichten werden erkannt.
+     * Muss vor dem ersten append laufen, sonst können neue Nachrichten eines Shards IDs der Quelle belegen.
+     *
+     * @return Anzahl der umgezogenen Nachrichten.
+     * @throws SQLException Bei Datenbankfehlern oder wenn eine ID im Shard schon anders belegt ist.
+     */
+    public long importFrom(MessageRepo source) throws SQLException {
+        long moved = 0;
+        List<HistoryRecord> batch;
+        while (!(batch = source.getMessagesAfter(0, IMPORT_BATCH)).isEmpty()) {
+            List<List<HistoryRecord>> perShard = new ArrayList<>(shards.size());
+            for (int i = 0; i < shards.size(); i++) {
+                perShard.add(new ArrayList<>());
+            }
+            for (HistoryRecord record : batch) {
+                perShard.get(indexFor(record.from(), record.to())).add(record);
+            }
+            for (int i = 0; i < shards.size(); i++) {
+                if (!perShard.get(i).isEmpty()) {
+                    repos.get(i).importMessages(perShard.get(i));
+                }
+            }
+            source.deleteMessagesUpTo(batch.get(batch.size() - 1).id());
+            moved += batch.size();
+        }
+        return moved;
+    }
+
+    @Override
+    public CompletableFuture<HistoryRecord> append(String senderName, String receiverName, String text) {
+        return shardFor(senderName, receiverName).append(senderName, receiverName, text);
+    }
+
+    @Override
+    public List<HistoryRecord> getConversationPage(String a, String b, Long beforeId, int limit) throws StorageException {
+        return shardFor(a, b).getConversationPage(a, b, beforeId, limit);
+    }
+
+    /**
+     * Ein Gespräch liegt in genau einem Shard, die Gespräche eines Benutzers aber verteilt auf alle.
+     * Daher wird jeder Shard nach seinen besten offset + limit Treffern gefragt und das Ergebnis nach Relevanz gemischt.
+     * Die BM25-Werte beruhen auf den Statistiken des jeweiligen Shards; bei gleichmäßig verteilten Gesprächen
+     * sind sie hinreichend vergleichbar.
+     */
+    @Override
+    public List<SearchHit> search(List<String> participants, String query, int offset, int limit) throws StorageException {
+        List<SearchHit> merged = new ArrayList<>();
+        for (SqliteMessageStore shard : shards) {
+            merged.addAll(shard.search(participants, query, 0, offset + limit));
+        }
+        merged.sort(Comparator.comparingDouble(SearchHit::score));
+        if (offset >= merged.size()) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(merged.subList(offset, Math.min(merged.size(), offset + limit)));
+    }
+
+    @Override
+    public int pending() {
+        int pending = 0;
+        for (SqliteMessageStore shard : shards) {
+            pending += shard.pending();
+        }
+        return pending;
+    }
+
+    /**
+     * Kennzahlen der Connection-Pools aller Shards.
+     */
+    public List<ConnectionPool.Stats> getPoolStats() {
+        List<ConnectionPool.Stats> stats = new ArrayList<>(pools.size());
+        for (ConnectionPool pool : pools) {
+            stats.add(pool.getStats());
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        pools.forEach(ConnectionPool::close);
+    }
+
+    // Der Shard eines Gesprächspaars. (A, B) und (B, A) landen im selben Shard.
+    private SqliteMessageStore shardFor(String a, String b) {
+        return shards.get(indexFor(a, b));
+    }
+
+    private int indexFor(String a, String b) {
+        String key = a.compareTo(b) <= 0 ? a + '\u0000' + b : b + '\u0000' + a;
+        return Math.floorMod(key.hashCode(), shards.size());
+    }
+}
@@ -0,0 +1,62 @@
+package de.thb.netchat.repository;
+
+import de.thb.netchat.model.HistoryRecord;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Nachrichtenspeicher auf Basis der SQLite-Tabelle "messages".
+ * Schreiben per Group Commit (MessageBatchWriter), Lesen über MessageRepo.queryConversationPage,
+ * Volltextsuche über MessageRepo.search (FTS5-Index, Migration 007).
+ */
+public class SqliteMessageStore implements MessageStore {
+
+    private final MessageRepo repo;
+    private final MessageBatchWriter writer;
+
+    /**
+     * @param repo Führt INSERTs und Abfragen aus.
+     * @param batchSize Maximale Anzahl Nachrichten pro Transaktion.
+     * @param maxDelayMillis Maximale Wartezeit einer Nachricht, bis ihr Stapel geschrieben wird.
+     * @param capacity Maximale Anzahl ungeschriebener Nachrichten.
+     */
+    public SqliteMessageStore(MessageRepo repo, int batchSize, long maxDelayMillis, int capacity) {
+        this.repo = repo;
+        this.writer = new MessageBatchWriter(repo, batchSize, maxDelayMillis, capacity);
+    }
+
+    @Override
+    public CompletableFuture<HistoryRecord> append(String senderName, String receiverName, String text) {
+        return writer.submit(senderName, receiverName, text);
+    }
+
+    @Override
+    public List<HistoryRecord> getConversationPage(String a, String b, Long beforeId, int limit) throws StorageException {
+        try {
+            return repo.queryConversationPage(a, b, beforeId, limit);
+        } catch (SQLException e) {
+            throw new StorageException("Chatverlauf konnte nicht gelesen werden", e);
+        }
+    }
+
+    @Override
+    public List<SearchHit> search(List<String> participants, String query, int offset, int limit) throws StorageException {
+        try {
+            return repo.search(participants, query, offset, limit);
+        } catch (SQLException e) {
+            throw new StorageException("Volltextsuche fehlgeschlagen", e);
+        }
+    }
+
+    @Override
+    public int pending() {
+        return writer.pending();
+    }
+
+    @Override
+    public void close() {
+        // Verbindungen gehören dem Pool (DBConnection), hier ist nichts zu schließen.
+    }
+}
@@ -0,0 +1,16 @@
+package de.thb.netchat.repository;
+
+/**
+ * Fehler eines Nachrichtenspeichers (MessageStore), unabhängig vom Backend.
+ * Die ursprüngliche Ursache (SQLException, IOException) hängt als cause daran.
+ */
+public class StorageException extends Exception {
+
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public StorageException(String message) {
+        super(message);
+    }
+}
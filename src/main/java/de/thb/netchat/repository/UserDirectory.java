@@ -0,0 +1,189 @@
+package de.thb.netchat.repository;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Write-Through-Cache aller Benutzerkonten vor dem UserRepo.
+ *
+ * Die Konten werden einmalig geladen und danach im Speicher gehalten. Lesezugriffe (Login, Registrierungsprüfung,
+ * Benutzerliste) laufen ausschließlich gegen den Speicher: Name und E-Mail per HashMap in O(1),
+ * die Namensliste liegt fertig sortiert vor. Neue Konten werden zuerst in die Datenbank geschrieben und
+ * erst nach Erfolg in den Cache übernommen, der Cache zeigt also nie einen Benutzer, den es in der DB nicht gibt.
+ *
+ * Voraussetzung: Alle Schreibzugriffe auf die users-Tabelle laufen über diese Klasse.
+ * Schlägt das Laden fehl (z.B. Tabelle fehlt noch), gehen die Lesezugriffe an das UserRepo,
+ * und beim nächsten Zugriff wird erneut geladen.
+ */
+public class UserDirectory {
+
+    private final UserRepo repo;
+
+    private final Map<String, UserRepo.Account> byName = new ConcurrentHashMap<>();
+    private final Map<String, String> nameByEmail = new ConcurrentHashMap<>();
+
+    // Alle Namen, neueste zuerst (wie UserRepo.getAllUserNames). Unveränderliche Kopie, die bei jeder
+    // Registrierung ersetzt wird: Lesen kostet nichts, Registrierungen sind selten.
+    private volatile List<String> names = List.of();
+
+    private volatile boolean loaded;
+
+    public UserDirectory(UserRepo repo) {
+        this.repo = repo;
+    }
+
+    /**
+     * Lädt alle Konten aus der Datenbank (typischerweise beim Start).
+     *
+     * @return true, wenn der Cache nun vollständig ist.
+     */
+    public synchronized boolean load() {
+        if (loaded) {
+            return true;
+        }
+        try {
+            List<UserRepo.Account> accounts = repo.getAllAccounts();
+            List<String> loadedNames = new ArrayList<>(accounts.size());
+            for (UserRepo.Account account : accounts) {
+                byName.put(account.name(), account);
+                nameByEmail.put(account.email(), account.name());
+                loadedNames.add(account.name());
+            }
+            names = List.copyOf(loadedNames);
+            loaded = true;
+            System.out.println("Benutzerverzeichnis geladen: " + accounts.size() + " Benutzer");
+        } catch (SQLException e) {
+            System.err.println("Error beim Laden des Benutzerverzeichnisses:");
+            e.printStackTrace();
+        }
+        return loaded;
+    }
+
+    /**
+     * Legt einen neuen Benutzer an (Write-Through).
+     * Synchronisiert, damit Prüfung, INSERT und Cache-Aktualisierung für zwei gleichzeitige
+     * Registrierungen nicht ineinandergreifen.
+     *
+     * @return true, wenn der Benutzer gespeichert wurde; false bei vergebenem Namen/E-Mail oder DB-Fehler.
+     */
+    public synchronized boolean addUser(String name, String email, String password) {
+        if (!load()) {
+            return repo.addUser(name, email, password);
+        }
+        if (byName.containsKey(name) || nameByEmail.containsKey(email)) {
+            return false;
+        }
+        if (!repo.addUser(name, email, password)) {
+            return false;
+        }
+        put(new UserRepo.Account(name, email, password));
+        return true;
+    }
+
+    /**
+     * Übernimmt ein Konto, das an anderer Stelle in die Datenbank geschrieben wurde (Cluster: anderer Knoten).
+     *
+     * @return true, wenn das Konto nun im Cache ist.
+     */
+    public synchronized boolean refresh(String name) {
+        if (!loaded) {
+            // Wird beim ersten Zugriff ohnehin vollständig geladen.
+            return false;
+        }
+        if (byName.containsKey(name)) {
+            return true;
+        }
+        try {
+            UserRepo.Account account = repo.getAccount(name);
+            if (account != null) {
+                put(account);
+                return true;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error beim Nachladen des Benutzers " + name + ":");
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Gleicht den Cache mit der Datenbank ab und übernimmt Konten, die inzwischen an anderer Stelle angelegt wurden
+     * (Cluster: nach einer Verbindungsunterbrechung können Registrierungs-Ereignisse fehlen).
+     *
+     * @return Die neu übernommenen Benutzernamen.
+     */
+    public synchronized List<String> reload() {
+        if (!loaded) {
+            load();
+            return List.of();
+        }
+        List<String> added = new ArrayList<>();
+        try {
+            // Älteste zuerst übernehmen, damit die neuesten am Ende vorne in "names" stehen.
+            for (UserRepo.Account account : repo.getAllAccounts().reversed()) {
+                if (!byName.containsKey(account.name())) {
+                    put(account);
+                    added.add(account.name());
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error beim Abgleich des Benutzerverzeichnisses:");
+            e.printStackTrace();
+        }
+        return added;
+    }
+
+    // Nimmt ein Konto in den Cache auf. Nur unter der Sperre aufrufen.
+    private void put(UserRepo.Account account) {
+        byName.put(account.name(), account);
+        nameByEmail.put(account.email(), account.name());
+
+        List<String> updated = new ArrayList<>(names.size() + 1);
+        updated.add(account.name());
+        updated.addAll(names);
+        names = List.copyOf(updated);
+    }
+
+    /**
+     * @return Der gespeicherte Passwort-Hash oder null, wenn der Benutzer nicht existiert.
+     */
+    public String getPassword(String username) {
+        if (!ensureLoaded()) {
+            return repo.getPassword(username);
+        }
+        UserRepo.Account account = byName.get(username);
+        return account != null ? account.password() : null;
+    }
+
+    public boolean userExists(String username) {
+        if (!ensureLoaded()) {
+            return repo.userExists(username);
+        }
+        return byName.containsKey(username);
+    }
+
+    public boolean emailExists(String email) {
+        if (!ensureLoaded()) {
+            return repo.emailExists(email);
+        }
+        return nameByEmail.containsKey(email);
+    }
+
+    /**
+     * @return Alle Benutzernamen, neueste zuerst (unveränderliche Liste).
+     */
+    public List<String> getAllUserNames() {
+        if (!ensureLoaded()) {
+            return repo.getAllUserNames();
+        }
+        return names;
+    }
+
+    // Schneller Pfad ohne Sperre, sobald der Cache einmal geladen ist.
+    private boolean ensureLoaded() {
+        return loaded || load();
+    }
+}
@@ -13,14 +13,24 @@ import java.util.List;
  */
 public class UserRepo {
 
+    /**
+     * Ein vollständiger Benutzerdatensatz (für das Laden in den UserDirectory-Cache).
+     *
+     * @param name Benutzername.
+     * @param email E-Mail-Adresse.
+     * @param password Gespeicherter Passwort-Hash.
+     */
+    public record Account(String name, String email, String password) {}
+
     /**
      * Registriert einen neuen Benutzer in der Datenbank.
      *
      * @param name     Der gewählte Benutzername
      * @param email    Die E-Mail-Adresse
      * @param password Das Passwort
+     * @return true, wenn der Benutzer gespeichert wurde.
      */
-    public void addUser(String name, String email, String password) {
+    public boolean addUser(String name, String email, String password) {
         String sql = "insert into users(name, email, password) values(?, ?, ?)";
 
         // Try-with-resources schließt die Verbindung automatisch nach dem Block
@@ -33,11 +43,63 @@ public class UserRepo {
 
             preparedStatement.executeUpdate();
             System.out.println("Neuer Benutzer hinzugefügt");
+            return true;
 
         } catch (SQLException e) {
             System.err.println("Error beim Hinzufügen eines neuen Users: ");
             e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Lädt alle Benutzerkonten auf einmal (neueste zuerst).
+     * Wird einmalig beim Start vom UserDirectory genutzt.
+     *
+     * @return Alle Konten.
+     * @throws SQLException Falls die Tabelle nicht gelesen werden kann. Der Aufrufer entscheidet,
+     *                      ob er es später erneut versucht.
+     */
+    public List<Account> getAllAccounts() throws SQLException {
+        List<Account> accounts = new ArrayList<>();
+        // id als zweites Sortierkriterium: joined_at hat nur Sekundenauflösung.
+        String sql = "select name, email, password from users order by joined_at desc, id desc";
+
+        try (Connection connection = DBConnection.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+
+            while (resultSet.next()) {
+                accounts.add(new Account(
+                        resultSet.getString("name"),
+                        resultSet.getString("email"),
+                        resultSet.getString("password")));
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Lädt ein einzelnes Konto, z.B. nachdem es an einem anderen Cluster-Knoten registriert wurde.
+     *
+     * @return Das Konto oder null, wenn es den Benutzer nicht gibt.
+     */
+    public Account getAccount(String name) throws SQLException {
+        String sql = "select name, email, password from users where name = ?";
+
+        try (Connection connection = DBConnection.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setString(1, name);
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                return new Account(
+                        resultSet.getString("name"),
+                        resultSet.getString("email"),
+                        resultSet.getString("password"));
+            }
         }
+        return null;
     }
 
     /**
@@ -0,0 +1,183 @@
+package de.thb.netchat.server;
+
+import de.thb.netchat.metrics.LatencyHistogram;
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.EncodedFrame;
+import de.thb.netchat.protocol.FrameCompression;
+import de.thb.netchat.protocol.WireProtocol;
+import de.thb.netchat.server.nio.Reactor;
+import de.thb.netchat.service.ChatService;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gemeinsame Basis der Sitzungstypen (ClientHandler und NioClientSession).
+ * Kapselt Identität und die ausgehende Warteschlange. Die Unterklassen entscheiden nur,
+ * wie die Queue geleert wird (blockierender Writer oder Reactor).
+ */
+public abstract class AbstractClientSession implements ClientSession {
+
+    // Kennzahlen zu langsamen Empfängern (siehe SlowConsumerPolicy).
+    private static final LongAdder presenceDropped = Metrics.counter("outbound.presenceDropped");
+    private static final LongAdder blockedSends = Metrics.counter("outbound.blocked");
+    private static final LongAdder slowConsumerDisconnects = Metrics.counter("outbound.disconnects");
+    private static final LatencyHistogram blockWait = Metrics.timer("outbound.blockWait");
+
+    private static final SlowConsumerPolicy policy = SlowConsumerPolicy.CONFIGURED;
+
+    // Referenz auf die Geschäftslogik (Singleton-artig instanziiert im ChatServer).
+    protected final ChatService chatService;
+
+    // Vereinbartes Übertragungsformat. Startet immer mit JSON, kann per Handshake gewechselt werden.
+    protected volatile WireProtocol protocol = WireProtocol.JSON;
+
+    // Kompression großer Frames, falls per Handshake vereinbart (sonst null).
+    private volatile FrameCompression compression;
+
+    // Ausgehende Frames, werden von genau einem Writer geleert.
+    protected final OutboundQueue outbound = new OutboundQueue(OutboundQueue.DEFAULT_CAPACITY);
+
+    // Identität der Sitzung (wird erst nach erfolgreichem Login gesetzt).
+    protected volatile String username;
+
+    // Wird beim ersten Überlauf gesetzt. Die Sitzung wird nur einmal getrennt, alles Weitere wird verworfen.
+    private final AtomicBoolean overflowed = new AtomicBoolean(false);
+
+    protected AbstractClientSession(ChatService chatService) {
+        this.chatService = chatService;
+    }
+
+    /**
+     * Startet den Writer, der die Queue leert. Wird nur aufgerufen, wenn noch kein Writer aktiv ist.
+     */
+    protected abstract void scheduleWrite();
+
+    /**
+     * Stellt das Lesen der eingehenden Daten auf das neue Protokoll um.
+     * Wird im Lese-Thread (bzw. Reactor) aufgerufen, da der Handshake dort verarbeitet wird.
+     */
+    protected abstract void onProtocolChanged(WireProtocol protocol);
+
+    /**
+     * Wird aufgerufen, wenn das Outbound-Budget erschöpft ist, der Empfänger also dauerhaft zu langsam liest.
+     * Höchstens einmal pro Sitzung.
+     */
+    protected abstract void onOutboundOverflow();
+
+    // --- API für Commands (Callback-Methoden) ---
+
+    // Kodiert die Nachricht und reiht den Frame ein. Thread-sicher.
+    // Blockiert höchstens bei SlowConsumerPolicy.BLOCK und dann nur kurz (nie im Reactor-Thread).
+    @Override
+    public void sendMessageObject(Message msg) {
+        if (admit(msg.getType())) {
+            WireProtocol protocol = this.protocol;
+            enqueue(compress(protocol, protocol.encodeFrame(msg)), msg.getType());
+        }
+    }
+
+    // Wie sendMessageObject, aber mit dem geteilten Frame: Kodiert (und ggf. komprimiert) wird nur,
+    // falls noch kein anderer Empfänger mit demselben Format ihn angefordert hat.
+    @Override
+    public void send(EncodedFrame frame) {
+        if (admit(frame.type())) {
+            WireProtocol protocol = this.protocol;
+            FrameCompression compression = this.compression;
+            byte[] bytes = compression != null && protocol == WireProtocol.BINARY
+                    ? frame.compressedBytes(compression) : frame.bytes(protocol);
+            enqueue(bytes, frame.type());
+        }
+    }
+
+    // false, wenn die Nachricht gar nicht erst kodiert und eingereiht werden soll.
+    private boolean admit(String type) {
+        if (overflowed.get()) {
+            return false;
+        }
+        if (isPresence(type) && policy == SlowConsumerPolicy.DROP_PRESENCE && outbound.isAboveSoftLimit()) {
+            // Verzichtbar: Der Client gleicht die Lücke per presence_sync aus.
+            presenceDropped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    // Kleine Frames und Verbindungen ohne Kompression: unverändert. Komprimiert wird nur im Binärformat.
+    private byte[] compress(WireProtocol protocol, byte[] frame) {
+        FrameCompression compression = this.compression;
+        return compression != null && protocol == WireProtocol.BINARY ? compression.compress(frame) : frame;
+    }
+
+    private static boolean isPresence(String type) {
+        return "presence".equals(type);
+    }
+
+    private void enqueue(byte[] frame, String type) {
+        if (!outbound.offer(frame) && !(mayBlock(type) && offerBlocking(frame))) {
+            if (overflowed.compareAndSet(false, true)) {
+                slowConsumerDisconnects.increment();
+                onOutboundOverflow();
+            }
+            return;
+        }
+        if (outbound.trySchedule()) {
+            scheduleWrite();
+        }
+    }
+
+    // Präsenz-Deltas und -Snapshots werden unter der Sperre des PresenceService verschickt, die jedes Login und
+    // Logout braucht. Sie warten daher nie; ist die Queue voll, wird die Sitzung wie bei den anderen Policies getrennt.
+    private static boolean mayBlock(String type) {
+        return policy == SlowConsumerPolicy.BLOCK && !isPresence(type) && !"presence_snapshot".equals(type)
+                && !Reactor.isReactorThread();
+    }
+
+    private boolean offerBlocking(byte[] frame) {
+        blockedSends.increment();
+        long start = System.nanoTime();
+        boolean queued = outbound.offer(frame, SlowConsumerPolicy.BLOCK_NANOS);
+        blockWait.recordSince(start);
+        return queued;
+    }
+
+    // Sendet eine standardisierte Fehlernachricht
+    @Override
+    public void sendError(String text) {
+        Message error = new Message("error", "server", username, text);
+        sendMessageObject(error);
+    }
+
+    @Override
+    public void switchProtocol(WireProtocol protocol) {
+        // Jedes Hello vereinbart die Kompression neu (erneuter Aufruf von enableCompression).
+        // Sonst bekäme ein Client nach "binary,deflate" und danach "json" weiter komprimierte Binär-Frames.
+        this.compression = null;
+        this.protocol = protocol;
+        onProtocolChanged(protocol);
+    }
+
+    @Override
+    public void enableCompression() {
+        if (protocol == WireProtocol.BINARY && compression == null) {
+            compression = new FrameCompression();
+        }
+    }
+
+    @Override
+    public int getOutboundSize() {
+        return outbound.size();
+    }
+
+    // Setter für den LoginCommand: Identitäts-Management.
+    @Override
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+}
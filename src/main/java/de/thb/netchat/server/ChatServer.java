@@ -1,14 +1,25 @@
 package de.thb.netchat.server;
 
-import com.google.gson.Gson;
+import de.thb.netchat.cluster.Cluster;
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.model.InboxBatch;
 import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.repository.DBInitializer;
+import de.thb.netchat.server.nio.NioChatServer;
 import de.thb.netchat.service.ChatService;
+import de.thb.netchat.service.Inbox;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Hauptklasse des Servers.
@@ -23,41 +34,113 @@ public class ChatServer {
     // Er wird hier einmal erstellt und alle ClientHandler-Threads weitergereicht.
     private final ChatService chatService = new ChatService();
 
-    // Alle aktiven Handler werden gespeichert.
-    // Diese Liste gibt es für die gesamte Anwendung nur ein einziges Mal, unabhängig von den erstellten Objekten.
-    // Alle Threads greifen auf diesen Shared State zu.
-    private static final List<ClientHandler> connectedClients = new ArrayList<>();
+    // Gemeinsame Command Registry für alle Sitzungen.
+    private final CommandDispatcher dispatcher = new CommandDispatcher(chatService);
+
+    // Alle eingeloggten Sitzungen, indiziert nach Benutzernamen.
+    // Diese Map gibt es für die gesamte Anwendung nur ein einziges Mal, unabhängig von den erstellten Objekten.
+    // ConcurrentHashMap: Lesende Zugriffe (Routing, Online-Prüfung) laufen ohne Lock,
+    // Schreibzugriffe sperren nur den betroffenen Bucket statt der ganzen Klasse.
+    private static final ConcurrentMap<String, ClientSession> sessionsByUser = new ConcurrentHashMap<>();
+
+    // Offene Verbindungen (eingeloggt oder nicht).
+    private static final AtomicInteger openConnections = new AtomicInteger();
+
+    static {
+        // Gauges werden erst beim Auslesen berechnet; die Queue-Tiefen umfassen die eingeloggten Sitzungen.
+        Metrics.gauge("connections.open", openConnections::get);
+        Metrics.gauge("sessions.online", sessionsByUser::size);
+        Metrics.gauge("outbound.queued", () -> {
+            long queued = 0;
+            for (ClientSession session : sessionsByUser.values()) {
+                queued += session.getOutboundSize();
+            }
+            return queued;
+        });
+        Metrics.gauge("outbound.maxDepth", () -> {
+            long max = 0;
+            for (ClientSession session : sessionsByUser.values()) {
+                max = Math.max(max, session.getOutboundSize());
+            }
+            return max;
+        });
+    }
+
+    public ChatServer() {
+        // Verpasste Nachrichten gehen nach dem Login an die lokale Sitzung des Empfängers (siehe Inbox).
+        chatService.setInboxDeliverer(new InboxDeliverer());
+    }
+
+    /**
+     * Meldet eine neue Verbindung (für Kennzahlen). Zu jedem Aufruf gehört genau ein connectionClosed().
+     */
+    public static void connectionOpened() {
+        openConnections.incrementAndGet();
+    }
+
+    public static void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
 
     /**
-     * Fügt einen neu eingeloggten Client zur globalen Liste hinzu.
-     * synchronized: Da mehrere Threads gleichzeitig versuchen könnten,
-     * sich einzuloggen, verhindert dieses Keyword, dass die Liste korrupt wird (Race Condition).
-     * Es darf immer nur ein Thread gleichzeitig in diese Methode.
+     * Reserviert den Benutzernamen atomar für eine Sitzung (Login).
+     * Prüfung und Eintragung erfolgen in einem Schritt (putIfAbsent). Dadurch können sich zwei
+     * gleichzeitige Logins desselben Accounts nicht mehr zwischen Prüfung und Registrierung überholen.
+     * Im Cluster-Modus wird zusätzlich abgelehnt, wer bereits an einem anderen Knoten eingeloggt ist,
+     * und die übrigen Knoten erfahren von der Anmeldung.
+     *
+     * @param username Der Benutzername.
+     * @param session Die Sitzung, die den Namen beansprucht.
+     * @return true, wenn die Sitzung den Namen erhalten hat; false, wenn der User bereits online ist.
      */
-    public static synchronized void registerClient(ClientHandler handler) {
-        connectedClients.add(handler);
+    public static boolean claimSession(String username, ClientSession session) {
+        if (Cluster.isRemoteOnline(username) || sessionsByUser.putIfAbsent(username, session) != null) {
+            return false;
+        }
+        Cluster.userOnline(username);
+        return true;
     }
 
     /**
      * Entfernt einen Client bei Logout oder Verbindungsabbruch.
+     * Es wird nur entfernt, wenn der Name tatsächlich dieser Sitzung gehört.
+     * Nur dann erhalten die übrigen Clients ein OFFLINE-Delta; ein zweiter Aufruf
+     * (erst ExitCommand, dann Teardown) bleibt folgenlos.
      */
-    public static synchronized void removeClient(ClientHandler handler) {
-        connectedClients.remove(handler);
+    public static void removeClient(ClientSession handler) {
+        String username = handler.getUsername();
+        if (username != null && sessionsByUser.remove(username, handler)) {
+            Cluster.userOffline(username);
+            PresenceService.userOffline(username);
+        }
     }
 
     /**
      * Das Routing-System: Sendet eine Nachricht gezielt an einen bestimmten User.
+     * Direkter Zugriff über den Index - die Kosten sind unabhängig von der Anzahl verbundener Clients.
+     * Nur lokal: An einen anderen Cluster-Knoten wird erst nach dem Speichern weitergeleitet (Cluster.forward,
+     * siehe MessageCommand), damit der Zielknoten die Nachricht notfalls in den Posteingang legen kann.
+     *
      * @param receiverName Der Username des Empfängers.
      * @param message Das Nachrichten-Objekt.
+     * @return true, wenn die Nachricht einer Sitzung an diesem Server übergeben wurde, sonst false.
      */
-    public static synchronized void sendToUser(String receiverName, Message message) {
-        // Iteriert durch alle verbundenen Clients (Threads)
-        for (ClientHandler client : connectedClients) {
-            // Identifizierung des Ziel-Clients anhand des Benutzernamens.
-            if (receiverName.equals(client.getUsername())) {
-                client.sendMessageObject(message);
-            }
+    public static boolean sendToUser(String receiverName, Message message) {
+        ClientSession client = sessionsByUser.get(receiverName);
+        if (client != null) {
+            client.sendMessageObject(message);
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Die Sitzung eines eingeloggten Benutzers (O(1) über den Index).
+     *
+     * @return Die Sitzung oder null, wenn der Benutzer nicht online ist.
+     */
+    public static ClientSession getSession(String username) {
+        return sessionsByUser.get(username);
     }
 
     /**
@@ -67,9 +150,25 @@ public class ChatServer {
      * @param port Der TCP-Port, auf dem der Server lauscht.
      */
     public void startServer(int port) {
+        startServer(port, false);
+    }
+
+    /**
+     * Initialisiert den ServerSocket und startet die Verbindungsschleife.
+     *
+     * @param port Der TCP-Port, auf dem der Server lauscht.
+     * @param virtualThreads true: Jede Sitzung läuft auf einem virtuellen Thread (Java 21).
+     *                       Blockierende Aufrufe wie readLine() geben den Carrier-Thread frei,
+     *                       daher kosten auch zehntausende ruhende Verbindungen kaum Stack-Speicher.
+     */
+    public void startServer(int port, boolean virtualThreads) {
+        Thread.Builder threadBuilder = virtualThreads
+                ? Thread.ofVirtual().name("client-", 0)
+                : Thread.ofPlatform().name("client-", 0);
+
         // Try-with-resources: Schließt den ServerSocket automatisch bei Programmende/Absturz.
         try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("ChatServer läuft auf Port: " + port);
+            System.out.println("ChatServer läuft auf Port: " + port + (virtualThreads ? " (virtuelle Threads)" : ""));
 
             // Hauptschleife zur Entgegennahme von Verbindungen.
             while (true) {
@@ -81,7 +180,7 @@ public class ChatServer {
                 // Instanziierung eines neuen Worker-Threads.
                 // Der ClientSocket und die Referenz auf den Service werden injiziert.
                 // start() initiiert die nebenläufige Ausführung der run()-Methode im ClientHandler.
-                new Thread(new ClientHandler(clientSocket, chatService)).start();
+                threadBuilder.start(new ClientHandler(clientSocket, chatService, dispatcher));
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -89,50 +188,124 @@ public class ChatServer {
     }
 
     /**
-     * Aggregiert die Benutzernamen aller aktuell Clients.
+     * Startet den Server im nicht-blockierenden Modus (java.nio Selector).
+     * Statt eines Threads pro Client bedient eine kleine Anzahl Reactor-Threads alle Verbindungen.
+     *
+     * @param port Der TCP-Port, auf dem der Server lauscht.
+     * @param reactorThreads Anzahl der Reactor-Threads (typischerweise ein Thread pro CPU-Kern).
+     */
+    public void startNioServer(int port, int reactorThreads) {
+        try {
+            new NioChatServer(port, reactorThreads, chatService, dispatcher).start();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Aggregiert die Benutzernamen aller aktuell eingeloggten Clients, im Cluster-Modus auch die der anderen Knoten.
      * Dient der Synchronisation der Online-Listen in den Clients.
      *
      * @return Liste der Benutzernamen (String).
      */
-    public static synchronized List<String> getOnlineUsernames() {
-        List<String> names = new ArrayList<>();
-        for (ClientHandler clientHandler : connectedClients) {
-            if (clientHandler.getUsername() != null) {
-                names.add(clientHandler.getUsername());
+    public static List<String> getOnlineUsernames() {
+        List<String> names = new ArrayList<>(sessionsByUser.keySet());
+        for (String remote : Cluster.getRemoteUsernames()) {
+            if (!sessionsByUser.containsKey(remote)) {
+                names.add(remote);
             }
         }
         return names;
     }
 
     /**
-     * Liefert Liste der verbundenen Clients. Zugriff erfolgt synchronisiert.
-     * @return Liste der ClientHandler-Objekte.
+     * Nur die an diesem Server eingeloggten Benutzer (für den Stand, den der Cluster an andere Knoten meldet).
+     */
+    public static List<String> getLocalUsernames() {
+        return new ArrayList<>(sessionsByUser.keySet());
+    }
+
+    /**
+     * true, wenn der Benutzer an diesem Server eingeloggt ist.
+     */
+    public static boolean isLocalUser(String username) {
+        return sessionsByUser.containsKey(username);
+    }
+
+    /**
+     * Liefert alle eingeloggten Sitzungen.
+     * Die Ansicht ist schwach konsistent: Sie kann ohne Lock iteriert werden, während sich andere Clients an- oder abmelden.
+     * @return Sammlung der Sitzungen.
      */
-    public static synchronized List<ClientHandler> getConnectedClients() {
-        return connectedClients;
+    public static Collection<ClientSession> getConnectedClients() {
+        return sessionsByUser.values();
     }
 
     /**
      * Prüfung, ob ein Benutzername bereits eine aktive Sitzung besitzt.
-     * Verhindert redundante Logins desselben Accounts.
      *
      * @param username Der zu prüfende Benutzername.
-     * @return true, wenn der Nutzer online ist, sonst false.
+     * @return true, wenn der Nutzer online ist (an diesem oder einem anderen Cluster-Knoten), sonst false.
      */
     public static boolean isUserOnline(String username) {
-        for (ClientHandler clientHandler : connectedClients) {
-            if (clientHandler.getUsername() != null && clientHandler.getUsername().equals(username)) {
-                return true;
-            }
-        }
-        return false;
+        return sessionsByUser.containsKey(username) || Cluster.isRemoteOnline(username);
     }
 
-
+    /**
+     * Startet den Server. Optional kann der Betriebsmodus übergeben werden:
+     * "thread" (Standard, ein Thread pro Client), "virtual" (ein virtueller Thread pro Client)
+     * oder "nio" (Selector-basierte Event-Loop).
+     * Port über "netchat.port" (Standard 9999), Cluster-Modus über "netchat.cluster.*" (siehe Cluster), z.B.
+     * zwei Knoten auf einem Rechner:
+     * java -Dnetchat.port=9999 -Dnetchat.cluster.nodeId=a -Dnetchat.cluster.port=7001 -Dnetchat.cluster.bind=127.0.0.1
+     *      -Dnetchat.cluster.peers=b@localhost:7002 -Dnetchat.cluster.secret=... ...
+     * java -Dnetchat.port=9998 -Dnetchat.cluster.nodeId=b -Dnetchat.cluster.port=7002 -Dnetchat.cluster.bind=127.0.0.1
+     *      -Dnetchat.cluster.peers=a@localhost:7001 -Dnetchat.cluster.secret=... ...
+     */
     public static void main(String[] args) {
+        // Schema auf den aktuellen Stand bringen (nur fehlende Migrationen werden ausgeführt).
+        DBInitializer.initialize();
+
         ChatServer chatServer = new ChatServer();
-        chatServer.startServer(9999);
+        String mode = args.length > 0 ? args[0] : "thread";
+        int port = Integer.getInteger("netchat.port", 9999);
+
+        Cluster.startFromSystemProperties(chatServer.chatService);
+
+        if ("nio".equalsIgnoreCase(mode)) {
+            // Ein Reactor-Thread pro CPU-Kern.
+            chatServer.startNioServer(port, Runtime.getRuntime().availableProcessors());
+        } else if ("virtual".equalsIgnoreCase(mode)) {
+            chatServer.startServer(port, true);
+        } else {
+            chatServer.startServer(port);
+        }
     }
-}
 
+    /**
+     * Übergibt Stapel aus dem Posteingang als "inbox"-Nachricht an die Sitzung des Empfängers.
+     */
+    private static final class InboxDeliverer implements Inbox.Deliverer {
 
+        @Override
+        public boolean isOnline(String recipient) {
+            return sessionsByUser.containsKey(recipient);
+        }
+
+        @Override
+        public boolean deliver(String recipient, List<HistoryRecord> batch) {
+            ClientSession session = sessionsByUser.get(recipient);
+            if (session == null) {
+                return false;
+            }
+            session.sendMessageObject(new Message("inbox", "server", recipient,
+                    MessageCodec.GSON.toJson(new InboxBatch(batch))));
+            return true;
+        }
+
+        @Override
+        public void storedForAbsent(String recipient) {
+            Cluster.inboxStored(recipient);
+        }
+    }
+}
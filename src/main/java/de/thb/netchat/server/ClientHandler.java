@@ -1,63 +1,59 @@
 package de.thb.netchat.server;
 
-import com.google.gson.Gson;
 import de.thb.netchat.model.Message;
-import de.thb.netchat.server.command.*; // Importiert unsere neuen Commands
+import de.thb.netchat.protocol.MessageReader;
+import de.thb.netchat.protocol.WireProtocol;
 import de.thb.netchat.service.ChatService;
 
 import java.io.*;
 import java.net.Socket;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Repräsentiert die serverseitige Logik für genau eine Client-Verbindung.
  * Sie implementiert das Interface Runnable, um in einem separaten Thread ausgeführt zu werden.
  * Hauptaufgaben:
  * 1. Aufrechterhalten der TCP-Verbindung (Session).
- * 2. Deserialisierung eingehender JSON-Nachrichten.
+ * 2. Deserialisierung eingehender Nachrichten (JSON oder Binär, je nach Handshake).
  * 3. Weiterleitung der Nachrichten an das entsprechende Command-Objekt.
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler extends AbstractClientSession implements Runnable {
 
-    // Physische Verbindung zum Client.
-    private final Socket socket;
+    // Writer-Tasks, die die Outbound-Queues leeren. Virtuelle Threads: Ein Writer, der auf einem
+    // langsamen Socket blockiert, belegt keinen Plattform-Thread.
+    private static final ExecutorService writers = Executors.newVirtualThreadPerTaskExecutor();
 
-    // Referenz auf die Geschäftslogik (Singleton-artig instanziiert im ChatServer).
-    private final ChatService chatService;
+    // Maximale Anzahl an Frames, die mit einem einzigen flush() übertragen werden.
+    private static final int MAX_BATCH = 64;
 
-    // JSON-Parser Instanz.
-    private final Gson gson = new Gson();
+    // Physische Verbindung zum Client.
+    private final Socket socket;
 
-    // Output-Stream Wrapper zum Senden von Textdaten an den Client
-    private PrintWriter out;
+    // Gepufferter Output-Stream. Kein Auto-Flush: Der Writer sammelt alle wartenden Nachrichten
+    // und überträgt sie mit einem einzigen flush() (ein Systemaufruf statt einer pro Nachricht).
+    private OutputStream out;
 
-    // Identität der Sitzung (wird erst nach erfolgreichem Login gesetzt).
-    private String username;
+    // Liest eingehende Frames im aktuell vereinbarten Protokoll.
+    private MessageReader reader;
 
-    // Command Registry (Command Pattern).
-    // Diese Map verknüpft eine Protokoll-String (z.B. "login") mit der auszuführenden Logikklasse.
+    // Command Registry (Command Pattern), wird vom ChatServer für alle Sitzungen geteilt.
     // Dies ermöglicht eine Erweiterung um neue Befehle ohne Änderung der run()-Methode.
-    private final Map<String, Command> commands = new HashMap<>();
+    private final CommandDispatcher dispatcher;
 
     /**
-     * Initialisiert den Handler und registriert die verfügbaren Befehle.
+     * Initialisiert den Handler.
      *
      * @param socket Der verbundene Client-Socket (aus serverSocket.accept()).
      * @param chatService chatService Der Service für Datenbankzugriffe.
+     * @param dispatcher Die gemeinsame Command Registry.
      */
-    public ClientHandler(Socket socket, ChatService chatService) {
+    public ClientHandler(Socket socket, ChatService chatService, CommandDispatcher dispatcher) {
+        super(chatService);
         this.socket = socket;
-        this.chatService = chatService;
-
-        // Initialisierung der Befehls-Map (Command Registration).
-        // Jeder Nachrichtentyp (Key) wird einer konkreten Implementierung (Value) zugeordnet.
-        commands.put("register", new RegisterCommand());
-        commands.put("login", new LoginCommand());
-        commands.put("message", new MessageCommand());
-        commands.put("history_request", new HistoryRequestCommand());
-        commands.put("exit", new ExitCommand());
+        this.dispatcher = dispatcher;
     }
 
     /**
@@ -66,114 +62,103 @@ public class ClientHandler implements Runnable {
      */
     @Override
     public void run() {
+        ChatServer.connectionOpened();
         // Try-with-resources: Garantiert das Schließen der Streams und des Sockets,
         // selbst wenn eine Exception auftritt oder der Thread beendet wird.
         try (
                 // Input: Liest Daten vom Client.
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                // Output: Sendet Daten an den Client. "true" aktiviert Auto-Flush (Puffer leeren bei println).
-                PrintWriter writer = new PrintWriter(socket.getOutputStream(), true)
+                InputStream in = socket.getInputStream()
         ) {
-            this.out = writer;
+            this.reader = new MessageReader(in, protocol);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
 
             // Verbindungsbestätigung: Senden des "Handshake-Grußes".
             Message welcome = new Message("info", "server", null, "Willkommen bei NetChat!");
-            out.println(gson.toJson(welcome));
-
-            String input;
+            sendMessageObject(welcome);
 
             // Die Main-Loop (Event Loop) des Threads.
-            // in.readline() ist eine blockierende Operation. Der Thread pausiert hier,
-            // bis Daten vom Client eintreffen oder die Verbindung getrennt wird.
-            while ((input = in.readLine()) != null) {
-
-                // Deserialisierung: JSON-String -> Java-Objekt.
-                Message message = gson.fromJson(input, Message.class);
+            // reader.read() ist eine blockierende Operation. Der Thread pausiert hier,
+            // bis Daten vom Client eintreffen oder die Verbindung getrennt wird (EOFException).
+            while (true) {
 
-                // Protokoll-Validierung.
-                if (message == null || message.getType() == null) {
-                    sendError("Ungültiges JSON-Format");
-                    continue;
-                }
+                // Deserialisierung: Frame -> Java-Objekt (JSON oder Binär, je nach Handshake).
+                Message message = reader.read();
 
                 // --- STRATEGY PATTERN IMPLEMENTIERUNG ---
-                // 1. Lockup: Suchen der passenden Strategie für den Nachrichtentyp.
-                Command cmd = commands.get(message.getType());
-
-                if (cmd != null) {
-                    // 2. Ausführen der Logik im Command-Objekt.
-                    // Der Handler übergibt sich selbst ('this'), damit das Command antworten kann.
-                    cmd.execute(message, this, chatService);
-                } else {
-                    sendError("Unbekannter Befehl: " + message.getType());
-                }
+                // Validierung, Lookup und Ausführung übernimmt der Dispatcher.
+                // Der Handler übergibt sich selbst ('this'), damit das Command antworten kann.
+                dispatcher.dispatch(message, this);
             }
 
+        } catch (EOFException e) {
+            // Regulärer Verbindungsabbau durch den Client.
         } catch (Exception e) {
             // Logging bei unerwartetem Verbindungsabbruch (z.B. Timeout, Client-Crash).
             System.err.println("Verbindung zu " + (username != null ? username : "Unbekannt") + " unterbrochen.");
         } finally {
             // Aufräumen (Teardown-Phase). Wird immer ausgeführt, egal ob Absturz oder normaler Logout.
 
-            // 1. Entfernen aus der globalen Server-Liste.
+            // 1. Entfernen aus der globalen Server-Liste. Die übrigen Clients erhalten dabei ein OFFLINE-Delta.
             ChatServer.removeClient(this);
+            ChatServer.connectionClosed();
 
-            // 2. Sicherstellen, dass der Socket geschlossen ist.
+            // 2. Sicherstellen, dass der Socket geschlossen ist. Nicht gesendete Nachrichten verfallen.
             try {
                 socket.close();
             } catch (IOException ignored) {}
+            outbound.clear();
 
-            // 3. Status-Update Broadcast: Informiert alle verbleibenen Clients über den Abgang.
-            sendUpdatedUserlistToAll();
             System.out.println("Client aufgeräumt: " + (username != null ? username : "Unbekannt"));
         }
     }
 
-    // --- API für Commands (Callback-Methoden) ---
-
-    // Sendet einen rohen JSON-String an den Client.
-    // Thread-Safe durch die interne Synchronisation des PrintWriters (teils) bzw. Socket-Streams.
-    public void send(String jsonMessage) {
-        if (out != null) out.println(jsonMessage);
-    }
-
-    // Konvertiert ein Message-Objekt in JSON und sendet es.
-    public void sendMessageObject(Message msg) {
-        if (out != null) out.println(gson.toJson(msg));
-    }
-
-    // Sendet eine standardisierte Fehlernachricht
-    public void sendError(String text) {
-        Message error = new Message("error", "server", username, text);
-        send(gson.toJson(error));
+    // Wird im Lese-Thread während des Handshakes aufgerufen.
+    @Override
+    protected void onProtocolChanged(WireProtocol protocol) {
+        reader.setProtocol(protocol);
     }
 
-    // Setter für den LoginCommand: Identitäts-Management.
-    public void setUsername(String username) {
-        this.username = username;
+    @Override
+    protected void scheduleWrite() {
+        writers.execute(this::drainOutbound);
     }
 
-    public String getUsername() {
-        return username;
+    /**
+     * Der einzige Writer dieser Sitzung: Leert die Queue stapelweise in den gepufferten Stream
+     * und überträgt jeden Stapel mit einem flush().
+     */
+    private void drainOutbound() {
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            do {
+                while (outbound.drainTo(batch, MAX_BATCH) > 0) {
+                    for (byte[] frame : batch) {
+                        out.write(frame);
+                    }
+                    batch.clear();
+                    out.flush();
+                }
+            } while (outbound.finishDrain());
+        } catch (IOException e) {
+            // Verbindung ist weg: Der Lese-Thread bemerkt dies ebenfalls und räumt auf.
+            outbound.clear();
+            closeSocket();
+        }
     }
 
     /**
-     * Triggered ein Update der Benutzeroberfläche aller verbundenen Clients.
-     * Aggregiert alle User aus der Datenbank und die aktuell eingeloggten User.
-     * Format: "UserA,UserB||UserA" (Alle||Online)
+     * Der Empfänger liest dauerhaft langsamer, als Nachrichten für ihn eintreffen.
+     * Die Verbindung wird getrennt, statt unbegrenzt Speicher zu belegen.
      */
-    public void sendUpdatedUserlistToAll() {
-        List<String> allUsers = chatService.listAllUsers();
-        List<String> onlineUsers = ChatServer.getOnlineUsernames();
-
-        String all = String.join(",", allUsers);
-        String online = String.join(",", onlineUsers);
-
-        Message userlistMessage = new Message("userlist", "server", null, all + "||" + online);
+    @Override
+    protected void onOutboundOverflow() {
+        System.err.println("Outbound-Budget erschöpft, trenne langsamen Client: " + (username != null ? username : "Unbekannt"));
+        closeSocket();
+    }
 
-        // Iteriert über alle aktiven Verbindungen und sendet das Update.
-        for (ClientHandler clientHandler : ChatServer.getConnectedClients()) {
-            clientHandler.send(gson.toJson(userlistMessage));
-        }
+    private void closeSocket() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {}
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package de.thb.netchat.server;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.EncodedFrame;
+import de.thb.netchat.protocol.WireProtocol;
+
+/**
+ * Abstraktion einer serverseitigen Client-Sitzung.
+ * Die Commands arbeiten ausschließlich gegen diese Schnittstelle und müssen daher nicht wissen,
+ * ob die Verbindung von einem eigenen Thread (ClientHandler) oder von einem NIO-Reactor
+ * (NioClientSession) bedient wird.
+ */
+public interface ClientSession {
+
+    // Kodiert ein Message-Objekt im vereinbarten Übertragungsformat und sendet es.
+    void sendMessageObject(Message msg);
+
+    // Sendet eine Nachricht, die an mehrere Empfänger geht. Der Frame im Format dieser Sitzung wird
+    // nur beim ersten Empfänger kodiert und danach geteilt (siehe EncodedFrame).
+    void send(EncodedFrame frame);
+
+    // Sendet eine standardisierte Fehlernachricht.
+    void sendError(String text);
+
+    // Identitäts-Management: Wird vom LoginCommand gesetzt.
+    void setUsername(String username);
+
+    String getUsername();
+
+    // Stellt die Verbindung auf ein anderes Übertragungsformat um (Handshake, siehe HelloCommand).
+    // Gilt für alle danach gesendeten und empfangenen Nachrichten.
+    void switchProtocol(WireProtocol protocol);
+
+    // Komprimiert ab jetzt große ausgehende Frames (Handshake mit "deflate", nur im Binärformat, siehe FrameCompression).
+    void enableCompression();
+
+    // Anzahl der Frames, die noch auf den Versand warten (für Kennzahlen).
+    int getOutboundSize();
+}
@@ -0,0 +1,96 @@
+package de.thb.netchat.server;
+
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.server.command.*;
+import de.thb.netchat.service.ChatService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Zentrale Command Registry (Command Pattern).
+ * Verknüpft einen Protokoll-String (z.B. "login") mit der auszuführenden Logikklasse.
+ * Die Commands sind zustandslos, daher kann eine einzige Instanz von allen Sitzungen
+ * (Thread-per-Client wie NIO) gemeinsam genutzt werden.
+ *
+ * Jede Ausführung wird gemessen (Anzahl, Fehler, Latenz-Histogramm pro Befehl, siehe Metrics).
+ * Gemessen wird der synchrone Teil von execute(); beim MessageCommand also Routing und Einreihen,
+ * nicht das Speichern (dafür gibt es den Timer "store.append").
+ */
+public class CommandDispatcher {
+
+    private final Map<String, Command> commands = new HashMap<>();
+
+    // Kennzahlen pro Befehl, einmalig angelegt: Beim Dispatch genügt ein Lookup in derselben Art von Map.
+    private final Map<String, Metrics.CommandStats> stats = new HashMap<>();
+
+    // Ungültige und unbekannte Befehle landen gesammelt hier, damit Clients keine beliebigen Einträge erzeugen können.
+    private final Metrics.CommandStats invalid = Metrics.command("(ungültig)");
+
+    private final ChatService chatService;
+
+    public CommandDispatcher(ChatService chatService) {
+        this.chatService = chatService;
+
+        // Initialisierung der Befehls-Map (Command Registration).
+        // Jeder Nachrichtentyp (Key) wird einer konkreten Implementierung (Value) zugeordnet.
+        commands.put("register", new RegisterCommand());
+        commands.put("login", new LoginCommand());
+        commands.put("message", new MessageCommand());
+        commands.put("history_request", new HistoryRequestCommand());
+        commands.put("exit", new ExitCommand());
+        commands.put("hello", new HelloCommand());
+        commands.put("presence_sync", new PresenceSyncCommand());
+        commands.put("room_join", new RoomJoinCommand());
+        commands.put("room_leave", new RoomLeaveCommand());
+        commands.put("room_message", new RoomMessageCommand());
+        commands.put("search", new SearchCommand());
+
+        for (String type : commands.keySet()) {
+            stats.put(type, Metrics.command(type));
+        }
+    }
+
+    /**
+     * true, wenn der Befehl dieser Nachricht auf die Datenbank wartet (siehe Command.touchesStorage).
+     */
+    public boolean touchesStorage(Message message) {
+        Command cmd = message != null && message.getType() != null ? commands.get(message.getType()) : null;
+        return cmd != null && cmd.touchesStorage();
+    }
+
+    /**
+     * Validiert eine eingehende Nachricht und führt das passende Command aus.
+     *
+     * @param message Die deserialisierte Nachricht (darf null sein).
+     * @param session Die Sitzung, von der die Nachricht stammt.
+     */
+    public void dispatch(Message message, ClientSession session) {
+        long start = System.nanoTime();
+
+        // Protokoll-Validierung.
+        if (message == null || message.getType() == null) {
+            session.sendError("Ungültiges JSON-Format");
+            invalid.record(start, true);
+            return;
+        }
+
+        // 1. Lookup: Suchen der passenden Strategie für den Nachrichtentyp.
+        Command cmd = commands.get(message.getType());
+
+        if (cmd != null) {
+            // 2. Ausführen der Logik im Command-Objekt.
+            boolean failed = true;
+            try {
+                cmd.execute(message, session, chatService);
+                failed = false;
+            } finally {
+                stats.get(message.getType()).record(start, failed);
+            }
+        } else {
+            session.sendError("Unbekannter Befehl: " + message.getType());
+            invalid.record(start, true);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package de.thb.netchat.server;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Begrenzte Warteschlange für ausgehende Nachrichten einer Sitzung.
+ * Beliebig viele Threads (z.B. Absender beim Routing) reihen fertig kodierte Frames ein,
+ * aber immer nur genau ein Writer leert die Queue. Der Absender blockiert dadurch nie
+ * auf dem Socket eines langsamen Empfängers.
+ *
+ * Das Budget ist doppelt begrenzt: nach Anzahl der Frames und nach Bytes. Die Byte-Grenze greift bei
+ * großen Nachrichten (z.B. Verlaufsseiten), die Anzahl bei vielen kleinen (z.B. Präsenz-Deltas).
+ * Was bei vollem Budget passiert, entscheidet die SlowConsumerPolicy (siehe AbstractClientSession).
+ */
+public class OutboundQueue {
+
+    // Maximale Anzahl wartender Nachrichten pro Sitzung, konfigurierbar über "netchat.outbound.capacity".
+    public static final int DEFAULT_CAPACITY = Integer.getInteger("netchat.outbound.capacity", 1024);
+
+    // Maximale Größe aller wartenden Frames pro Sitzung, konfigurierbar über "netchat.outbound.maxBytes".
+    public static final long DEFAULT_MAX_BYTES = Long.getLong("netchat.outbound.maxBytes", 4L * 1024 * 1024);
+
+    private final int capacity;
+    private final long maxBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+    private long bytes;
+
+    // true, solange ein Writer für diese Queue eingeplant ist oder läuft.
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    public OutboundQueue(int capacity) {
+        this(capacity, DEFAULT_MAX_BYTES);
+    }
+
+    public OutboundQueue(int capacity, long maxBytes) {
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reiht einen Frame ein, ohne zu blockieren.
+     *
+     * @return false, wenn das Budget erschöpft ist (der Empfänger kommt nicht hinterher).
+     */
+    public boolean offer(byte[] frame) {
+        lock.lock();
+        try {
+            return enqueue(frame);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reiht einen Frame ein und wartet dabei höchstens timeoutNanos auf freien Platz.
+     *
+     * @return false, wenn das Budget auch nach der Wartezeit erschöpft ist oder der Thread unterbrochen wurde.
+     */
+    public boolean offer(byte[] frame, long timeoutNanos) {
+        long remaining = timeoutNanos;
+        lock.lock();
+        try {
+            while (!enqueue(frame)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Nur mit gehaltener Sperre. Ein einzelner übergroßer Frame passt immer in eine leere Queue.
+    private boolean enqueue(byte[] frame) {
+        if (!frames.isEmpty() && (frames.size() >= capacity || bytes + frame.length > maxBytes)) {
+            return false;
+        }
+        frames.addLast(frame);
+        bytes += frame.length;
+        return true;
+    }
+
+    /**
+     * Entnimmt bis zu max Frames in einem Zug. Alles, was bis hierhin eingereiht wurde,
+     * kann so mit einem einzigen flush() bzw. write() übertragen werden (Coalescing).
+     *
+     * @return Anzahl der entnommenen Frames.
+     */
+    public int drainTo(List<byte[]> batch, int max) {
+        lock.lock();
+        try {
+            int n = 0;
+            byte[] frame;
+            while (n < max && (frame = frames.pollFirst()) != null) {
+                batch.add(frame);
+                bytes -= frame.length;
+                n++;
+            }
+            if (n > 0) {
+                notFull.signalAll();
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * true, wenn mehr als die Hälfte des Budgets (Anzahl oder Bytes) belegt ist.
+     * Ab hier gelten Präsenz-Deltas als verzichtbar (SlowConsumerPolicy.DROP_PRESENCE).
+     */
+    public boolean isAboveSoftLimit() {
+        lock.lock();
+        try {
+            return frames.size() > capacity / 2 || bytes > maxBytes / 2;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Versucht, den Writer einzuplanen.
+     *
+     * @return true, wenn der Aufrufer den Writer starten muss; false, wenn bereits einer aktiv ist.
+     */
+    public boolean trySchedule() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Wird vom Writer aufgerufen, nachdem die Queue geleert wurde.
+     *
+     * @return true, wenn inzwischen neue Frames eingetroffen sind und der Writer weiterlaufen muss.
+     */
+    public boolean finishDrain() {
+        scheduled.set(false);
+        // Zwischen dem letzten drainTo() und dem Zurücksetzen kann ein anderer Thread etwas eingereiht haben.
+        return size() > 0 && trySchedule();
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return frames.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Belegte Bytes aller wartenden Frames.
+     */
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Verwirft alle wartenden Frames. Wartende Absender werden geweckt.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            frames.clear();
+            bytes = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
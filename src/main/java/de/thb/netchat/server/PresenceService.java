@@ -0,0 +1,110 @@
+package de.thb.netchat.server;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.model.PresenceDelta;
+import de.thb.netchat.model.PresenceSnapshot;
+import de.thb.netchat.protocol.EncodedFrame;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.service.ChatService;
+
+/**
+ * Verwaltet den Präsenzstatus (wer ist registriert, wer ist online) und verteilt Änderungen.
+ *
+ * Statt bei jeder An- oder Abmeldung die komplette Benutzerliste aus der Datenbank zu laden und an
+ * alle Clients zu senden, erhält jeder Client nach dem Login einmal einen Snapshot und danach nur noch
+ * einzelne, versionierte Änderungen (Deltas). Eine Präsenzänderung kostet damit ein kleines Frame pro
+ * Verbindung statt einer Liste aller Benutzer pro Verbindung. Das Delta wird dabei nur einmal kodiert (EncodedFrame).
+ *
+ * Reihenfolge: Versionsvergabe und Einreihen in die Outbound-Queues geschehen unter einer gemeinsamen Sperre.
+ * Da jede Queue FIFO ist, erhält jeder Client die Deltas lückenlos in Versionsreihenfolge; ein Snapshot
+ * liegt immer genau zwischen zwei Versionen. Das Einreihen blockiert nicht, die Sperre wird nur kurz gehalten.
+ */
+public final class PresenceService {
+
+    private static final Object lock = new Object();
+
+    // Aktuelle Version des Präsenzstands. Wird bei jeder Änderung um 1 erhöht.
+    private static long version;
+
+    private PresenceService() {}
+
+    /**
+     * Ein Benutzer hat sich angemeldet (nach erfolgreichem Login).
+     * Alle anderen Sitzungen erhalten ein ONLINE-Delta, die neue Sitzung einen Snapshot.
+     *
+     * @param session Die neu angemeldete Sitzung (bereits im Sitzungsindex eingetragen).
+     * @param service Liefert die registrierten Benutzer (aus dem Benutzerverzeichnis im Speicher).
+     */
+    public static void userOnline(ClientSession session, ChatService service) {
+        synchronized (lock) {
+            publish(session.getUsername(), PresenceDelta.Status.ONLINE, session);
+            session.sendMessageObject(snapshotMessage(service));
+        }
+    }
+
+    /**
+     * Ein Benutzer hat sich abgemeldet oder die Verbindung verloren.
+     * Wird vom ChatServer aufgerufen, sobald die Sitzung tatsächlich aus dem Index entfernt wurde.
+     */
+    static void userOffline(String username) {
+        synchronized (lock) {
+            publish(username, PresenceDelta.Status.OFFLINE, null);
+        }
+    }
+
+    /**
+     * Ein Benutzer hat sich an einem anderen Cluster-Knoten angemeldet (siehe Cluster).
+     */
+    public static void remoteUserOnline(String username) {
+        synchronized (lock) {
+            publish(username, PresenceDelta.Status.ONLINE, null);
+        }
+    }
+
+    /**
+     * Ein Benutzer hat sich an einem anderen Cluster-Knoten abgemeldet, oder der Knoten ist nicht mehr erreichbar.
+     */
+    public static void remoteUserOffline(String username) {
+        synchronized (lock) {
+            publish(username, PresenceDelta.Status.OFFLINE, null);
+        }
+    }
+
+    /**
+     * Ein neuer Benutzer wurde registriert (nachdem er im Benutzerverzeichnis angelegt wurde).
+     */
+    public static void userRegistered(String username) {
+        synchronized (lock) {
+            publish(username, PresenceDelta.Status.REGISTERED, null);
+        }
+    }
+
+    /**
+     * Sendet einer Sitzung den vollständigen aktuellen Stand (z.B. nach einer erkannten Versionslücke).
+     */
+    public static void sendSnapshot(ClientSession session, ChatService service) {
+        synchronized (lock) {
+            session.sendMessageObject(snapshotMessage(service));
+        }
+    }
+
+    // Vergibt die nächste Version und reiht das Delta bei allen eingeloggten Sitzungen (außer 'except') ein.
+    private static void publish(String username, PresenceDelta.Status status, ClientSession except) {
+        version++;
+        PresenceDelta delta = new PresenceDelta(version, username, status);
+        // Einmal kodieren, von allen Empfängern geteilt (bei N Clients N Einreihungen, aber nur ein Frame pro Format).
+        EncodedFrame frame = new EncodedFrame(
+                new Message("presence", "server", null, MessageCodec.GSON.toJson(delta)));
+        for (ClientSession client : ChatServer.getConnectedClients()) {
+            if (client != except) {
+                client.send(frame);
+            }
+        }
+    }
+
+    private static Message snapshotMessage(ChatService service) {
+        PresenceSnapshot snapshot = new PresenceSnapshot(
+                version, service.listAllUsers(), ChatServer.getOnlineUsernames());
+        return new Message("presence_snapshot", "server", null, MessageCodec.GSON.toJson(snapshot));
+    }
+}
@@ -0,0 +1,119 @@
+package de.thb.netchat.server;
+
+import de.thb.netchat.cluster.Cluster;
+import de.thb.netchat.metrics.LatencyHistogram;
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.EncodedFrame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fan-out-Engine für Raumnachrichten.
+ *
+ * Eine Nachricht an einen Raum mit N Mitgliedern kostet:
+ * - höchstens eine Kodierung pro Übertragungsformat (EncodedFrame), nicht eine pro Mitglied,
+ * - pro Mitglied nur den Lookup im Sitzungsindex und das Einreihen desselben byte[] in seine Outbound-Queue.
+ *
+ * Große Räume werden in Abschnitte zu "netchat.rooms.fanoutChunk" Mitgliedern geteilt, die parallel in einem
+ * eigenen ForkJoinPool eingereiht werden. Der Aufrufer wartet, bis alle Abschnitte fertig sind: Nachrichten
+ * eines Absenders kommen so bei jedem Mitglied in Sendereihenfolge an.
+ * Mitglieder an anderen Cluster-Knoten erhalten die Nachricht über einen weitergeleiteten Frame pro Knoten.
+ * Offline-Mitglieder werden übersprungen, gespeichert wird die Nachricht einmal (siehe RoomMessageCommand).
+ */
+public final class RoomFanout {
+
+    private static final int CHUNK = Integer.getInteger("netchat.rooms.fanoutChunk", 256);
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private static final LatencyHistogram fanoutLatency = Metrics.timer("room.fanout");
+    private static final LongAdder deliveries = Metrics.counter("room.deliveries");
+
+    private RoomFanout() {}
+
+    /**
+     * Stellt eine Nachricht allen verbundenen Mitgliedern außer exclude zu.
+     *
+     * @param members Mitglieder des Raums (wird nur gelesen).
+     * @param exclude Benutzer, der nichts erhält (typischerweise der Absender), darf null sein.
+     * @param message Die zuzustellende Nachricht.
+     */
+    public static void deliver(String[] members, String exclude, Message message) {
+        long start = System.nanoTime();
+
+        EncodedFrame frame = new EncodedFrame(message);
+
+        if (members.length <= CHUNK) {
+            deliver(members, 0, members.length, exclude, frame);
+        } else {
+            pool.invoke(new Chunk(members, 0, members.length, exclude, frame));
+        }
+        fanoutLatency.recordSince(start);
+    }
+
+    private static void deliver(String[] members, int from, int to, String exclude, EncodedFrame frame) {
+        int delivered = 0;
+        // Mitglieder an anderen Cluster-Knoten, gesammelt pro Knoten: ein weitergeleiteter Frame je Knoten und Abschnitt.
+        Map<String, List<String>> remote = null;
+        for (int i = from; i < to; i++) {
+            String member = members[i];
+            if (member.equals(exclude)) {
+                continue;
+            }
+            ClientSession session = ChatServer.getSession(member);
+            if (session != null) {
+                session.send(frame);
+                delivered++;
+            } else if (Cluster.isEnabled()) {
+                String owner = Cluster.ownerOf(member);
+                if (owner != null) {
+                    if (remote == null) {
+                        remote = new HashMap<>();
+                    }
+                    remote.computeIfAbsent(owner, o -> new ArrayList<>()).add(member);
+                }
+            }
+        }
+        if (remote != null) {
+            remote.forEach((owner, users) -> Cluster.deliver(owner, users, frame.message()));
+        }
+        deliveries.add(delivered);
+    }
+
+    /**
+     * Ein Abschnitt des Mitglieder-Arrays. Teilt sich, bis er höchstens CHUNK Mitglieder umfasst.
+     */
+    private static final class Chunk extends RecursiveAction {
+
+        private final String[] members;
+        private final int from;
+        private final int to;
+        private final String exclude;
+        private final EncodedFrame frame;
+
+        Chunk(String[] members, int from, int to, String exclude, EncodedFrame frame) {
+            this.members = members;
+            this.from = from;
+            this.to = to;
+            this.exclude = exclude;
+            this.frame = frame;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                deliver(members, from, to, exclude, frame);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Chunk(members, from, mid, exclude, frame), new Chunk(members, mid, to, exclude, frame));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package de.thb.netchat.server;
+
+import java.util.Locale;
+
+/**
+ * Verhalten, wenn ein Empfänger sein Outbound-Budget (Nachrichten bzw. Bytes, siehe OutboundQueue) ausschöpft.
+ * Konfigurierbar über "netchat.outbound.policy" (block, drop_presence, disconnect).
+ *
+ * In allen Fällen gilt: Ist das Budget endgültig erschöpft, wird die Verbindung getrennt.
+ * Der Speicher pro Sitzung bleibt damit immer begrenzt, und ein langsamer Empfänger bremst nie die übrigen Clients.
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Der Absender wartet kurz (höchstens "netchat.outbound.blockMillis"), bis wieder Platz ist.
+     * Fängt kurze Aussetzer ab (z.B. Funkloch). Im Reactor-Thread wird nie gewartet, dort verhält sich
+     * die Policy wie DISCONNECT, da ein wartender Reactor alle seine Verbindungen anhalten würde.
+     * Präsenz-Deltas und -Snapshots warten ebenfalls nicht (sie werden unter der Sperre des PresenceService verschickt).
+     */
+    BLOCK,
+
+    /**
+     * Ist die Queue mehr als halb voll, werden Präsenz-Deltas verworfen. Der Platz bleibt so den Chat-Nachrichten.
+     * Der Client bemerkt die Lücke an der Versionsnummer und holt sich per presence_sync einen neuen Stand.
+     */
+    DROP_PRESENCE,
+
+    /**
+     * Die Verbindung wird sofort getrennt.
+     */
+    DISCONNECT;
+
+    // Konfigurierte Policy für alle Sitzungen.
+    public static final SlowConsumerPolicy CONFIGURED =
+            parse(System.getProperty("netchat.outbound.policy", "drop_presence"));
+
+    // Maximale Wartezeit eines Absenders bei BLOCK.
+    public static final long BLOCK_NANOS = Long.getLong("netchat.outbound.blockMillis", 20) * 1_000_000;
+
+    private static SlowConsumerPolicy parse(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unbekannte Outbound-Policy '" + value + "', verwende DROP_PRESENCE.");
+            return DROP_PRESENCE;
+        }
+    }
+}
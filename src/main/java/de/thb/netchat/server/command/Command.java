@@ -1,7 +1,7 @@
 package de.thb.netchat.server.command;
 
 import de.thb.netchat.model.Message;
-import de.thb.netchat.server.ClientHandler;
+import de.thb.netchat.server.ClientSession;
 import de.thb.netchat.service.ChatService;
 
 /**
@@ -19,5 +19,13 @@ public interface Command {
      * @param service Die Verbindung zur Datenhaltung- womit wird gearbeitet?
      *                Ermöglicht den Zugriff auf die Datenbank (Speichern, Lesen, Validieren).
      */
-    void execute(Message msg, ClientHandler client, ChatService service);
+    void execute(Message msg, ClientSession client, ChatService service);
+
+    /**
+     * true, wenn der Befehl synchron auf die Datenbank wartet (Abfrage oder Schreiben).
+     * Im NIO-Modus laufen solche Befehle nicht im Reactor-Thread, sondern auf einem Worker (siehe NioClientSession).
+     */
+    default boolean touchesStorage() {
+        return false;
+    }
 }
\ No newline at end of file
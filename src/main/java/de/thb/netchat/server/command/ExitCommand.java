@@ -1,9 +1,8 @@
 package de.thb.netchat.server.command;
 
-import com.google.gson.Gson;
 import de.thb.netchat.model.Message;
 import de.thb.netchat.server.ChatServer;
-import de.thb.netchat.server.ClientHandler;
+import de.thb.netchat.server.ClientSession;
 import de.thb.netchat.service.ChatService;
 
 /**
@@ -13,8 +12,6 @@ import de.thb.netchat.service.ChatService;
  */
 public class ExitCommand implements Command {
 
-    private final Gson gson = new Gson();
-
     /**
      * Führt die Abmelde-Routine aus.
      *
@@ -23,22 +20,18 @@ public class ExitCommand implements Command {
      * @param service Wird nicht benötigt, aber wegen Interface-Signatur vorhanden.
      */
     @Override
-    public void execute(Message msg, ClientHandler client, ChatService service) {
+    public void execute(Message msg, ClientSession client, ChatService service) {
 
         // 1. Logische Entfernung
-        // Der Client wird sofort aus der Liste der aktiven Verbindungen (connectedClients) entfernt.
+        // Der Client wird sofort aus dem Sitzungsindex des ChatServers entfernt.
         // Das verhindert, dass ab diesem Zeitpunkt neue Nachrichten an ihn geroutet werden.
+        // Alle verbleibenden Benutzer erhalten dabei ein OFFLINE-Delta.
         ChatServer.removeClient(client);
 
         // 2. Bestätigung (Handshake Finalization)
         // Der Server sendet ein letztes Paket. Diese bestätigt dem Client, dass der Server den Logout-Wunsch verstanden/verarbeitet hat.
         Message exit = new Message("info", "server", msg.getFrom(), "Verbindung wird beendet.");
-        client.send(gson.toJson(exit));
-
-        // 3. Broadcast Update
-        // Alle verbleibenden Benutzer müssen informiert werden, dass dieser User nun offline ist.
-        // Da "removeClient" oben bereits ausgeführt wurde, fehlt der User nun in der generierten Liste - der Status ist also korrekt offline.
-        client.sendUpdatedUserlistToAll();
+        client.sendMessageObject(exit);
 
         // Wichtiger Architektur-Hinweis:
         // Hier wird nicht socket.close() aufgerufen.
@@ -0,0 +1,47 @@
+package de.thb.netchat.server.command;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.FrameCompression;
+import de.thb.netchat.protocol.WireProtocol;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.service.ChatService;
+
+/**
+ * Protokoll-Handshake: Der Client bietet nach dem Willkommensgruß seine Fähigkeiten an
+ * (z.B. "binary,deflate"), der Server wählt das Übertragungsformat und bestätigt es mit "hello_ack".
+ * Kompression ("deflate") gibt es nur zusammen mit dem Binärformat; bestätigt der Server sie, sind
+ * große Frames vom Server an den Client ab sofort komprimiert (FrameCompression).
+ * Clients, die kein "hello" senden, bleiben beim zeilenbasierten JSON-Protokoll.
+ */
+public class HelloCommand implements Command {
+
+    /**
+     * Vereinbart das Übertragungsformat für diese Verbindung.
+     *
+     * @param msg Die Hello-Nachricht (Text: kommagetrennte Fähigkeiten).
+     * @param client Die Sitzung, deren Protokoll umgestellt wird.
+     * @param service Wird nicht benötigt, aber wegen Interface-Signatur vorhanden.
+     */
+    @Override
+    public void execute(Message msg, ClientSession client, ChatService service) {
+        // Der Wechsel ist nur vor dem Login erlaubt. Danach könnten bereits Nachrichten anderer
+        // Threads im alten Format in der Outbound-Queue liegen.
+        if (client.getUsername() != null) {
+            client.sendError("Protokollwechsel nur vor dem Login möglich.");
+            return;
+        }
+
+        WireProtocol protocol = WireProtocol.negotiate(msg.getText());
+        boolean compress = protocol == WireProtocol.BINARY && FrameCompression.ENABLED
+                && FrameCompression.isOffered(msg.getText());
+
+        // Die Bestätigung geht noch im alten Format (JSON) raus, alles Weitere im neuen.
+        String accepted = compress ? protocol.getCapability() + "," + FrameCompression.CAPABILITY : protocol.getCapability();
+        Message ack = new Message("hello_ack", "server", msg.getFrom(), accepted);
+        client.sendMessageObject(ack);
+        client.switchProtocol(protocol);
+        if (compress) {
+            client.enableCompression();
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package de.thb.netchat.server.command;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import de.thb.netchat.model.HistoryPage;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.model.HistoryRequest;
 import de.thb.netchat.model.Message;
-import de.thb.netchat.server.ClientHandler;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.server.ClientSession;
 import de.thb.netchat.service.ChatService;
 import java.util.List;
 
@@ -10,47 +14,89 @@ import java.util.List;
  * Implementiert die Logik zum Abruf historischer Chatverläufe.
  * Diese Klasse fungiert als Schnittstelle zwischen der Client-Anfrage
  * und dem MessageRepo im Service Layer.
+ *
+ * Der Verlauf wird seitenweise übertragen (Cursor-Paginierung): Der Client fragt nach
+ * "den neuesten N Nachrichten vor der ID X" und erhält strukturierte Datensätze zurück.
+ * Das Öffnen eines Chats kostet dadurch immer gleich viel, egal wie lang der Verlauf ist.
  */
 public class HistoryRequestCommand implements Command {
 
-    private final Gson gson = new Gson();
+    // Seitengröße, wenn der Client keine angibt.
+    static final int DEFAULT_LIMIT = 50;
+
+    // Obergrenze pro Seite. Begrenzt Frame-Größe und Speicherbedarf auf beiden Seiten.
+    static final int MAX_LIMIT = 200;
 
     /**
      * Führt die Datenbankabfrage aus und sendet das Ergebnis zurück.
      *
-     * @param msg Die Anfrage-Nachricht (enthält im "to"-Feld den gewünschten Chatpartner).
+     * @param msg Die Anfrage-Nachricht (enthält im "to"-Feld den gewünschten Chatpartner oder Raum und im
+     *            "text"-Feld optional einen HistoryRequest als JSON).
      * @param client Der anfragende ClientHandler.
      * @param service Der Service für den Datenbankzugriff.
      */
     @Override
-    public void execute(Message msg, ClientHandler client, ChatService service) {
+    public void execute(Message msg, ClientSession client, ChatService service) {
         // Identifikation der Gesprächspartner
-        String userA = msg.getFrom(); // Der Anfragende
+        // Der Anfragende ist immer der angemeldete Benutzer der Sitzung, nicht das "from"-Feld.
+        String userA = client.getUsername();
+        if (userA == null) {
+            client.sendError("Nicht angemeldet.");
+            return;
+        }
         String userB = msg.getTo(); // Der Partner
+        if (userB == null) {
+            client.sendError("Ungültige Verlaufsanfrage.");
+            return;
+        }
+        // Raumverläufe nur für Mitglieder.
+        if (userB.startsWith(RegisterCommand.RESERVED) && !service.isRoomMember(userB, userA)) {
+            client.sendError("Kein Mitglied im Raum " + userB + ".");
+            return;
+        }
 
-        // 1. Datenabfrage (Query)
-        // Der Service holt die Rohdaten (Liste von Strings) aus dem Repository.
-        // Die Liste ist chronologisch sortiert.
-        List<String> msgs = service.getConversation(userA, userB);
+        // 1. Cursor auslesen
+        // Ohne Angaben wird die neueste Seite geladen.
+        HistoryRequest request;
+        try {
+            request = msg.getText() == null || msg.getText().isBlank()
+                    ? null
+                    : MessageCodec.GSON.fromJson(msg.getText(), HistoryRequest.class);
+        } catch (JsonParseException e) {
+            client.sendError("Ungültige Verlaufsanfrage.");
+            return;
+        }
+        Long beforeId = request != null ? request.beforeId() : null;
+        int limit = request != null && request.limit() > 0 ? Math.min(request.limit(), MAX_LIMIT) : DEFAULT_LIMIT;
 
-        // 2. Daten-Aggregation
-        // Das Message-Objekt erlaub im "text"-Feld nur einen einzelnen String.
-        // Um eine Liste von Nachrichten zu übertragen, werden diese konkateniert.
-        // Das Trennzeichen "||" dient als Delimiter, damit der Client den String wieder in Einzelnachrichten zerlegen kann.
-        String aggregatedHistory = String.join("||", msgs);
+        // 2. Datenabfrage (Query)
+        // Es wird eine Nachricht mehr angefragt als ausgeliefert. Ist sie vorhanden, gibt es noch ältere Nachrichten.
+        // Die Liste ist chronologisch sortiert, die älteste (überzählige) steht also vorne.
+        List<HistoryRecord> records = service.getConversationPage(userA, userB, beforeId, limit + 1);
+        boolean hasMore = records.size() > limit;
+        if (hasMore) {
+            records = records.subList(1, records.size());
+        }
 
         // 3. Response-Objekt
-        // Erstellung einer Antwortnachricht vom Typ "history_response".
+        // Erstellung einer Antwortnachricht vom Typ "history_page" mit der Seite als JSON im "text"-Feld.
         // Der Server fungiert als Absender.
+        HistoryPage page = new HistoryPage(userB, beforeId, records, hasMore);
         Message response = new Message(
-                "history_response",
+                "history_page",
                 "server",
                 userA,
-                aggregatedHistory
+                MessageCodec.GSON.toJson(page)
         );
 
         // 4. Unicast
         // Antwort wird ausschließlich an den Client gesandt, der die Anfrage gestellt hat (Request-Response-Prinzip).
-        client.send(gson.toJson(response));
+        client.sendMessageObject(response);
+    }
+
+    // Liest bei einem Cache-Fehlschlag (im Cluster-Modus immer) aus dem Nachrichtenspeicher.
+    @Override
+    public boolean touchesStorage() {
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -1,9 +1,9 @@
 package de.thb.netchat.server.command;
 
-import com.google.gson.Gson;
 import de.thb.netchat.model.Message;
 import de.thb.netchat.server.ChatServer;
-import de.thb.netchat.server.ClientHandler;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.server.PresenceService;
 import de.thb.netchat.service.ChatService;
 import de.thb.netchat.util.SecurityUtil;
 
@@ -13,20 +13,28 @@ import de.thb.netchat.util.SecurityUtil;
  */
 public class LoginCommand implements Command {
 
-    private final Gson gson = new Gson();
-
     /**
      * Führt die Anmeldung aus.
-     * Ablauf: DB-Check -> Hash-Vergleich -> Status-Update -> Broadcast.
+     * Ablauf: DB-Check -> Hash-Vergleich -> Sitzung reservieren -> Broadcast.
      *
      * @param msg Nachricht mit Username und Passwort.
      * @param client Der Handler der aktuellen Verbindung.
      * @param service Zugriff auf die Benutzerdatenbank.
      */
     @Override
-    public void execute(Message msg, ClientHandler client, ChatService service) {
+    public void execute(Message msg, ClientSession client, ChatService service) {
         String username = msg.getFrom();
         String inputPassword = msg.getText(); // Das Passwort, das der User eingetippt hat
+        if (username == null || inputPassword == null) {
+            client.sendError("Benutzername und Passwort erforderlich.");
+            return;
+        }
+        // Namen mit reservierten Zeichen (z.B. aus der Zeit vor der Prüfung bei der Registrierung) werden
+        // nicht angemeldet, da sie mit Raumnamen kollidieren.
+        if (!RegisterCommand.isValidUsername(username)) {
+            client.sendError("Ungültiger Benutzername.");
+            return;
+        }
 
         // 1. Datenabruf: Gespeicherten Hash aus der Datenbank laden.
         String storedHash = service.getPasswordForUser(username);
@@ -48,8 +56,16 @@ public class LoginCommand implements Command {
             return;
         }
 
-        // 4. Zugriff auf ChatServer, um zu prüfen, ob dieser Nutzer bereits eine aktive Sitzung hat.
-        if (ChatServer.isUserOnline(username)) {
+        // 4. Eine Verbindung kann nur eine Identität tragen.
+        if (client.getUsername() != null) {
+            client.sendError("Diese Verbindung ist bereits angemeldet.");
+            return;
+        }
+
+        // 5. Registrierung: Der Benutzername wird atomar für diese Sitzung reserviert.
+        // Ist der Nutzer bereits online, schlägt die Reservierung fehl (kein separater isUserOnline-Check nötig).
+        // Ermöglicht nun den Empfang der Nachrichten.
+        if (!ChatServer.claimSession(username, client)) {
             client.sendError("Dieser Benutzer ist bereits angemeldet.");
             return;
         }
@@ -59,16 +75,15 @@ public class LoginCommand implements Command {
         // Dem Thread (ClientHandler) wird eine Identität zugewiesen.
         client.setUsername(username);
 
-        // Registrierung: Der Handler wird in die globale Liste der aktiven Clients aufgenommen.
-        // Ermöglicht nun den Empfang der Nachrichten.
-        ChatServer.registerClient(client);
-
         // Bestätigung: Senden des Erfolg-Status an den anfragenden Client.
         Message ok = new Message("info", "server", username, "Login erfolgreich!");
-        client.send(gson.toJson(ok));
+        client.sendMessageObject(ok);
+
+        // Präsenz: Alle anderen verbundenen Clients erhalten ein ONLINE-Delta,
+        // der neue Client einen vollständigen Snapshot der Benutzerliste.
+        PresenceService.userOnline(client, service);
 
-        // Broadcast: Aktualisierung der Online-Listen.
-        // Alle anderen verbundenen Clients werden informiert, dass ein neuer User da ist.
-        client.sendUpdatedUserlistToAll();
+        // Verpasste Nachrichten: Der Posteingang wird im Hintergrund in Stapeln zugestellt.
+        service.flushInbox(username);
     }
 }
\ No newline at end of file
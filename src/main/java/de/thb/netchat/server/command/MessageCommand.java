@@ -1,44 +1,90 @@
 package de.thb.netchat.server.command;
 
-import com.google.gson.Gson;
+import de.thb.netchat.cluster.Cluster;
+import de.thb.netchat.model.HistoryRecord;
 import de.thb.netchat.model.Message;
 import de.thb.netchat.server.ChatServer;
-import de.thb.netchat.server.ClientHandler;
+import de.thb.netchat.server.ClientSession;
 import de.thb.netchat.service.ChatService;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 /**
  * Implementiert die Logik für den Nachrichtenaustausch zwischen Benutzern.
  * Nachrichten werden persistent gespeichert und auch in Echtzeit an den Empfänger geschickt.
+ * Die Speicherung erfolgt asynchron; die Bestätigung an den Absender folgt nach dem Commit.
  */
 public class MessageCommand implements Command {
 
-    private final Gson gson = new Gson();
+    // Bestätigungen nach dem Commit. Die Futures werden vom einzigen Writer-Thread (Group Commit) erfüllt;
+    // blockiert dort ein Versand (SlowConsumerPolicy.BLOCK), stünde die Persistenz für alle still.
+    // Daher wird in einem eigenen virtuellen Thread gesendet. Auch vom RoomMessageCommand genutzt.
+    static final Executor ACK_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
 
     /**
      * Verarbeitet eine eingehende Chat-Nachricht.
      *
-     * @param msg Das Nachrichtenobjekt (enthält Sender, Empfänger, Text).
+     * @param msg Das Nachrichtenobjekt (enthält Empfänger und Text; Absender ist der angemeldete Benutzer).
      * @param client Der ClientHandler des Absenders.
      * @param service Der ChatService zur Speicherung.
      */
     @Override
-    public void execute(Message msg, ClientHandler client, ChatService service) {
+    public void execute(Message msg, ClientSession client, ChatService service) {
+        // Absender ist immer der angemeldete Benutzer der Sitzung, nicht das "from"-Feld (wie beim RoomMessageCommand).
+        String username = client.getUsername();
+        if (username == null) {
+            client.sendError("Nicht angemeldet.");
+            return;
+        }
+        // Raumnamen ("#...") sind keine Empfänger: Sonst landete die Nachricht unter dem Schlüssel
+        // (Absender, Raum) im Raumverlauf und in der Suche der Mitglieder, ohne Mitgliedschaft.
+        String receiver = msg.getTo();
+        if (!RegisterCommand.isValidUsername(receiver)) {
+            client.sendError("Ungültiger Empfänger (Raumnachrichten über \"room_message\").");
+            return;
+        }
+        if (msg.getText() == null) {
+            client.sendError("Leere Nachricht.");
+            return;
+        }
+        Message outgoing = new Message(msg.getType(), username, receiver, msg.getText());
+        // Das "from"-Feld der Anfrage kommt im "to"-Feld der Bestätigung zurück (bei normalen Clients der eigene
+        // Name). Die Bestätigungen kommen nicht unbedingt in Sendereihenfolge an, so kann der Client sie zuordnen.
+        String reference = msg.getFrom() != null ? msg.getFrom() : username;
 
-        // 1. Speicherung der Daten
-        // Die Nachricht wird über den Service in das MessageRepo geschrieben.
+        // 1. Speicherung der Daten (Write-Behind)
+        // Die Nachricht wird über den Service zur Speicherung eingereiht und stapelweise
+        // mit anderen Nachrichten in einer Transaktion geschrieben (Group Commit).
         // Stellt sicher, dass der Chatverlauf auch nach einem Server-Neustart
         // oder für die HistoryRequest-Funktion verfügbar bleibt.
-        service.sendMessage(msg.getFrom(), msg.getTo(), msg.getText());
+        CompletableFuture<HistoryRecord> stored = service.sendMessage(username, receiver, outgoing.getText());
 
         // 2. Echtzeit-Routing
         // Die Nachricht wird an den ChatServer übergeben, um den aktiven Socket des Empfängers zu finden.
-        // Der Server prüft die Liste connectedClients und leitet das Objekt direkt weiter.
-        // Falls der Empfänger offline ist, passiert hier nichts, die Nachricht befindet sich aber sicher in Schritt 1.
-        ChatServer.sendToUser(msg.getTo(), msg);
+        // Der Server schlägt den Empfänger im Sitzungsindex nach und leitet das Objekt direkt weiter,
+        // ohne auf den Commit zu warten. Ist er an einem anderen Cluster-Knoten eingeloggt, wird erst nach dem
+        // Commit weitergeleitet (mit der gespeicherten Nachricht, siehe Cluster.forward).
+        boolean delivered = ChatServer.sendToUser(receiver, outgoing);
 
         // 3. Bestätigung
-        // Der Absender erhält eine technische Bestätigung vom Server. Nachricht wurde also erfolgreich verarbeitet.
-        Message confirm = new Message("info", "server", msg.getFrom(), "Nachricht gesendet");
-        client.send(gson.toJson(confirm));
+        // Der Absender erhält die Bestätigung erst, wenn der Stapel mit seiner Nachricht committed ist.
+        // Die Nachricht ist also dauerhaft gespeichert, wenn "Nachricht gesendet" ankommt.
+        // War der Empfänger offline, landet die gespeicherte Nachricht (mit ihrer ID) zusätzlich in seinem
+        // Posteingang und wird ihm beim nächsten Login zugestellt. Weiterleiten und Einreihen blockieren nicht und
+        // geschehen noch im Writer-Thread, damit die Reihenfolge im Posteingang der Commit-Reihenfolge entspricht.
+        stored.whenComplete((record, error) -> {
+            if (error == null && !delivered && !Cluster.forward(receiver, outgoing, record)) {
+                service.addToInbox(record);
+            }
+        }).whenCompleteAsync((record, error) -> {
+            if (error != null) {
+                client.sendMessageObject(
+                        new Message("error", "server", reference, "Nachricht konnte nicht gespeichert werden."));
+            } else {
+                client.sendMessageObject(new Message("info", "server", reference, "Nachricht gesendet"));
+            }
+        }, ACK_EXECUTOR);
     }
 }
\ No newline at end of file
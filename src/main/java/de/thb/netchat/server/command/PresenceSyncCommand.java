@@ -0,0 +1,23 @@
+package de.thb.netchat.server.command;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.server.PresenceService;
+import de.thb.netchat.service.ChatService;
+
+/**
+ * Fordert einen vollständigen Präsenz-Snapshot an.
+ * Der Client sendet diesen Befehl, wenn er in den Präsenz-Deltas eine Versionslücke erkennt.
+ */
+public class PresenceSyncCommand implements Command {
+
+    @Override
+    public void execute(Message msg, ClientSession client, ChatService service) {
+        // Präsenzdaten erhalten nur angemeldete Benutzer.
+        if (client.getUsername() == null) {
+            client.sendError("Nicht angemeldet.");
+            return;
+        }
+        PresenceService.sendSnapshot(client, service);
+    }
+}
@@ -1,8 +1,9 @@
 package de.thb.netchat.server.command;
 
-import com.google.gson.Gson;
+import de.thb.netchat.cluster.Cluster;
 import de.thb.netchat.model.Message;
-import de.thb.netchat.server.ClientHandler;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.server.PresenceService;
 import de.thb.netchat.service.ChatService;
 import de.thb.netchat.util.SecurityUtil;
 
@@ -13,8 +14,26 @@ import de.thb.netchat.util.SecurityUtil;
  * delegiert die Persistierung
  */
 public class RegisterCommand implements Command {
-    // Instanz zur Serialisierung der Antwort-Objekte in JSON.
-    private final Gson gson = new Gson();
+
+    // Reservierte Zeichen: Raumnachrichten werden mit dem Empfänger "#raum" gespeichert (ChatService.sendRoomMessage).
+    // Ein Benutzer "#raum" könnte sonst Verlauf, Posteingang und Suchtreffer des Raums einsehen.
+    static final String RESERVED = "#";
+
+    /**
+     * Prüft, ob ein Benutzername verwendet werden darf (nicht leer, keine reservierten Zeichen, keine Steuerzeichen).
+     */
+    static boolean isValidUsername(String username) {
+        if (username == null || username.isBlank()) {
+            return false;
+        }
+        for (int i = 0; i < username.length(); i++) {
+            char c = username.charAt(i);
+            if (RESERVED.indexOf(c) >= 0 || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
     /**
      * Führt die Registrierungslogik aus.
@@ -24,8 +43,16 @@ public class RegisterCommand implements Command {
      * @param service Der ChatService für den Zugriff auf die Geschäftslogik und Datenbank.
      */
     @Override
-    public void execute(Message msg, ClientHandler client, ChatService service) {
+    public void execute(Message msg, ClientSession client, ChatService service) {
         String username = msg.getFrom();
+        if (username == null || msg.getText() == null) {
+            client.sendError("Fehlerhafte Daten übertragen.");
+            return;
+        }
+        if (!isValidUsername(username)) {
+            client.sendError("Ungültiger Benutzername (\"" + RESERVED + "\" und Steuerzeichen sind nicht erlaubt).");
+            return;
+        }
 
         // Payload aufteilen
         // Trennzeichen: "||" muss im Regex escaped werden.
@@ -55,10 +82,24 @@ public class RegisterCommand implements Command {
         String hashedPassword = SecurityUtil.hashPassword(plainPassword);
 
         // Der neue Benutzer wird über den Service in der Repository/DB angelegt.
-        service.createUser(username, email, hashedPassword);
+        // Scheitert das (z.B. gleichzeitige Registrierung desselben Namens), erhält der Client einen Fehler.
+        if (!service.createUser(username, email, hashedPassword)) {
+            client.sendError("Registrierung fehlgeschlagen.");
+            return;
+        }
 
         // Bestätigung: Erfolgsmeldung vom Typ "info" wird generiert, serialisiert und an den Client zurückgesendet.
         Message ok = new Message("info", "server", username, "Registrierung erfolgreich!");
-        client.send(gson.toJson(ok));
+        client.sendMessageObject(ok);
+
+        // Präsenz: Eingeloggte Clients nehmen den neuen Benutzer in ihre Liste auf.
+        PresenceService.userRegistered(username);
+        Cluster.userRegistered(username);
+    }
+
+    // Legt das Konto in der Datenbank an.
+    @Override
+    public boolean touchesStorage() {
+        return true;
     }
-}
\ No newline at end of file
+}
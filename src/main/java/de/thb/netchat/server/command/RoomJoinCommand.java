@@ -0,0 +1,46 @@
+package de.thb.netchat.server.command;
+
+import de.thb.netchat.cluster.Cluster;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.service.ChatService;
+
+import java.util.regex.Pattern;
+
+/**
+ * Tritt einem Gruppenraum bei (Raumname im "to"-Feld). Existiert der Raum noch nicht, wird er angelegt.
+ * Die Mitgliedschaft ist dauerhaft: Sie bleibt über Abmeldung und Server-Neustart hinweg bestehen,
+ * bis der Benutzer den Raum mit room_leave verlässt.
+ */
+public class RoomJoinCommand implements Command {
+
+    // Erlaubte Raumnamen: Buchstaben, Ziffern, "_" und "-", höchstens 32 Zeichen.
+    static final Pattern ROOM_NAME = Pattern.compile("[\\p{L}\\p{N}_-]{1,32}");
+
+    @Override
+    public void execute(Message msg, ClientSession client, ChatService service) {
+        String username = client.getUsername();
+        if (username == null) {
+            client.sendError("Nicht angemeldet.");
+            return;
+        }
+        String room = msg.getTo();
+        if (room == null || !ROOM_NAME.matcher(room).matches()) {
+            client.sendError("Ungültiger Raumname.");
+            return;
+        }
+
+        if (service.joinRoom(room, username)) {
+            Cluster.roomJoined(room, username);
+            client.sendMessageObject(new Message("info", "server", username, "Raum beigetreten: " + room));
+        } else {
+            client.sendError("Beitritt zu Raum " + room + " fehlgeschlagen.");
+        }
+    }
+
+    // Speichert die Mitgliedschaft.
+    @Override
+    public boolean touchesStorage() {
+        return true;
+    }
+}
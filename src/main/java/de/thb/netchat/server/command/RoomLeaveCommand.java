@@ -0,0 +1,35 @@
+package de.thb.netchat.server.command;
+
+import de.thb.netchat.cluster.Cluster;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.service.ChatService;
+
+/**
+ * Verlässt einen Gruppenraum (Raumname im "to"-Feld). Der Raum selbst bleibt bestehen.
+ */
+public class RoomLeaveCommand implements Command {
+
+    @Override
+    public void execute(Message msg, ClientSession client, ChatService service) {
+        String username = client.getUsername();
+        if (username == null) {
+            client.sendError("Nicht angemeldet.");
+            return;
+        }
+        String room = msg.getTo();
+
+        if (room != null && service.leaveRoom(room, username)) {
+            Cluster.roomLeft(room, username);
+            client.sendMessageObject(new Message("info", "server", username, "Raum verlassen: " + room));
+        } else {
+            client.sendError("Kein Mitglied im Raum " + room + ".");
+        }
+    }
+
+    // Löscht die Mitgliedschaft.
+    @Override
+    public boolean touchesStorage() {
+        return true;
+    }
+}
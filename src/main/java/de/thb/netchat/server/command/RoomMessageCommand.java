@@ -0,0 +1,58 @@
+package de.thb.netchat.server.command;
+
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.server.RoomFanout;
+import de.thb.netchat.service.ChatService;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sendet eine Nachricht an alle Mitglieder eines Gruppenraums (Raumname im "to"-Feld).
+ *
+ * Ablauf wie beim MessageCommand, aber für beliebig viele Empfänger:
+ * Die Nachricht wird genau einmal gespeichert (nicht pro Mitglied) und über den RoomFanout zugestellt,
+ * der sie einmal pro Übertragungsformat kodiert. Die Mitglieder erhalten eine Nachricht vom Typ "room_message"
+ * mit dem Absender in "from" und dem Raum in "to". Der Absender selbst erhält nach dem Commit eine Bestätigung.
+ */
+public class RoomMessageCommand implements Command {
+
+    @Override
+    public void execute(Message msg, ClientSession client, ChatService service) {
+        // Absender ist immer der angemeldete Benutzer der Sitzung, nicht das "from"-Feld.
+        String username = client.getUsername();
+        if (username == null) {
+            client.sendError("Nicht angemeldet.");
+            return;
+        }
+        String room = msg.getTo();
+        if (room == null || !service.isRoomMember(room, username)) {
+            client.sendError("Kein Mitglied im Raum " + room + ".");
+            return;
+        }
+        if (msg.getText() == null) {
+            client.sendError("Leere Nachricht.");
+            return;
+        }
+
+        // 1. Einmal speichern (Write-Behind, Group Commit).
+        CompletableFuture<HistoryRecord> stored = service.sendRoomMessage(username, room, msg.getText());
+
+        // 2. Fan-out an alle verbundenen Mitglieder, ohne auf den Commit zu warten.
+        Message delivery = new Message("room_message", username, room, msg.getText());
+        RoomFanout.deliver(service.getRoomMembers(room), username, delivery);
+
+        // 3. Bestätigung nach dem Commit, nicht im Writer-Thread (siehe MessageCommand.ACK_EXECUTOR).
+        // Wie beim MessageCommand mit dem "from"-Feld der Anfrage im "to"-Feld, zur Zuordnung beim Client.
+        String reference = msg.getFrom() != null ? msg.getFrom() : username;
+        stored.whenCompleteAsync((record, error) -> {
+            if (error != null) {
+                client.sendMessageObject(
+                        new Message("error", "server", reference, "Nachricht konnte nicht gespeichert werden."));
+            } else {
+                client.sendMessageObject(new Message("info", "server", reference, "Nachricht gesendet"));
+            }
+        }, MessageCommand.ACK_EXECUTOR);
+    }
+}
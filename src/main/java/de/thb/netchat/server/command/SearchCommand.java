@@ -0,0 +1,79 @@
+package de.thb.netchat.server.command;
+
+import com.google.gson.JsonParseException;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.model.Message;
+import de.thb.netchat.model.SearchRequest;
+import de.thb.netchat.model.SearchResult;
+import de.thb.netchat.protocol.MessageCodec;
+import de.thb.netchat.repository.StorageException;
+import de.thb.netchat.server.ClientSession;
+import de.thb.netchat.service.ChatService;
+
+import java.util.List;
+
+/**
+ * Volltextsuche in den eigenen Gesprächen (Direktnachrichten und Räume des angemeldeten Benutzers).
+ *
+ * Die Anfrage steht als SearchRequest im "text"-Feld, die Antwort ist eine Nachricht vom Typ "search_result"
+ * mit einem SearchResult. Treffer sind nach Relevanz sortiert und werden seitenweise über den Offset geladen.
+ */
+public class SearchCommand implements Command {
+
+    // Seitengröße, wenn der Client keine angibt.
+    static final int DEFAULT_LIMIT = 20;
+
+    // Obergrenze pro Seite, wie beim Verlauf.
+    static final int MAX_LIMIT = 100;
+
+    // Obergrenze für den Offset: Jede weitere Seite muss alle vorherigen Treffer erneut ranken
+    // (bei Shards sogar pro Shard). Tiefer blättert niemand sinnvoll, man verfeinert die Suche.
+    static final int MAX_OFFSET = 1000;
+
+    @Override
+    public void execute(Message msg, ClientSession client, ChatService service) {
+        // Durchsucht werden immer die Gespräche des angemeldeten Benutzers, nicht die des "from"-Felds.
+        String username = client.getUsername();
+        if (username == null) {
+            client.sendError("Nicht angemeldet.");
+            return;
+        }
+
+        SearchRequest request;
+        try {
+            request = MessageCodec.GSON.fromJson(msg.getText(), SearchRequest.class);
+        } catch (JsonParseException e) {
+            request = null;
+        }
+        if (request == null || request.query() == null || request.query().isBlank()) {
+            client.sendError("Ungültige Suchanfrage.");
+            return;
+        }
+        int offset = Math.min(Math.max(request.offset(), 0), MAX_OFFSET);
+        int limit = request.limit() > 0 ? Math.min(request.limit(), MAX_LIMIT) : DEFAULT_LIMIT;
+
+        // Ein Treffer mehr als angefordert zeigt an, ob es eine weitere Seite gibt.
+        List<HistoryRecord> hits;
+        try {
+            hits = service.search(username, request.query(), offset, limit + 1);
+        } catch (StorageException e) {
+            System.err.println("Error bei der Volltextsuche:");
+            e.printStackTrace();
+            client.sendError("Suche nicht möglich.");
+            return;
+        }
+        boolean hasMore = hits.size() > limit;
+        if (hasMore) {
+            hits = hits.subList(0, limit);
+        }
+
+        SearchResult result = new SearchResult(request.query(), offset, hits, hasMore);
+        client.sendMessageObject(new Message("search_result", "server", username, MessageCodec.GSON.toJson(result)));
+    }
+
+    // Volltextsuche im FTS5-Index.
+    @Override
+    public boolean touchesStorage() {
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package de.thb.netchat.server.nio;
+
+import de.thb.netchat.server.CommandDispatcher;
+import de.thb.netchat.service.ChatService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Nicht-blockierende Variante des ChatServers auf Basis von java.nio.
+ * Aufgaben:
+ * 1. Der aufrufende Thread nimmt als Acceptor neue Verbindungen entgegen.
+ * 2. Jede Verbindung wird reihum (Round Robin) einem der Reactor-Threads zugeordnet.
+ * 3. Die Reactors dekodieren die JSON-Zeilen und führen die bestehenden Commands aus.
+ * 4. Befehle, die auf die Datenbank warten, laufen auf einem festen Pool von Worker-Threads
+ *    ("netchat.nio.workers", Standard: ein Thread pro CPU-Kern, mindestens 2).
+ * Damit bleibt die Anzahl der Threads unabhängig von der Anzahl der Clients.
+ */
+public class NioChatServer {
+
+    private final int port;
+    private final Reactor[] reactors;
+
+    // Plattform-Threads: Der SQLite-Treiber ruft nativen Code auf und würde einen virtuellen Thread pinnen.
+    private final ExecutorService workers = Executors.newFixedThreadPool(
+            Math.max(1, Integer.getInteger("netchat.nio.workers", Math.max(2, Runtime.getRuntime().availableProcessors()))),
+            Thread.ofPlatform().daemon().name("nio-worker-", 0).factory());
+
+    public NioChatServer(int port, int reactorThreads, ChatService chatService, CommandDispatcher dispatcher) throws IOException {
+        this.port = port;
+        this.reactors = new Reactor[Math.max(1, reactorThreads)];
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor(chatService, dispatcher, workers);
+        }
+    }
+
+    /**
+     * Startet die Reactor-Threads und läuft danach als Acceptor-Schleife (blockierend).
+     */
+    public void start() throws IOException {
+        for (int i = 0; i < reactors.length; i++) {
+            Thread thread = new Thread(reactors[i], "nio-reactor-" + i);
+            thread.start();
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            System.out.println("ChatServer (NIO, " + reactors.length + " Reactor-Threads) läuft auf Port: " + port);
+
+            int next = 0;
+            while (true) {
+                // Der Acceptor blockiert nur hier; die eigentliche Kommunikation läuft in den Reactors.
+                SocketChannel channel = serverChannel.accept();
+                System.out.println("Neuer Client erfolgreich verbunden: " + channel.getRemoteAddress());
+
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+            }
+        } finally {
+            for (Reactor reactor : reactors) {
+                reactor.shutdown();
+            }
+            workers.shutdown();
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package de.thb.netchat.server.nio;
+
+import de.thb.netchat.model.Message;
+import de.thb.netchat.protocol.FrameDecoder;
+import de.thb.netchat.protocol.WireProtocol;
+import de.thb.netchat.server.AbstractClientSession;
+import de.thb.netchat.server.ChatServer;
+import de.thb.netchat.server.CommandDispatcher;
+import de.thb.netchat.service.ChatService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sitzung einer Client-Verbindung im NIO-Modus.
+ * Im Gegensatz zum ClientHandler besitzt diese Sitzung keinen eigenen Thread:
+ * Lesen, Dekodieren und Ausführen der Commands passiert im Reactor-Thread, sobald der Selector
+ * die Verbindung als lesbar meldet. Ausgehende Nachrichten werden in eine Queue gelegt und vom
+ * Reactor geschrieben, sobald der Socket schreibbar ist.
+ *
+ * Ausnahme: Befehle, die auf die Datenbank warten (Command.touchesStorage, z.B. register, history_request,
+ * search), laufen auf einem Worker-Thread. Sonst stünden während einer langsamen Abfrage oder des Wartens auf
+ * eine Pool-Verbindung alle Verbindungen dieses Reactors. Die Antworten gehen wie immer über die Outbound-Queue.
+ * Die Reihenfolge pro Sitzung bleibt erhalten: Solange ein Befehl auf dem Worker wartet oder läuft, werden auch
+ * die folgenden Befehle der Sitzung dahinter eingereiht (z.B. login nach register). Nur hello und presence_sync
+ * laufen immer sofort im Reactor: hello stellt den Decoder für die folgenden Bytes um, presence_sync liest nur
+ * den Präsenz-Stand. Wachsen die wartenden Befehle auf MAX_BACKLOG, wird bis zum Abarbeiten nicht mehr gelesen.
+ */
+public class NioClientSession extends AbstractClientSession {
+
+    // Maximale Anzahl an Frames, die mit einem einzigen Gathering Write übertragen werden.
+    private static final int MAX_BATCH = 64;
+
+    // Ab so vielen wartenden Befehlen pausiert das Lesen (Backpressure auf den Client über TCP).
+    private static final int MAX_BACKLOG = 64;
+
+    private final SocketChannel channel;
+    private final Reactor reactor;
+    private final CommandDispatcher dispatcher;
+    private final Executor workers;
+
+    // Lesepuffer, wird für jedes read() wiederverwendet.
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(8192);
+    private FrameDecoder decoder = protocol.newDecoder();
+
+    // Aktuell im Versand befindlicher Stapel (falls der Socket-Puffer nicht alles aufnehmen konnte).
+    private final List<byte[]> batch = new ArrayList<>(MAX_BATCH);
+    private ByteBuffer[] writing;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    // Befehle, die auf den Worker warten (in Empfangsreihenfolge). Zugriff nur unter synchronized (backlog).
+    private final Queue<Message> backlog = new ArrayDeque<>();
+    private boolean workerScheduled;
+
+    // Lesen pausiert, weil der Backlog voll ist / OP_WRITE angefordert. Nur im Reactor-Thread verwendet.
+    private boolean readPaused;
+    private boolean writeInterest;
+
+    private SelectionKey key;
+
+    public NioClientSession(SocketChannel channel, Reactor reactor, ChatService chatService,
+                            CommandDispatcher dispatcher, Executor workers) {
+        super(chatService);
+        this.channel = channel;
+        this.reactor = reactor;
+        this.dispatcher = dispatcher;
+        this.workers = workers;
+    }
+
+    /**
+     * Wird vom Reactor nach der Registrierung am Selector aufgerufen.
+     * Sendet den "Handshake-Gruß" wie im Thread-per-Client Modus.
+     */
+    void onRegistered(SelectionKey key) {
+        this.key = key;
+        ChatServer.connectionOpened();
+        sendMessageObject(new Message("info", "server", null, "Willkommen bei NetChat!"));
+    }
+
+    /**
+     * Liest alle verfügbaren Daten und führt für jeden vollständigen Frame das passende Command aus.
+     * Läuft ausschließlich im Reactor-Thread.
+     */
+    void onReadable() {
+        try {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                // Gegenseite hat die Verbindung geschlossen (FIN).
+                close();
+                return;
+            }
+            readBuffer.flip();
+            // Frame für Frame: Stellt ein Handshake das Protokoll um, liest der neue Decoder den Rest des Puffers.
+            while (decoder.next(readBuffer)) {
+                Message message = protocol.decode(decoder.frameBuffer(), decoder.frameLength());
+                handle(message);
+            }
+            readBuffer.clear();
+            if (isBacklogFull()) {
+                readPaused = true;
+                updateInterest();
+            }
+        } catch (IOException e) {
+            System.err.println("Verbindung zu " + (username != null ? username : "Unbekannt") + " unterbrochen.");
+            close();
+        } catch (RuntimeException e) {
+            // Fehler in einem Command: Nur diese Sitzung wird getrennt, der Reactor bedient die übrigen weiter
+            // (wie beim ClientHandler, dessen Thread nur die eigene Verbindung betrifft).
+            System.err.println("Fehler bei der Verarbeitung für " + (username != null ? username : "Unbekannt") + ":");
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    // Führt einen Befehl im Reactor aus oder reiht ihn für den Worker ein (Reihenfolge siehe Klassenkommentar).
+    private void handle(Message message) {
+        String type = message != null ? message.getType() : null;
+        boolean inline = "hello".equals(type) || "presence_sync".equals(type);
+        synchronized (backlog) {
+            if (!inline && (workerScheduled || dispatcher.touchesStorage(message))) {
+                backlog.add(message);
+                if (!workerScheduled) {
+                    workerScheduled = true;
+                    startWorker();
+                }
+                return;
+            }
+        }
+        dispatcher.dispatch(message, this);
+    }
+
+    // Nur unter synchronized (backlog) aufrufen.
+    private void startWorker() {
+        try {
+            workers.execute(this::drainBacklog);
+        } catch (RejectedExecutionException e) {
+            // Server fährt herunter.
+            workerScheduled = false;
+            backlog.clear();
+            reactor.requestClose(this);
+        }
+    }
+
+    // Läuft im Worker-Thread: Arbeitet die wartenden Befehle der Sitzung der Reihe nach ab.
+    private void drainBacklog() {
+        while (true) {
+            Message message;
+            synchronized (backlog) {
+                message = backlog.poll();
+                if (message == null || closed.get()) {
+                    backlog.clear();
+                    workerScheduled = false;
+                    break;
+                }
+            }
+            try {
+                dispatcher.dispatch(message, this);
+            } catch (RuntimeException e) {
+                System.err.println("Fehler bei der Verarbeitung für " + (username != null ? username : "Unbekannt") + ":");
+                e.printStackTrace();
+                synchronized (backlog) {
+                    backlog.clear();
+                    workerScheduled = false;
+                }
+                reactor.requestClose(this);
+                return;
+            }
+        }
+        reactor.requestResume(this);
+    }
+
+    private boolean isBacklogFull() {
+        synchronized (backlog) {
+            return backlog.size() >= MAX_BACKLOG;
+        }
+    }
+
+    // Wird vom Reactor-Thread aufgerufen, wenn der Worker den Backlog abgearbeitet hat.
+    void resumeReading() {
+        if (readPaused && !isBacklogFull()) {
+            readPaused = false;
+            updateInterest();
+        }
+    }
+
+    /**
+     * Schreibt alle wartenden Frames mit möglichst wenigen write()-Aufrufen (Gathering Write).
+     * Läuft ausschließlich im Reactor-Thread.
+     */
+    void onWritable() {
+        try {
+            do {
+                while (true) {
+                    if (writing == null) {
+                        // Nächsten Stapel aus der Queue holen.
+                        if (outbound.drainTo(batch, MAX_BATCH) == 0) {
+                            break;
+                        }
+                        writing = new ByteBuffer[batch.size()];
+                        for (int i = 0; i < writing.length; i++) {
+                            writing[i] = ByteBuffer.wrap(batch.get(i));
+                        }
+                        batch.clear();
+                    }
+
+                    channel.write(writing);
+                    if (writing[writing.length - 1].hasRemaining()) {
+                        // Socket-Puffer voll: Auf das nächste OP_WRITE warten.
+                        return;
+                    }
+                    writing = null;
+                }
+
+                // Alles geschrieben: Kein Interesse mehr an OP_WRITE.
+                writeInterest = false;
+                updateInterest();
+            } while (outbound.finishDrain());
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    // Wird im Reactor-Thread während des Handshakes aufgerufen.
+    @Override
+    protected void onProtocolChanged(WireProtocol protocol) {
+        decoder = protocol.newDecoder();
+    }
+
+    // Meldet beim Reactor Schreibinteresse an (wird nur aufgerufen, wenn noch kein Writer eingeplant ist).
+    @Override
+    protected void scheduleWrite() {
+        reactor.requestWrite(this);
+    }
+
+    // Langsamer Empfänger: Die Verbindung wird getrennt, statt unbegrenzt Speicher zu belegen.
+    @Override
+    protected void onOutboundOverflow() {
+        System.err.println("Outbound-Budget erschöpft, trenne langsamen Client: " + (username != null ? username : "Unbekannt"));
+        reactor.requestClose(this);
+    }
+
+    // Wird vom Reactor-Thread aufgerufen, um OP_WRITE zu aktivieren.
+    void enableWriteInterest() {
+        writeInterest = true;
+        updateInterest();
+    }
+
+    // Setzt die Interessen aus readPaused und writeInterest (nur im Reactor-Thread).
+    private void updateInterest() {
+        if (key != null && key.isValid()) {
+            key.interestOps((readPaused ? 0 : SelectionKey.OP_READ) | (writeInterest ? SelectionKey.OP_WRITE : 0));
+        }
+    }
+
+    /**
+     * Beendet die Sitzung und räumt auf (analog zum finally-Block im ClientHandler).
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        // 1. Entfernen aus der globalen Server-Liste.
+        ChatServer.removeClient(this);
+
+        // 2. Selector-Registrierung aufheben und Kanal schließen.
+        if (key != null) {
+            key.cancel();
+            ChatServer.connectionClosed();
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+
+        outbound.clear();
+
+        System.out.println("Client aufgeräumt: " + (username != null ? username : "Unbekannt"));
+    }
+}
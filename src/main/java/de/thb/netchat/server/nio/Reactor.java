@@ -0,0 +1,178 @@
+package de.thb.netchat.server.nio;
+
+import de.thb.netchat.server.CommandDispatcher;
+import de.thb.netchat.service.ChatService;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Event-Loop eines Reactor-Threads (Reactor Pattern).
+ * Jeder Reactor besitzt einen eigenen Selector und bedient beliebig viele Verbindungen.
+ * Statt pro Client in readLine() zu blockieren, wartet der Thread in select() auf
+ * Bereitschafts-Ereignisse (lesbar/schreibbar) aller ihm zugeordneten Kanäle.
+ */
+public class Reactor implements Runnable {
+
+    private final Selector selector;
+    private final ChatService chatService;
+    private final CommandDispatcher dispatcher;
+
+    // Führt Befehle aus, die auf die Datenbank warten (siehe NioClientSession).
+    private final Executor workers;
+
+    // Neue Verbindungen vom Acceptor-Thread. Registrierungen am Selector erfolgen im Reactor-Thread selbst.
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+
+    // Sitzungen, für die ein anderer Thread Daten eingereiht hat und die OP_WRITE benötigen.
+    private final Queue<NioClientSession> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    // Sitzungen, deren Worker fertig ist und die wieder lesen dürfen.
+    private final Queue<NioClientSession> pendingResumes = new ConcurrentLinkedQueue<>();
+
+    // Sitzungen, die von einem fremden Thread geschlossen werden sollen (z.B. volle Outbound-Queue).
+    private final Queue<NioClientSession> pendingCloses = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running = true;
+
+    // Gesetzt im Thread, der gerade einen Reactor ausführt.
+    private static final ThreadLocal<Boolean> reactorThread = ThreadLocal.withInitial(() -> false);
+
+    public Reactor(ChatService chatService, CommandDispatcher dispatcher, Executor workers) throws IOException {
+        this.selector = Selector.open();
+        this.chatService = chatService;
+        this.dispatcher = dispatcher;
+        this.workers = workers;
+    }
+
+    /**
+     * Übergibt eine neu akzeptierte Verbindung an diesen Reactor (Thread-sicher).
+     */
+    public void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Fordert Schreibinteresse für eine Sitzung an (Thread-sicher).
+     */
+    void requestWrite(NioClientSession session) {
+        pendingWrites.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Meldet, dass der Worker einer Sitzung fertig ist; pausiertes Lesen wird fortgesetzt (Thread-sicher).
+     */
+    void requestResume(NioClientSession session) {
+        pendingResumes.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * Fordert das Schließen einer Sitzung an (Thread-sicher).
+     */
+    void requestClose(NioClientSession session) {
+        pendingCloses.add(session);
+        selector.wakeup();
+    }
+
+    /**
+     * true, wenn der aufrufende Thread ein Reactor-Thread ist. Dort darf nie blockiert werden,
+     * sonst stehen alle Verbindungen dieses Reactors.
+     */
+    public static boolean isReactorThread() {
+        return reactorThread.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        reactorThread.set(true);
+        while (running) {
+            try {
+                // Blockiert, bis mindestens ein Kanal bereit ist oder wakeup() aufgerufen wurde.
+                selector.select();
+
+                processPendingChannels();
+                processPendingWrites();
+                processPendingResumes();
+                processPendingCloses();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    NioClientSession session = (NioClientSession) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            session.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            session.onWritable();
+                        }
+                    } catch (RuntimeException e) {
+                        // Letzte Absicherung (z.B. CancelledKeyException): Eine Sitzung darf nie den Selector anhalten.
+                        System.err.println("Unerwarteter Fehler im Reactor, trenne Sitzung:");
+                        e.printStackTrace();
+                        session.close();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+
+    private void processPendingChannels() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                NioClientSession session = new NioClientSession(channel, this, chatService, dispatcher, workers);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, session);
+                session.onRegistered(key);
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private void processPendingCloses() {
+        NioClientSession session;
+        while ((session = pendingCloses.poll()) != null) {
+            session.close();
+        }
+    }
+
+    private void processPendingResumes() {
+        NioClientSession session;
+        while ((session = pendingResumes.poll()) != null) {
+            session.resumeReading();
+        }
+    }
+
+    private void processPendingWrites() {
+        NioClientSession session;
+        while ((session = pendingWrites.poll()) != null) {
+            session.enableWriteInterest();
+        }
+    }
+}
@@ -1,9 +1,28 @@
 package de.thb.netchat.service;
 
+import de.thb.netchat.metrics.LatencyHistogram;
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.repository.InboxRepo;
+import de.thb.netchat.repository.LogMessageStore;
 import de.thb.netchat.repository.MessageRepo;
+import de.thb.netchat.repository.MessageStore;
+import de.thb.netchat.repository.RoomDirectory;
+import de.thb.netchat.repository.RoomRepo;
+import de.thb.netchat.repository.SearchHit;
+import de.thb.netchat.repository.ShardedMessageStore;
+import de.thb.netchat.repository.SqliteMessageStore;
+import de.thb.netchat.repository.StorageException;
+import de.thb.netchat.repository.UserDirectory;
 import de.thb.netchat.repository.UserRepo;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implementiert die zentrale Geschäftslogik (Service Layer) der Anwendung.
@@ -21,32 +40,192 @@ public class ChatService {
     private final UserRepo userRepo = new UserRepo();
     private final MessageRepo messageRepo = new MessageRepo();
 
+    // Alle Benutzerkonten im Speicher (Write-Through vor dem UserRepo).
+    // Login, Registrierungsprüfung und Benutzerliste lesen nicht mehr aus der Datenbank.
+    private final UserDirectory userDirectory = new UserDirectory(userRepo);
+
+    // Mitgliederindex aller Gruppenräume im Speicher (Write-Through vor dem RoomRepo).
+    private final RoomDirectory roomDirectory = new RoomDirectory(new RoomRepo());
+
+    // Posteingang für Nachrichten an Benutzer, die beim Senden offline waren.
+    private final Inbox inbox = new Inbox(new InboxRepo(), Integer.getInteger("netchat.inbox.batchSize", 200));
+
+    // Die neuesten Nachrichten der zuletzt geöffneten Chats. Wiederholtes Öffnen eines Chats
+    // wird aus dem Speicher beantwortet, ohne Datenbankabfrage.
+    private final ConversationCache conversationCache = new ConversationCache(
+            Integer.getInteger("netchat.cache.tailSize", 256),
+            Long.getLong("netchat.cache.maxBytes", 64L * 1024 * 1024));
+
+    // false im Cluster-Modus: Andere Knoten schreiben in dieselbe Datenbank, ein lokal gecachtes Verlaufsende
+    // wäre dort nicht aktuell. Verlaufsseiten kommen dann direkt aus dem Nachrichtenspeicher.
+    private volatile boolean conversationCacheEnabled = true;
+
+    // Speicher-Backend der Chat-Nachrichten (netchat.store = sqlite | log), siehe createMessageStore.
+    private final MessageStore messageStore = createMessageStore(messageRepo);
+
+    // Dauer vom Einreihen einer Nachricht bis zu ihrem Commit (Group-Commit-Wartezeit plus Schreiben).
+    private final LatencyHistogram appendLatency = Metrics.timer("store.append");
+
+    /**
+     * Erstellt den Service und lädt Benutzer- und Raumverzeichnis einmalig beim Start.
+     */
+    public ChatService() {
+        userDirectory.load();
+        roomDirectory.load();
+        Metrics.gauge("store.pending", messageStore::pending);
+
+        // Optional: Cache-Kennzahlen periodisch ausgeben (z.B. -Dnetchat.cache.statsSeconds=10).
+        long interval = Long.getLong("netchat.cache.statsSeconds", 0);
+        if (interval > 0) {
+            Thread.ofPlatform().daemon().name("conversation-cache-stats").start(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(interval * 1000);
+                        System.out.println(conversationCache.getStats());
+                    }
+                } catch (InterruptedException ignored) {}
+            });
+        }
+    }
+
     /**
      * Legt einen neuen Benutzer im System an.
-     * Delegiert die physische Speicherung an das UserRepo.
+     * Delegiert die physische Speicherung über das UserDirectory an das UserRepo.
      *
      * @param name Benutzername (Primary Key)
      * @param email E-Mail Adresse.
      * @param password Bereits gehashtes Passwort.
+     * @return true, wenn der Benutzer angelegt wurde.
+     */
+    public boolean createUser(String name, String email, String password) {
+        return userDirectory.addUser(name, email, password);
+    }
+
+    /**
+     * Schaltet den Verlaufs-Cache ab (Cluster-Modus, siehe conversationCacheEnabled).
+     */
+    public void disableConversationCache() {
+        conversationCacheEnabled = false;
+    }
+
+    /**
+     * Übernimmt einen an einem anderen Cluster-Knoten registrierten Benutzer in das Benutzerverzeichnis.
+     */
+    public boolean userRegisteredRemotely(String name) {
+        return userDirectory.refresh(name);
+    }
+
+    /**
+     * Übernimmt einen Raumbeitritt bzw. -austritt eines anderen Cluster-Knotens (bereits gespeichert).
+     */
+    public void roomChangedRemotely(String room, String user, boolean joined) {
+        if (joined) {
+            roomDirectory.applyJoin(room, user);
+        } else {
+            roomDirectory.applyLeave(room, user);
+        }
+    }
+
+    /**
+     * Gleicht Benutzer- und Raumverzeichnis mit der Datenbank ab (Cluster: nach dem Verbindungsaufbau zu
+     * einem Knoten, dessen Ereignisse in der Zwischenzeit gefehlt haben können).
+     *
+     * @return Die neu übernommenen Benutzernamen.
      */
-    public void createUser(String name, String email, String password) {
-        userRepo.addUser(name, email, password);
+    public List<String> reloadDirectories() {
+        List<String> added = userDirectory.reload();
+        roomDirectory.reload();
+        return added;
     }
 
     /**
-     * Speichert eine Nachricht im Verlauf.
+     * Speichert eine Nachricht im Verlauf (asynchron, Group Commit).
+     * Kehrt sofort zurück; das Future wird erst nach dem Commit der Nachricht erfüllt.
+     * Nach dem Commit wird die Nachricht an einen gecachten Verlauf des Paars angehängt.
      *
      * @param senderName Absender.
      * @param receiverName Empfänger.
      * @param text Inhalt der Nachricht.
+     * @return Future mit dem gespeicherten Datensatz (inkl. ID).
+     */
+    public CompletableFuture<HistoryRecord> sendMessage(String senderName, String receiverName, String text) {
+        // Das Anhängen geschieht, bevor das zurückgegebene Future erfüllt wird: Wer die Bestätigung sieht,
+        // findet die Nachricht auch im Cache.
+        long start = System.nanoTime();
+        return messageStore.append(senderName, receiverName, text)
+                .thenApply(record -> {
+                    appendLatency.recordSince(start);
+                    if (conversationCacheEnabled) {
+                        conversationCache.append(record);
+                    }
+                    return record;
+                });
+    }
+
+    /**
+     * Legt eine gespeicherte Nachricht in den Posteingang des Empfängers, weil er beim Senden offline war.
+     * Nachrichten an unbekannte Benutzer werden ignoriert.
+     */
+    public void addToInbox(HistoryRecord record) {
+        if (userDirectory.userExists(record.to())) {
+            inbox.store(record);
+        }
+    }
+
+    /**
+     * Stellt dem Benutzer alle verpassten Nachrichten zu (asynchron, in Stapeln).
      */
-    public void sendMessage(String senderName, String receiverName, String text) {
-        messageRepo.addMessage(senderName, receiverName, text);
+    public void flushInbox(String username) {
+        inbox.flush(username);
+    }
+
+    /**
+     * Legt fest, wie verpasste Nachrichten an eine Sitzung übergeben werden (vom Server beim Start gesetzt).
+     */
+    public void setInboxDeliverer(Inbox.Deliverer deliverer) {
+        inbox.setDeliverer(deliverer);
+    }
+
+    /**
+     * Speichert eine Raumnachricht genau einmal, unabhängig von der Zahl der Mitglieder.
+     * Empfänger im Nachrichtenspeicher ist der Raum mit vorangestelltem "#" (z.B. "#allgemein").
+     *
+     * @return Future mit dem gespeicherten Datensatz (inkl. ID).
+     */
+    public CompletableFuture<HistoryRecord> sendRoomMessage(String senderName, String room, String text) {
+        return sendMessage(senderName, "#" + room, text);
+    }
+
+    /**
+     * Trägt einen Benutzer in einen Raum ein; der Raum wird bei Bedarf angelegt.
+     *
+     * @return true, wenn der Benutzer nun Mitglied ist.
+     */
+    public boolean joinRoom(String room, String user) {
+        return roomDirectory.join(room, user);
+    }
+
+    /**
+     * @return true, wenn der Benutzer Mitglied war und ausgetragen wurde.
+     */
+    public boolean leaveRoom(String room, String user) {
+        return roomDirectory.leave(room, user);
+    }
+
+    public boolean isRoomMember(String room, String user) {
+        return roomDirectory.isMember(room, user);
+    }
+
+    /**
+     * Mitglieder eines Raums als unveränderliche Momentaufnahme (siehe RoomDirectory.members).
+     */
+    public String[] getRoomMembers(String room) {
+        return roomDirectory.members(room);
     }
 
     /**
      * Ruft den Chatverlauf zwischen zwei spezifischen Benutzern ab.
-     * Wird vom HistoryRequestCommand genutzt.
+     * Liest immer aus SQLite, unabhängig vom gewählten Nachrichtenspeicher (Verlauf für Clients: getConversationPage).
      *
      * @return Liste von Nachrichten-Strings.
      */
@@ -54,19 +233,145 @@ public class ChatService {
         return messageRepo.getConversation(userA, userB);
     }
 
+    /**
+     * Ruft eine Seite des Chatverlaufs ab (neueste zuerst geblättert, chronologisch sortiert).
+     * Wird vom HistoryRequestCommand genutzt.
+     *
+     * @param beforeId Cursor: Nur Nachrichten mit kleinerer ID (null = neueste Seite).
+     * @param limit Maximale Anzahl Nachrichten.
+     */
+    public List<HistoryRecord> getConversationPage(String userA, String userB, Long beforeId, int limit) {
+        if (!conversationCacheEnabled) {
+            try {
+                return messageStore.getConversationPage(userA, userB, beforeId, limit);
+            } catch (StorageException e) {
+                System.err.println("Error beim Abrufen des Chatverlaufs:");
+                e.printStackTrace();
+                return new ArrayList<>();
+            }
+        }
+
+        // 1. Cache: Beantwortet die Anfrage, sofern die gewünschten Nachrichten vollständig vorliegen.
+        List<HistoryRecord> cached = conversationCache.get(userA, userB, beforeId, limit);
+        if (cached != null) {
+            return cached;
+        }
+
+        try {
+            // 2. Neueste Seite eines noch nicht gecachten Chats: Das Ende des Verlaufs wird geladen und gecacht.
+            if (beforeId == null && limit <= conversationCache.getTailSize()) {
+                return conversationCache.load(userA, userB, limit, () ->
+                        messageStore.getConversationPage(userA, userB, null, conversationCache.getTailSize()));
+            }
+
+            // 3. Ältere Seiten jenseits des gecachten Endes kommen direkt aus dem Nachrichtenspeicher.
+            return messageStore.getConversationPage(userA, userB, beforeId, limit);
+        } catch (StorageException e) {
+            System.err.println("Error beim Abrufen des Chatverlaufs:");
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Volltextsuche in allen Gesprächen des Benutzers: Direktnachrichten von und an ihn sowie die Räume,
+     * in denen er aktuell Mitglied ist. Wird vom SearchCommand genutzt.
+     *
+     * @param user Der angemeldete Benutzer (bestimmt, welche Nachrichten durchsucht werden).
+     * @param query Suchbegriffe, durch Leerzeichen getrennt.
+     * @param offset Anzahl zu überspringender Treffer.
+     * @param limit Maximale Anzahl Treffer.
+     * @return Die Nachrichten, die relevanteste zuerst.
+     * @throws StorageException Falls der Nachrichtenspeicher nicht gelesen werden kann oder keine Suche unterstützt.
+     */
+    public List<HistoryRecord> search(String user, String query, int offset, int limit) throws StorageException {
+        List<String> participants = new ArrayList<>();
+        participants.add(user);
+        for (String room : roomDirectory.roomsOf(user)) {
+            participants.add("#" + room);
+        }
+
+        List<SearchHit> hits = messageStore.search(participants, query, offset, limit);
+        List<HistoryRecord> records = new ArrayList<>(hits.size());
+        for (SearchHit hit : hits) {
+            records.add(hit.record());
+        }
+        return records;
+    }
+
+    /**
+     * Kennzahlen des Verlaufs-Caches (Trefferquote, Verdrängungen, Speicherbedarf).
+     */
+    public ConversationCache.Stats getConversationCacheStats() {
+        return conversationCache.getStats();
+    }
+
+    /**
+     * Wählt das Speicher-Backend für Chat-Nachrichten:
+     * - sqlite (Standard): Tabelle "messages", Group Commit über den MessageBatchWriter.
+     *   Mit netchat.shards > 1 auf mehrere Datenbankdateien verteilt (netchat.shards.url, je Shard ein Writer).
+     *   Bereits in der Hauptdatenbank gespeicherte Nachrichten werden beim Start in ihre Shards umgezogen.
+     * - log: Append-only-Logdateien in netchat.log.dir (Standard db/messages), für sehr hohe Schreibraten.
+     * Stapelgröße und maximale Zusatzlatenz des Group Commits gelten für beide und sind über System-Properties einstellbar.
+     */
+    private static MessageStore createMessageStore(MessageRepo messageRepo) {
+        int batchSize = Integer.getInteger("netchat.persist.batchSize", 256);
+        long maxDelayMs = Long.getLong("netchat.persist.maxDelayMs", 5);
+        int capacity = Integer.getInteger("netchat.persist.capacity", 16_384);
+
+        String store = System.getProperty("netchat.store", "sqlite");
+        if (store.equals("log")) {
+            try {
+                return new LogMessageStore(Path.of(System.getProperty("netchat.log.dir", "db/messages")),
+                        Integer.getInteger("netchat.log.segmentBytes", 64 * 1024 * 1024),
+                        batchSize, maxDelayMs, capacity);
+            } catch (IOException e) {
+                // Ohne Nachrichtenspeicher kann der Server nicht sinnvoll laufen.
+                throw new UncheckedIOException("Nachrichten-Log konnte nicht geöffnet werden", e);
+            }
+        }
+
+        int shards = Integer.getInteger("netchat.shards", 1);
+        if (shards > 1) {
+            ShardedMessageStore sharded;
+            try {
+                sharded = new ShardedMessageStore(
+                        System.getProperty("netchat.shards.url", "jdbc:sqlite:db/messages-%d.db"), shards,
+                        Integer.getInteger("netchat.shards.poolSize", 2), batchSize, maxDelayMs, capacity);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Nachrichten-Shards konnten nicht geöffnet werden", e);
+            }
+            try {
+                long moved = sharded.importFrom(messageRepo);
+                if (moved > 0) {
+                    System.out.println("Nachrichten aus der Hauptdatenbank in die Shards umgezogen: " + moved);
+                }
+            } catch (SQLException e) {
+                // Ohne Umzug wäre der bisherige Verlauf unsichtbar; lieber gar nicht starten.
+                sharded.close();
+                System.err.println("Umzug der Nachrichten in die Shards fehlgeschlagen. Bisherige Nachrichten"
+                        + " liegen weiter in der Tabelle messages der Hauptdatenbank. Entweder mit netchat.shards=1"
+                        + " starten oder die Shard-Dateien (netchat.shards.url) prüfen und den Start wiederholen.");
+                throw new IllegalStateException("Nachrichten konnten nicht in die Shards umgezogen werden", e);
+            }
+            return sharded;
+        }
+        return new SqliteMessageStore(messageRepo, batchSize, maxDelayMs, capacity);
+    }
+
     /**
      * Prüft die Existenz eines Benutzernamens.
      * Wichtig für Login und Registrierung (Vermeidung von Duplikaten).
      */
     public boolean userExists(String username) {
-        return userRepo.userExists(username);
+        return userDirectory.userExists(username);
     }
 
     /**
      * Prüft die Existenz einer E-Mail-Adresse.
      */
     public boolean emailExists(String email) {
-        return userRepo.emailExists(email);
+        return userDirectory.emailExists(email);
     }
 
     /**
@@ -74,7 +379,7 @@ public class ChatService {
      * Methode dient der Diagnose zur Laufzeit und sendet nichts an Clients.
      */
     public void listUser() {
-        List<String> users = userRepo.getAllUserNames();
+        List<String> users = userDirectory.getAllUserNames();
         System.out.println("--- Benuterübersicht ---");
         for (String name : users) {
             System.out.println("**" + name + "** ");
@@ -85,14 +390,14 @@ public class ChatService {
      * Liefert eine Liste aller registrierten Benutzernamen.
      * Wird benutzt, um die "Alle Benutzer"-Liste im Client zu befüllen.
      *
-     * @return Liste aller Usernamen aus der Datenbank.
+     * @return Liste aller Usernamen (neueste zuerst, unveränderlich, aus dem Speicher).
      */
     public List<String> listAllUsers() {
-        return userRepo.getAllUserNames();
+        return userDirectory.getAllUserNames();
     }
 
     /**
-     * Debugging: Zeigt Nachrichten eines Users auf der Server-Konsole an.
+     * Debugging: Zeigt Nachrichten eines Users auf der Server-Konsole an (nur SQLite-Backend).
      */
     public void showMessagesByUser(String senderName) {
         List<String> messages = messageRepo.getMessagesByUser(senderName);
@@ -113,7 +418,7 @@ public class ChatService {
      * @return Der Passwort-Hash oder null.
      */
     public String getPasswordForUser(String username) {
-        return userRepo.getPassword(username);
+        return userDirectory.getPassword(username);
     }
 
 
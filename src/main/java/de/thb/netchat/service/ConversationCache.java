@@ -0,0 +1,287 @@
+package de.thb.netchat.service;
+
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.repository.StorageException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * LRU-Cache der jeweils neuesten Nachrichten pro Gesprächspaar.
+ *
+ * Schlüssel ist das ungeordnete Paar (A, B) = (B, A), beide Seiten eines Chats teilen sich also einen Eintrag.
+ * Ein Eintrag enthält die letzten tailSize Nachrichten des Paars in ID-Reihenfolge und wird
+ * - beim Lesen gefüllt (erste Verlaufsseite eines Chats, siehe ChatService.getConversationPage),
+ * - beim Schreiben ergänzt (nach dem Commit einer Nachricht, sofern das Paar bereits im Cache ist).
+ *
+ * Die Größe ist in Bytes begrenzt (geschätzter Heap-Bedarf der Texte). Wird das Budget überschritten,
+ * fliegen die am längsten nicht genutzten Paare heraus.
+ *
+ * Konsistenz beim Füllen: Der Eintrag wird angelegt, bevor die Datenbank gelesen wird. Nachrichten, die während
+ * der Abfrage committed werden, landen bereits im (noch ladenden) Eintrag und werden danach mit dem
+ * Abfrageergebnis zusammengeführt. So geht zwischen Abfrage und Einfügen keine Nachricht verloren.
+ */
+public class ConversationCache {
+
+    /**
+     * Lädt die neuesten Nachrichten eines Paars aus dem Nachrichtenspeicher.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<HistoryRecord> load() throws StorageException;
+    }
+
+    // Geschätzter fester Overhead pro Datensatz (Objektköpfe, Referenzen, Zeitstempel) in Bytes.
+    private static final int RECORD_OVERHEAD = 160;
+
+    private final int tailSize;
+    private final long maxBytes;
+
+    // Zugriffsreihenfolge (accessOrder = true): Der älteste Eintrag ist der am längsten nicht genutzte.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+
+    // Kennzahlen
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param tailSize Maximale Anzahl Nachrichten pro Paar.
+     * @param maxBytes Speicherbudget aller Einträge zusammen (geschätzt).
+     */
+    public ConversationCache(int tailSize, long maxBytes) {
+        this.tailSize = tailSize;
+        this.maxBytes = maxBytes;
+    }
+
+    public int getTailSize() {
+        return tailSize;
+    }
+
+    /**
+     * Liefert die neuesten "limit" Nachrichten vor beforeId aus dem Cache.
+     *
+     * @return Die Nachrichten (chronologisch) oder null, wenn der Cache die Anfrage nicht vollständig beantworten kann.
+     */
+    public synchronized List<HistoryRecord> get(String a, String b, Long beforeId, int limit) {
+        Entry entry = entries.get(key(a, b));
+        List<HistoryRecord> result = entry != null ? entry.page(beforeId, limit) : null;
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    /**
+     * Lädt die neuesten Nachrichten eines Paars über loader in den Cache und liefert die gewünschte Seite.
+     * Die Datenbankabfrage läuft außerhalb der Sperre.
+     *
+     * @param loader Liefert die neuesten tailSize Nachrichten des Paars (chronologisch).
+     * @throws StorageException Falls die Abfrage scheitert. Es wird dann nichts gecacht.
+     */
+    public List<HistoryRecord> load(String a, String b, int limit, Loader loader) throws StorageException {
+        String key = key(a, b);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.computeIfAbsent(key, k -> new Entry());
+        }
+
+        List<HistoryRecord> loaded;
+        try {
+            loaded = loader.load();
+        } catch (StorageException | RuntimeException e) {
+            synchronized (this) {
+                if (entry.loading) {
+                    entries.remove(key, entry);
+                    bytes -= entry.bytes;
+                }
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            if (entries.get(key) == entry && entry.loading) {
+                long before = entry.bytes;
+                entry.fill(loaded, tailSize);
+                bytes += entry.bytes - before;
+                // Die Seite aus dem zusammengeführten Eintrag enthält auch während der Abfrage gespeicherte Nachrichten.
+                List<HistoryRecord> page = entry.page(null, limit);
+                evict();
+                if (page != null) {
+                    return page;
+                }
+            }
+        }
+
+        int from = Math.max(0, loaded.size() - limit);
+        return new ArrayList<>(loaded.subList(from, loaded.size()));
+    }
+
+    /**
+     * Ergänzt eine gerade gespeicherte Nachricht. Ist das Paar nicht im Cache, passiert nichts.
+     * Die Reihenfolge der Aufrufe spielt keine Rolle, der Datensatz wird nach seiner ID einsortiert.
+     */
+    public synchronized void append(HistoryRecord record) {
+        Entry entry = entries.get(key(record.from(), record.to()));
+        if (entry != null) {
+            long before = entry.bytes;
+            entry.add(record, tailSize);
+            bytes += entry.bytes - before;
+            evict();
+        }
+    }
+
+    /**
+     * Momentaufnahme der Cache-Kennzahlen.
+     */
+    public synchronized Stats getStats() {
+        return new Stats(entries.size(), bytes, maxBytes, hits, misses, evictions);
+    }
+
+    // Entfernt die am längsten nicht genutzten Einträge, bis das Budget eingehalten ist.
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            bytes -= eldest.bytes;
+            evictions++;
+        }
+    }
+
+    // Ungeordnetes Paar: (A, B) und (B, A) ergeben denselben Schlüssel.
+    private static String key(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + '\u0000' + b : b + '\u0000' + a;
+    }
+
+    private static long sizeOf(HistoryRecord record) {
+        return RECORD_OVERHEAD + 2L * (record.text().length() + record.from().length() + record.to().length());
+    }
+
+    /**
+     * Die neuesten Nachrichten eines Paars (aufsteigend nach ID).
+     */
+    private static final class Entry {
+
+        private final ArrayList<HistoryRecord> records = new ArrayList<>();
+
+        // true, solange die Datenbankabfrage zum Füllen noch läuft. Ein ladender Eintrag beantwortet keine Anfragen.
+        private boolean loading = true;
+
+        // true, wenn der Eintrag den kompletten Verlauf enthält (weniger als tailSize Nachrichten insgesamt).
+        private boolean complete;
+
+        private long bytes;
+
+        // Führt das Abfrageergebnis mit den während der Abfrage ergänzten Nachrichten zusammen.
+        void fill(List<HistoryRecord> loaded, int tailSize) {
+            List<HistoryRecord> appended = new ArrayList<>(records);
+            records.clear();
+            bytes = 0;
+            complete = loaded.size() < tailSize;
+            loading = false;
+
+            long lastId = Long.MIN_VALUE;
+            for (HistoryRecord record : loaded) {
+                records.add(record);
+                bytes += sizeOf(record);
+                lastId = record.id();
+            }
+            for (HistoryRecord record : appended) {
+                if (record.id() > lastId) {
+                    records.add(record);
+                    bytes += sizeOf(record);
+                }
+            }
+            trim(tailSize);
+        }
+
+        void add(HistoryRecord record, int tailSize) {
+            // Im Normalfall ist die neue Nachricht die neueste und wird hinten angehängt.
+            int index = indexOf(record.id());
+            if (index < records.size() && records.get(index).id() == record.id()) {
+                return; // bereits enthalten
+            }
+            if (index == 0 && !records.isEmpty() && !loading) {
+                // Älter als alles Gecachte: Gehört nicht zum Ende des Verlaufs.
+                return;
+            }
+            records.add(index, record);
+            bytes += sizeOf(record);
+            trim(tailSize);
+        }
+
+        // Begrenzt den Eintrag auf die neuesten tailSize Nachrichten.
+        private void trim(int tailSize) {
+            int excess = records.size() - tailSize;
+            if (excess > 0) {
+                List<HistoryRecord> oldest = records.subList(0, excess);
+                for (HistoryRecord record : oldest) {
+                    bytes -= sizeOf(record);
+                }
+                oldest.clear();
+                complete = false;
+            }
+        }
+
+        List<HistoryRecord> page(Long beforeId, int limit) {
+            if (loading) {
+                return null;
+            }
+            // Anzahl der Nachrichten mit ID < beforeId (Binärsuche, die Liste ist nach ID sortiert).
+            int end = beforeId == null ? records.size() : indexOf(beforeId);
+            int start = end - limit;
+            if (start < 0) {
+                // Weniger als "limit" Nachrichten vorhanden: Nur beantwortbar, wenn es davor keine weiteren gibt.
+                if (!complete) {
+                    return null;
+                }
+                start = 0;
+            }
+            return new ArrayList<>(records.subList(start, end));
+        }
+
+        private int indexOf(long beforeId) {
+            int low = 0;
+            int high = records.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (records.get(mid).id() < beforeId) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Kennzahlen des Caches.
+     *
+     * @param entries Anzahl gecachter Gesprächspaare.
+     * @param bytes Geschätzter Speicherbedarf.
+     * @param maxBytes Speicherbudget.
+     * @param hits Aus dem Cache beantwortete Anfragen.
+     * @param misses Anfragen, die an die Datenbank gingen.
+     * @param evictions Wegen des Budgets entfernte Paare.
+     */
+    public record Stats(int entries, long bytes, long maxBytes, long hits, long misses, long evictions) {
+
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Verlaufs-Cache: paare=%d belegt=%d/%d KiB treffer=%d fehlschläge=%d quote=%.1f%% verdrängt=%d",
+                    entries, bytes / 1024, maxBytes / 1024, hits, misses, hitRatio() * 100, evictions);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package de.thb.netchat.service;
+
+import de.thb.netchat.metrics.Metrics;
+import de.thb.netchat.model.HistoryRecord;
+import de.thb.netchat.repository.InboxRepo;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Posteingang für Nachrichten an Benutzer, die beim Senden offline waren (Store-and-Forward).
+ *
+ * Alle Datenbankzugriffe laufen auf einem einzigen Hintergrund-Thread, in der Reihenfolge der Aufträge:
+ * - Einträge speichern: gesammelt, ein INSERT-Stapel pro Durchgang (wie der Group Commit der Nachrichten).
+ * - Posteingang zustellen: nach dem Login die offenen Einträge in Stapeln zu batchSize lesen, übergeben und
+ *   danach löschen. Die Kosten hängen nur von der Zahl verpasster Nachrichten ab.
+ * Da beides nacheinander auf demselben Thread läuft, wird kein Eintrag doppelt zugestellt.
+ *
+ * Meldet sich ein Empfänger an, während seine Nachricht noch auf das Speichern wartet, verpasst er sie nicht:
+ * Nach jedem INSERT-Stapel wird für die inzwischen eingeloggten Empfänger erneut zugestellt.
+ * Ist er an einem anderen Cluster-Knoten eingeloggt, wird dieser um die Zustellung gebeten (Deliverer.storedForAbsent).
+ * Zustellung heißt: an die Outbound-Queue der Sitzung übergeben. Scheitert das Löschen danach, wird der Stapel
+ * beim nächsten Login erneut zugestellt (mindestens einmal).
+ */
+public class Inbox {
+
+    /**
+     * Übergibt einen Stapel verpasster Nachrichten an die Sitzung des Empfängers (vom Server gesetzt).
+     */
+    public interface Deliverer {
+
+        /**
+         * true, wenn der Empfänger an diesem Server eingeloggt ist.
+         */
+        boolean isOnline(String recipient);
+
+        /**
+         * @return true, wenn der Stapel an die Sitzung übergeben wurde; false, wenn der Empfänger nicht eingeloggt ist.
+         */
+        boolean deliver(String recipient, List<HistoryRecord> batch);
+
+        /**
+         * Für einen Empfänger, der an diesem Server nicht eingeloggt ist, wurden Einträge gespeichert
+         * (im Cluster-Modus kann er an einem anderen Knoten eingeloggt sein).
+         */
+        void storedForAbsent(String recipient);
+    }
+
+    // Aufträge an den Inbox-Thread.
+    private sealed interface Task permits Store, Flush {}
+
+    private record Store(HistoryRecord record) implements Task {}
+
+    private record Flush(String recipient) implements Task {}
+
+    private final InboxRepo repo;
+    private final int batchSize;
+    private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+
+    private volatile Deliverer deliverer;
+
+    private final LongAdder stored = Metrics.counter("inbox.stored");
+    private final LongAdder delivered = Metrics.counter("inbox.delivered");
+
+    /**
+     * @param repo Das Repository für die Tabelle "inbox".
+     * @param batchSize Maximale Anzahl Nachrichten pro zugestelltem Stapel.
+     */
+    public Inbox(InboxRepo repo, int batchSize) {
+        this.repo = repo;
+        this.batchSize = Math.max(1, batchSize);
+        Metrics.gauge("inbox.queued", tasks::size);
+        // Plattform-Thread: Der SQLite-Treiber ruft nativen Code auf und würde einen virtuellen Thread pinnen.
+        Thread.ofPlatform().daemon().name("inbox").start(this::run);
+    }
+
+    public void setDeliverer(Deliverer deliverer) {
+        this.deliverer = deliverer;
+    }
+
+    /**
+     * Legt eine gespeicherte Nachricht in den Posteingang ihres Empfängers (asynchron).
+     */
+    public void store(HistoryRecord record) {
+        tasks.add(new Store(record));
+    }
+
+    /**
+     * Stellt den Posteingang eines Empfängers zu (asynchron, typischerweise direkt nach dem Login).
+     */
+    public void flush(String recipient) {
+        tasks.add(new Flush(recipient));
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(tasks.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            tasks.drainTo(batch, 1023);
+
+            // Aufeinanderfolgende Store-Aufträge werden zu einem INSERT-Stapel zusammengefasst.
+            List<HistoryRecord> records = new ArrayList<>();
+            for (Task task : batch) {
+                switch (task) {
+                    case Store store -> records.add(store.record());
+                    case Flush flush -> {
+                        storeAll(records);
+                        deliverAll(flush.recipient());
+                    }
+                }
+            }
+            storeAll(records);
+            batch.clear();
+        }
+    }
+
+    private void storeAll(List<HistoryRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        try {
+            repo.addEntries(records);
+            stored.add(records.size());
+        } catch (SQLException e) {
+            System.err.println("Error beim Speichern von " + records.size() + " Posteingangs-Einträgen:");
+            e.printStackTrace();
+            records.clear();
+            return;
+        }
+
+        // Empfänger, die sich inzwischen angemeldet haben, erhalten die Nachricht sofort.
+        Set<String> recipients = new LinkedHashSet<>();
+        for (HistoryRecord record : records) {
+            recipients.add(record.to());
+        }
+        records.clear();
+        for (String recipient : recipients) {
+            if (deliverer == null) {
+                continue;
+            }
+            if (deliverer.isOnline(recipient)) {
+                deliverAll(recipient);
+            } else {
+                deliverer.storedForAbsent(recipient);
+            }
+        }
+    }
+
+    // Stellt alle offenen Einträge eines Empfängers in Stapeln zu.
+    private void deliverAll(String recipient) {
+        Deliverer deliverer = this.deliverer;
+        if (deliverer == null) {
+            return;
+        }
+        long cursor = 0;
+        try {
+            while (true) {
+                List<InboxRepo.Entry> entries = repo.getPending(recipient, cursor, batchSize);
+                if (entries.isEmpty()) {
+                    return;
+                }
+                List<HistoryRecord> records = new ArrayList<>(entries.size());
+                for (InboxRepo.Entry entry : entries) {
+                    records.add(entry.record());
+                }
+                if (!deliverer.deliver(recipient, records)) {
+                    return; // Nicht eingeloggt: Die Einträge bleiben offen.
+                }
+                cursor = entries.getLast().inboxId();
+                repo.removeDelivered(recipient, cursor);
+                delivered.add(records.size());
+                if (entries.size() < batchSize) {
+                    return;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error beim Zustellen des Posteingangs von " + recipient + ":");
+            e.printStackTrace();
+        }
+    }
+}